@@ -0,0 +1,64 @@
+package br.com.smartmed.consultas.config;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/***
+ * Conta os comandos SQL preparados pelo Hibernate durante uma operação medida com
+ * {@link #medir(String, Supplier)} e registra o total no log ao final dela. A contagem é feita
+ * por thread, o que cobre um comando de agenda inteiro, executado na thread do chamador ou na
+ * virtual thread da fila do médico. Comandos enviados diretamente via JDBC não são contados.
+ */
+@Component
+public class ContadorComandosSql implements StatementInspector, HibernatePropertiesCustomizer {
+
+    private static final Logger log = LoggerFactory.getLogger(ContadorComandosSql.class);
+
+    private final ThreadLocal<int[]> contagem = new ThreadLocal<>();
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, this);
+    }
+
+    @Override
+    public String inspect(String sql) {
+        int[] atual = contagem.get();
+        if (atual != null) {
+            atual[0]++;
+        }
+        return sql;
+    }
+
+    /**
+     * Executa a operação contando os comandos SQL que ela prepara. Uma medição aninhada soma os seus
+     * comandos aos da medição externa.
+     *
+     * @param operacao Descrição da operação, usada no log.
+     * @param acao     Operação a executar.
+     * @return Resultado da operação.
+     */
+    public <T> T medir(String operacao, Supplier<T> acao) {
+        int[] externa = contagem.get();
+        int[] atual = new int[1];
+        contagem.set(atual);
+        try {
+            return acao.get();
+        } finally {
+            if (externa == null) {
+                contagem.remove();
+            } else {
+                externa[0] += atual[0];
+                contagem.set(externa);
+            }
+            log.debug("{}: {} comando(s) SQL.", operacao, atual[0]);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package br.com.smartmed.consultas.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/***
+ * Classe de configuração que disponibiliza um executor de virtual threads como Bean,
+ * usado pelas buscas de agenda que são feitas em paralelo.
+ */
+@Configuration
+public class ExecutorConfig {
+    @Bean
+    public ExecutorService virtualThreadExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+}
@@ -0,0 +1,48 @@
+package br.com.smartmed.consultas.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Período em que não há atendimento: feriado ou recesso da clínica inteira (sem médico) ou
+ * férias e afastamentos de um médico. Os dias de {@code dataInicio} a {@code dataFim}, inclusive,
+ * ficam bloqueados para agendamento.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "bloqueioAgenda", indexes = {
+        @Index(name = "idx_bloqueio_medico_periodo", columnList = "medicoId, dataInicio, dataFim")
+})
+public class BloqueioAgendaModel {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Integer id;
+
+    @Column(name = "dataInicio", nullable = false)
+    @NotNull(message = "A data inicial não pode ser nula.")
+    private LocalDate dataInicio;
+
+    @Column(name = "dataFim", nullable = false)
+    @NotNull(message = "A data final não pode ser nula.")
+    private LocalDate dataFim;
+
+    @Column(name = "motivo", length = 255, nullable = false)
+    @NotBlank(message = "O motivo é obrigatório.")
+    private String motivo;
+
+    /**
+     * Médico afetado; {@code null} para bloqueios da clínica inteira.
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "medicoId")
+    private MedicoModel medico;
+}
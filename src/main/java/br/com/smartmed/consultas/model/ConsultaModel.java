@@ -7,14 +7,36 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
 
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
-@Table(name = "consulta")
+@Table(name = "consulta", uniqueConstraints = {
+        @UniqueConstraint(name = ConsultaModel.UK_HORARIO_RESERVADO, columnNames = {"medicoId", "horarioReservado"})
+}, indexes = {
+        @Index(name = "idx_consulta_medico_periodo", columnList = "medicoId, dataHoraConsulta, dataHoraFim"),
+        @Index(name = "idx_consulta_paciente_periodo", columnList = "pacienteId, dataHoraConsulta"),
+        @Index(name = "idx_consulta_status_periodo", columnList = "status, dataHoraConsulta")
+})
 public class ConsultaModel {
+
+    /**
+     * Restrição que impede duas consultas ativas do mesmo médico com o mesmo início. Sobreposições com
+     * inícios diferentes são impedidas pelo bloqueio da agenda do médico nas gravações
+     * ({@link br.com.smartmed.consultas.service.MedicoService#bloquearAgendas}).
+     */
+    public static final String UK_HORARIO_RESERVADO = "uk_consulta_medico_horario";
+
+    /**
+     * Maior duração considerada para uma consulta, que acontece dentro do expediente de um dia. As
+     * verificações de sobreposição nas agendas do médico e do paciente só procuram consultas que
+     * começam até esse tempo antes do horário verificado, para percorrer uma faixa curta do índice.
+     */
+    public static final Duration DURACAO_MAXIMA = Duration.ofDays(1);
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "id")
@@ -23,6 +45,25 @@ public class ConsultaModel {
     @Column(name = "dataHoraConsulta", nullable = false)
     private LocalDateTime dataHoraConsulta;
 
+    /**
+     * Fim real da consulta, gravado no agendamento para que a verificação de sobreposição
+     * não dependa da duração padrão atual do médico.
+     */
+    @Column(name = "dataHoraFim")
+    private LocalDateTime dataHoraFim;
+
+    /**
+     * Cópia de {@code dataHoraConsulta} enquanto a consulta ocupa a agenda (AGENDADA ou REALIZADA)
+     * e {@code null} caso contrário. É a coluna coberta pela restrição única por médico, de modo que
+     * consultas canceladas ou remarcadas liberam o horário.
+     */
+    @Column(name = "horarioReservado")
+    private LocalDateTime horarioReservado;
+
+    @Version
+    @Column(name = "versao", columnDefinition = "bigint default 0 not null")
+    private long versao;
+
     @Column(name = "status", length = 16, nullable = false)
     @NotNull(message = "O status não pode ser nulo.")
     @Enumerated(EnumType.STRING)
@@ -58,8 +99,31 @@ public class ConsultaModel {
     @NotNull(message = "O recepcionistaId não pode ser nulo.")
     private RecepcionistaModel recepcionista;
 
+    /**
+     * Preenche os campos calculados antes da gravação. Chamado pelo JPA e, explicitamente, pela
+     * inserção em lote via JDBC, que não passa pelo ciclo de vida do JPA.
+     */
     @PrePersist
     @PreUpdate
+    public void prepararPersistencia() {
+        calcularFim();
+        calcularHorarioReservado();
+        calcularValor();
+    }
+
+    private void calcularHorarioReservado() {
+        this.horarioReservado = status == ConsultaStatus.AGENDADA || status == ConsultaStatus.REALIZADA
+                ? dataHoraConsulta
+                : null;
+    }
+
+    private void calcularFim() {
+        if (dataHoraFim == null && dataHoraConsulta != null && medico != null
+                && medico.getDuracaoPadraoConsulta() != null) {
+            this.dataHoraFim = dataHoraConsulta.plusMinutes(medico.getDuracaoPadraoConsulta());
+        }
+    }
+
     private void calcularValor() {
         if (medico != null) {
             BigDecimal valorBase = BigDecimal.valueOf(medico.getValorConsultaReferencia());
@@ -0,0 +1,57 @@
+package br.com.smartmed.consultas.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+
+/**
+ * Expediente de um médico em um dia da semana, com um intervalo opcional (ex.: almoço). Um médico
+ * com pelo menos um expediente cadastrado atende apenas nos dias da semana cadastrados; sem nenhum,
+ * vale o expediente único de {@link MedicoModel}, de segunda a sexta.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "expedienteMedico", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_expediente_medico_dia", columnNames = {"medicoId", "diaSemana"})
+})
+public class ExpedienteMedicoModel {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Integer id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "medicoId", nullable = false)
+    @NotNull(message = "O médico não pode ser nulo.")
+    private MedicoModel medico;
+
+    /**
+     * Gravado pela ordem (0 = segunda-feira), o que permite compará-lo com
+     * {@code ISO_DAY_OF_WEEK - 1} nas consultas nativas.
+     */
+    @Enumerated(EnumType.ORDINAL)
+    @Column(name = "diaSemana", nullable = false)
+    @NotNull(message = "O dia da semana não pode ser nulo.")
+    private DayOfWeek diaSemana;
+
+    @Column(name = "horaInicio", nullable = false)
+    @NotNull(message = "A hora de início não pode ser nula.")
+    private LocalTime horaInicio;
+
+    @Column(name = "horaFim", nullable = false)
+    @NotNull(message = "A hora de fim não pode ser nula.")
+    private LocalTime horaFim;
+
+    @Column(name = "inicioIntervalo")
+    private LocalTime inicioIntervalo;
+
+    @Column(name = "fimIntervalo")
+    private LocalTime fimIntervalo;
+}
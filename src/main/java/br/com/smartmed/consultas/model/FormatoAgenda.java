@@ -0,0 +1,15 @@
+package br.com.smartmed.consultas.model;
+
+/**
+ * Formato em que os horários de uma agenda são devolvidos.
+ */
+public enum FormatoAgenda {
+    /**
+     * Listas de horários ocupados e disponíveis, no formato "HH:mm".
+     */
+    LISTA,
+    /**
+     * Representação compacta, por turno: primeiro horário, duração do slot e mapa de bits (base64) dos ocupados.
+     */
+    COMPACTO
+}
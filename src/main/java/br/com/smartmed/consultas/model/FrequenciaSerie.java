@@ -0,0 +1,34 @@
+package br.com.smartmed.consultas.model;
+
+import java.time.LocalDateTime;
+import java.time.Period;
+
+/**
+ * Frequência das consultas de uma série recorrente (ex.: fisioterapia, acompanhamento de doenças crônicas).
+ */
+public enum FrequenciaSerie {
+    SEMANAL(Period.ofWeeks(1)),
+    QUINZENAL(Period.ofWeeks(2)),
+    /**
+     * No mesmo dia do mês da primeira consulta ou, em meses mais curtos, no último dia do mês.
+     */
+    MENSAL(Period.ofMonths(1));
+
+    private final Period periodo;
+
+    FrequenciaSerie(Period periodo) {
+        this.periodo = periodo;
+    }
+
+    /**
+     * Data/hora da ocorrência de índice {@code indice} da série, calculada sempre a partir da primeira
+     * para que os ajustes de fim de mês não se acumulem.
+     *
+     * @param primeira Data/hora da primeira ocorrência.
+     * @param indice   Índice da ocorrência, a partir de 0.
+     * @return Data/hora da ocorrência.
+     */
+    public LocalDateTime ocorrencia(LocalDateTime primeira, int indice) {
+        return primeira.plus(periodo.multipliedBy(indice));
+    }
+}
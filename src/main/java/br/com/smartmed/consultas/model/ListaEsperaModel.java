@@ -0,0 +1,102 @@
+package br.com.smartmed.consultas.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * Pedido de um paciente na lista de espera de uma especialidade, opcionalmente restrito a um médico,
+ * com as preferências de data e horário que o paciente aceita. Quando um cancelamento libera um
+ * horário compatível, o paciente é agendado nele com os dados de atendimento guardados aqui.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "listaEspera", indexes = {
+        @Index(name = "idx_lista_espera_status_especialidade", columnList = "status, especialidadeId, dataInicio")
+})
+public class ListaEsperaModel {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Integer id;
+
+    @Version
+    @Column(name = "versao", columnDefinition = "bigint default 0 not null")
+    private long versao;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "pacienteId", nullable = false)
+    @NotNull(message = "O paciente não pode ser nulo.")
+    private PacienteModel paciente;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "especialidadeId", nullable = false)
+    @NotNull(message = "A especialidade não pode ser nula.")
+    private EspecialidadeModel especialidade;
+
+    /**
+     * Médico preferido; {@code null} para aceitar qualquer médico da especialidade.
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "medicoId")
+    private MedicoModel medico;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "recepcionistaId", nullable = false)
+    @NotNull(message = "O recepcionista não pode ser nulo.")
+    private RecepcionistaModel recepcionista;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "formaPagamentoId", nullable = false)
+    @NotNull(message = "A forma de pagamento não pode ser nula.")
+    private FormaPagamentoModel formaPagamento;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "convenioId")
+    private ConvenioModel convenio;
+
+    /**
+     * Primeiro e último dia, inclusive, em que o paciente aceita ser atendido.
+     */
+    @Column(name = "dataInicio", nullable = false)
+    @NotNull(message = "A data inicial não pode ser nula.")
+    private LocalDate dataInicio;
+
+    @Column(name = "dataFim", nullable = false)
+    @NotNull(message = "A data final não pode ser nula.")
+    private LocalDate dataFim;
+
+    /**
+     * Faixa do dia em que a consulta deve começar e terminar; {@code null} para qualquer horário.
+     */
+    @Column(name = "horaInicio")
+    private LocalTime horaInicio;
+
+    @Column(name = "horaFim")
+    private LocalTime horaFim;
+
+    /**
+     * Momento da inclusão na lista; entre pedidos igualmente compatíveis, o mais antigo é atendido primeiro.
+     */
+    @Column(name = "dataHoraInclusao", nullable = false)
+    private LocalDateTime dataHoraInclusao;
+
+    @Column(name = "status", length = 16, nullable = false)
+    @Enumerated(EnumType.STRING)
+    private StatusListaEspera status;
+
+    /**
+     * Consulta agendada para o pedido quando ele foi atendido.
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "consultaId")
+    private ConsultaModel consulta;
+}
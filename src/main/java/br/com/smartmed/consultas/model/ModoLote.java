@@ -0,0 +1,15 @@
+package br.com.smartmed.consultas.model;
+
+/**
+ * Como um lote de comandos de consulta trata a falha de um comando.
+ */
+public enum ModoLote {
+    /**
+     * A falha de qualquer comando desfaz o lote inteiro.
+     */
+    TUDO_OU_NADA,
+    /**
+     * Os comandos que falham são apenas relatados; os demais são confirmados.
+     */
+    MELHOR_ESFORCO
+}
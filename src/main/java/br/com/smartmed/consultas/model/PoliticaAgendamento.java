@@ -0,0 +1,21 @@
+package br.com.smartmed.consultas.model;
+
+/**
+ * Política usada pelo agendamento automático para escolher o médico entre os elegíveis.
+ */
+public enum PoliticaAgendamento {
+    /**
+     * Percorre os médicos em ordem e agenda com o primeiro que tiver algum horário livre.
+     */
+    PRIMEIRO_DISPONIVEL,
+    /**
+     * Pesquisa todos os médicos em paralelo e agenda no horário livre mais cedo entre eles.
+     */
+    MAIS_CEDO,
+    /**
+     * Pesquisa todos os médicos em paralelo e, entre os que têm horário livre na semana do horário mais
+     * cedo encontrado, agenda com o que tiver menos minutos ocupados nessa semana, distribuindo a
+     * demanda entre os médicos da especialidade.
+     */
+    MENOS_OCUPADO
+}
@@ -0,0 +1,19 @@
+package br.com.smartmed.consultas.model;
+
+/**
+ * Situação de um pedido da lista de espera.
+ */
+public enum StatusListaEspera {
+    /**
+     * Aguardando a liberação de um horário compatível.
+     */
+    AGUARDANDO,
+    /**
+     * Atendido: o paciente foi agendado em um horário liberado por um cancelamento.
+     */
+    ATENDIDO,
+    /**
+     * Retirado da lista antes de ser atendido.
+     */
+    CANCELADO
+}
@@ -0,0 +1,10 @@
+package br.com.smartmed.consultas.model;
+
+/**
+ * Operação de um comando do lote de comandos de consulta.
+ */
+public enum TipoComandoConsulta {
+    CADASTRAR,
+    REAGENDAR,
+    CANCELAR
+}
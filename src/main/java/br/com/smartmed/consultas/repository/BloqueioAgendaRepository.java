@@ -0,0 +1,36 @@
+package br.com.smartmed.consultas.repository;
+
+import br.com.smartmed.consultas.model.BloqueioAgendaModel;
+import br.com.smartmed.consultas.rest.dto.BloqueioAgendaDTO;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface BloqueioAgendaRepository extends JpaRepository<BloqueioAgendaModel, Integer> {
+
+    /**
+     * Lista todos os bloqueios como projeção, sem carregar os médicos.
+     *
+     * @return Lista de bloqueios ordenada pela data inicial.
+     */
+    @Query("SELECT new br.com.smartmed.consultas.rest.dto.BloqueioAgendaDTO(b.id, b.dataInicio, b.dataFim, b.motivo, m.id) " +
+            "FROM BloqueioAgendaModel b LEFT JOIN b.medico m " +
+            "ORDER BY b.dataInicio")
+    List<BloqueioAgendaDTO> findAllBloqueios();
+
+    /**
+     * Lista os bloqueios que afetam um médico: os dele e os da clínica inteira.
+     *
+     * @param medicoId ID do médico.
+     * @return Lista de bloqueios ordenada pela data inicial.
+     */
+    @Query("SELECT new br.com.smartmed.consultas.rest.dto.BloqueioAgendaDTO(b.id, b.dataInicio, b.dataFim, b.motivo, m.id) " +
+            "FROM BloqueioAgendaModel b LEFT JOIN b.medico m " +
+            "WHERE m IS NULL OR m.id = :medicoId " +
+            "ORDER BY b.dataInicio")
+    List<BloqueioAgendaDTO> findBloqueiosByMedico(@Param("medicoId") Integer medicoId);
+}
@@ -0,0 +1,32 @@
+package br.com.smartmed.consultas.repository;
+
+import br.com.smartmed.consultas.model.ConsultaModel;
+
+import java.util.List;
+
+/**
+ * Operações em lote sobre consultas, executadas diretamente via JDBC.
+ */
+public interface ConsultaLoteRepository {
+
+    /**
+     * Insere as consultas com um único comando JDBC em lote e preenche o ID gerado de cada uma.
+     * As consultas não passam pelo ciclo de vida do JPA: os campos calculados devem ter sido
+     * preenchidos antes, com {@link ConsultaModel#prepararPersistencia()}.
+     *
+     * @param consultas Consultas novas, ainda sem ID.
+     */
+    void inserirEmLote(List<ConsultaModel> consultas);
+
+    /**
+     * Cancela as consultas com um único comando JDBC em lote, liberando os horários reservados e
+     * zerando o valor, como o cancelamento via JPA. Cada consulta só é alterada se ainda estiver na
+     * versão lida; as entidades informadas não são modificadas.
+     *
+     * @param consultas   Consultas a cancelar.
+     * @param observacoes Observação gravada em cada consulta, na mesma ordem.
+     * @throws org.springframework.dao.OptimisticLockingFailureException Se alguma consulta tiver sido
+     *                                                                   alterada por outra transação.
+     */
+    void cancelarEmLote(List<ConsultaModel> consultas, List<String> observacoes);
+}
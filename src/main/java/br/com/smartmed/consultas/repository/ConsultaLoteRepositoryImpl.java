@@ -0,0 +1,115 @@
+package br.com.smartmed.consultas.repository;
+
+import br.com.smartmed.consultas.model.ConsultaModel;
+import br.com.smartmed.consultas.model.ConsultaStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementação de {@link ConsultaLoteRepository}, incorporada ao {@link ConsultaRepository} pelo Spring Data.
+ * O Hibernate não agrupa inserções em tabelas com ID {@code IDENTITY}, por isso o lote é feito via JDBC.
+ */
+public class ConsultaLoteRepositoryImpl implements ConsultaLoteRepository {
+
+    private static final String INSERT_CONSULTA = "INSERT INTO consulta (dataHoraConsulta, dataHoraFim, " +
+            "horarioReservado, versao, status, valor, observacoes, pacienteId, medicoId, formaPagamentoId, " +
+            "convenioId, recepcionistaId) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String CANCELA_CONSULTA = "UPDATE consulta SET status = ?, horarioReservado = NULL, " +
+            "valor = 0, observacoes = ?, versao = versao + 1 WHERE id = ? AND versao = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void inserirEmLote(List<ConsultaModel> consultas) {
+        if (consultas.isEmpty()) {
+            return;
+        }
+        KeyHolder chaves = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                con -> con.prepareStatement(INSERT_CONSULTA, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ConsultaModel consulta = consultas.get(i);
+                        ps.setTimestamp(1, timestamp(consulta.getDataHoraConsulta()));
+                        ps.setTimestamp(2, timestamp(consulta.getDataHoraFim()));
+                        ps.setTimestamp(3, timestamp(consulta.getHorarioReservado()));
+                        ps.setLong(4, consulta.getVersao());
+                        ps.setString(5, consulta.getStatus().name());
+                        ps.setBigDecimal(6, consulta.getValor());
+                        ps.setString(7, consulta.getObservacoes());
+                        ps.setInt(8, consulta.getPaciente().getId());
+                        ps.setInt(9, consulta.getMedico().getId());
+                        setId(ps, 10, consulta.getFormaPagamento() != null ? consulta.getFormaPagamento().getId() : null);
+                        setId(ps, 11, consulta.getConvenio() != null ? consulta.getConvenio().getId() : null);
+                        ps.setInt(12, consulta.getRecepcionista().getId());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return consultas.size();
+                    }
+                },
+                chaves);
+
+        List<Map<String, Object>> ids = chaves.getKeyList();
+        for (int i = 0; i < consultas.size(); i++) {
+            consultas.get(i).setId(((Number) ids.get(i).values().iterator().next()).intValue());
+        }
+    }
+
+    @Override
+    public void cancelarEmLote(List<ConsultaModel> consultas, List<String> observacoes) {
+        if (consultas.isEmpty()) {
+            return;
+        }
+        int[] alteradas = jdbcTemplate.batchUpdate(CANCELA_CONSULTA, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ConsultaModel consulta = consultas.get(i);
+                ps.setString(1, ConsultaStatus.CANCELADA.name());
+                ps.setString(2, observacoes.get(i));
+                ps.setInt(3, consulta.getId());
+                ps.setLong(4, consulta.getVersao());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return consultas.size();
+            }
+        });
+        for (int i = 0; i < alteradas.length; i++) {
+            if (alteradas[i] == 0) {
+                throw new OptimisticLockingFailureException(
+                        "A consulta ID " + consultas.get(i).getId() + " foi alterada por outra transação.");
+            }
+        }
+    }
+
+    private static Timestamp timestamp(LocalDateTime dataHora) {
+        return dataHora != null ? Timestamp.valueOf(dataHora) : null;
+    }
+
+    private static void setId(PreparedStatement ps, int indice, Integer id) throws SQLException {
+        if (id != null) {
+            ps.setInt(indice, id);
+        } else {
+            ps.setNull(indice, Types.INTEGER);
+        }
+    }
+}
@@ -2,17 +2,23 @@ package br.com.smartmed.consultas.repository;
 
 import br.com.smartmed.consultas.model.ConsultaModel;
 import br.com.smartmed.consultas.model.ConsultaStatus;
+import br.com.smartmed.consultas.rest.dto.FaturamentoAgrupadoDTO;
+import br.com.smartmed.consultas.rest.dto.OcupacaoAgendaDTO;
 import br.com.smartmed.consultas.rest.dto.RankingMedicoDTO;
+import br.com.smartmed.consultas.rest.dto.ReferenciasCadastroDTO;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
-public interface ConsultaRepository extends JpaRepository<ConsultaModel, Integer> {
+public interface ConsultaRepository extends JpaRepository<ConsultaModel, Integer>, ConsultaLoteRepository {
 
     /**
      * Busca todas as consultas de um paciente específico.
@@ -50,14 +56,54 @@ public interface ConsultaRepository extends JpaRepository<ConsultaModel, Integer
             @Param("dataInicio") LocalDateTime dataInicio,
             @Param("dataFim") LocalDateTime dataFim);
 
-    @Query("SELECT c FROM ConsultaModel c " +
-            "WHERE c.medico.id = :medicoId " +
-            "AND c.dataHoraConsulta BETWEEN :inicioPeriodo AND :fimPeriodo")
-    List<ConsultaModel> findConsultasByMedicoAndPeriod(
-            @Param("medicoId") Integer medicoId,
-            @Param("inicioPeriodo") LocalDateTime inicioPeriodo,
-            @Param("fimPeriodo") LocalDateTime fimPeriodo
-    );
+    /**
+     * Verifica se há alguma consulta realizada no período, sem carregar as consultas.
+     */
+    @Query("SELECT COUNT(c) > 0 FROM ConsultaModel c " +
+            "WHERE c.status = 'REALIZADA' " +
+            "AND c.dataHoraConsulta BETWEEN :dataInicio AND :dataFim")
+    boolean existsRealizadasByPeriodo(
+            @Param("dataInicio") LocalDateTime dataInicio,
+            @Param("dataFim") LocalDateTime dataFim);
+
+    /**
+     * Soma o valor das consultas realizadas no período, sem carregar as consultas.
+     *
+     * @return Total faturado, zero se não houver consulta realizada no período.
+     */
+    @Query("SELECT COALESCE(SUM(c.valor), 0) FROM ConsultaModel c " +
+            "WHERE c.status = 'REALIZADA' " +
+            "AND c.dataHoraConsulta BETWEEN :dataInicio AND :dataFim")
+    BigDecimal sumValorRealizadasByPeriodo(
+            @Param("dataInicio") LocalDateTime dataInicio,
+            @Param("dataFim") LocalDateTime dataFim);
+
+    /**
+     * Soma o valor das consultas realizadas no período por forma de pagamento, uma linha por forma.
+     */
+    @Query("SELECT new br.com.smartmed.consultas.rest.dto.FaturamentoAgrupadoDTO(f.descricao, COALESCE(SUM(c.valor), 0)) " +
+            "FROM ConsultaModel c JOIN c.formaPagamento f " +
+            "WHERE c.status = 'REALIZADA' " +
+            "AND c.dataHoraConsulta BETWEEN :dataInicio AND :dataFim " +
+            "GROUP BY f.id, f.descricao " +
+            "ORDER BY SUM(c.valor) DESC")
+    List<FaturamentoAgrupadoDTO> sumValorRealizadasByFormaPagamento(
+            @Param("dataInicio") LocalDateTime dataInicio,
+            @Param("dataFim") LocalDateTime dataFim);
+
+    /**
+     * Soma o valor das consultas realizadas no período por convênio, uma linha por convênio, com a
+     * porcentagem de desconto dele. Consultas sem convênio ficam de fora.
+     */
+    @Query("SELECT new br.com.smartmed.consultas.rest.dto.FaturamentoAgrupadoDTO(cv.nome, cv.porcentagemDesconto, COALESCE(SUM(c.valor), 0)) " +
+            "FROM ConsultaModel c JOIN c.convenio cv " +
+            "WHERE c.status = 'REALIZADA' " +
+            "AND c.dataHoraConsulta BETWEEN :dataInicio AND :dataFim " +
+            "GROUP BY cv.id, cv.nome, cv.porcentagemDesconto " +
+            "ORDER BY SUM(c.valor) DESC")
+    List<FaturamentoAgrupadoDTO> sumValorRealizadasByConvenio(
+            @Param("dataInicio") LocalDateTime dataInicio,
+            @Param("dataFim") LocalDateTime dataFim);
 
     @Query("SELECT c FROM ConsultaModel c " +
             "WHERE c.paciente.id = :pacienteId " +
@@ -75,52 +121,276 @@ public interface ConsultaRepository extends JpaRepository<ConsultaModel, Integer
             @Param("especialidadeId") Integer especialidadeId
     );
 
-    @Query("SELECT c FROM ConsultaModel c " +
+    /**
+     * Verifica se alguma consulta que ocupa a agenda do médico se sobrepõe ao intervalo
+     * [inicioSlot, fimSlot). Usa apenas colunas de consulta cobertas pelo índice
+     * (medicoId, dataHoraConsulta, dataHoraFim), sem junção com médico, e o início da consulta é
+     * limitado a [inicioBusca, fimSlot), de modo que a verificação é uma única faixa curta do índice.
+     *
+     * @param inicioBusca        Início mais antigo de uma consulta que ainda pode alcançar o intervalo
+     *                           ({@code inicioSlot} menos {@link ConsultaModel#DURACAO_MAXIMA}).
+     * @param consultaIgnoradaId Consulta desconsiderada (a que está sendo reagendada), ou {@code null}.
+     */
+    @Query("SELECT COUNT(c) > 0 FROM ConsultaModel c " +
             "WHERE c.medico.id = :medicoId " +
-            "AND c.dataHoraConsulta >= :inicioDoDia " +
-            "AND c.dataHoraConsulta <= :fimDoDia")
-    List<ConsultaModel> findConsultasByMedicoAndDate(
+            "AND c.status IN ('AGENDADA', 'REALIZADA') " +
+            "AND c.dataHoraConsulta >= :inicioBusca " +
+            "AND c.dataHoraConsulta < :fimSlot " +
+            "AND c.dataHoraFim > :inicioSlot " +
+            "AND (:consultaIgnoradaId IS NULL OR c.id <> :consultaIgnoradaId)")
+    boolean existsByMedicoAndPeriod(
             @Param("medicoId") Integer medicoId,
-            @Param("inicioDoDia") LocalDateTime inicioDoDia,
-            @Param("fimDoDia") LocalDateTime fimDoDia
+            @Param("inicioBusca") LocalDateTime inicioBusca,
+            @Param("inicioSlot") LocalDateTime inicioSlot,
+            @Param("fimSlot") LocalDateTime fimSlot,
+            @Param("consultaIgnoradaId") Integer consultaIgnoradaId
     );
 
-    @Query("SELECT c FROM ConsultaModel c " +
-            "WHERE c.status = 'REALIZADA' " +
-            "AND c.dataHoraConsulta BETWEEN :dataInicio AND :dataFim " +
-            "AND (:medicoId IS NULL OR c.medico.id = :medicoId) " +
-            "AND (:pacienteId IS NULL OR c.paciente.id = :pacienteId) " +
-            "AND (:formaPagamentoId IS NULL OR c.formaPagamento.id = :formaPagamentoId) " +
-            "AND (:convenioId IS NULL OR c.convenio.id = :convenioId)")
-    List<ConsultaModel> findByFaturamentoPeriodo(
-            @Param("dataInicio") LocalDateTime dataInicio,
-            @Param("dataFim") LocalDateTime dataFim,
-            @Param("medicoId") Integer medicoId,
+    /**
+     * Verifica se o paciente tem, com qualquer médico, alguma consulta que ocupa a agenda e se
+     * sobrepõe ao intervalo [inicioSlot, fimSlot). O início da consulta é limitado a
+     * [inicioBusca, fimSlot), de modo que a verificação é uma única faixa do índice
+     * (pacienteId, dataHoraConsulta).
+     *
+     * @param inicioBusca        Início mais antigo de uma consulta que ainda pode alcançar o intervalo
+     *                           ({@code inicioSlot} menos {@link ConsultaModel#DURACAO_MAXIMA}).
+     * @param consultaIgnoradaId Consulta desconsiderada (a que está sendo reagendada), ou {@code null}.
+     */
+    @Query("SELECT COUNT(c) > 0 FROM ConsultaModel c " +
+            "WHERE c.paciente.id = :pacienteId " +
+            "AND c.dataHoraConsulta >= :inicioBusca " +
+            "AND c.dataHoraConsulta < :fimSlot " +
+            "AND c.dataHoraFim > :inicioSlot " +
+            "AND c.status IN ('AGENDADA', 'REALIZADA') " +
+            "AND (:consultaIgnoradaId IS NULL OR c.id <> :consultaIgnoradaId)")
+    boolean existsByPacienteAndPeriod(
             @Param("pacienteId") Integer pacienteId,
-            @Param("formaPagamentoId") Integer formaPagamentoId,
-            @Param("convenioId") Integer convenioId
+            @Param("inicioBusca") LocalDateTime inicioBusca,
+            @Param("inicioSlot") LocalDateTime inicioSlot,
+            @Param("fimSlot") LocalDateTime fimSlot,
+            @Param("consultaIgnoradaId") Integer consultaIgnoradaId
     );
 
-    @Query("SELECT COUNT(c) > 0 FROM ConsultaModel c " +
-            "WHERE c.medico.id = :medicoId " +
-            "AND c.dataHoraConsulta < :fimSlot " +
-            "AND c.dataHoraConsulta > :inicioSlot")
-    boolean existsByMedicoAndPeriod(
+    /**
+     * Busca as ocupações de um paciente, com qualquer médico, que se sobrepõem ao período informado,
+     * percorrendo uma única faixa do índice (pacienteId, dataHoraConsulta).
+     *
+     * @param pacienteId  ID do paciente.
+     * @param inicioBusca Início mais antigo de uma consulta que ainda pode alcançar o período.
+     * @param inicio      Início do período.
+     * @param fim         Fim do período.
+     * @param status      Status que ocupam a agenda.
+     * @return Lista de ocupações do paciente no período, ordenadas pelo início.
+     */
+    @Query("SELECT new br.com.smartmed.consultas.rest.dto.OcupacaoAgendaDTO(c.id, c.dataHoraConsulta, c.dataHoraFim, c.medico.id) " +
+            "FROM ConsultaModel c " +
+            "WHERE c.paciente.id = :pacienteId " +
+            "AND c.dataHoraConsulta >= :inicioBusca " +
+            "AND c.dataHoraConsulta < :fim " +
+            "AND c.dataHoraFim > :inicio " +
+            "AND c.status IN :status " +
+            "ORDER BY c.dataHoraConsulta")
+    List<OcupacaoAgendaDTO> findOcupacoesByPacienteAndPeriodo(
+            @Param("pacienteId") Integer pacienteId,
+            @Param("inicioBusca") LocalDateTime inicioBusca,
+            @Param("inicio") LocalDateTime inicio,
+            @Param("fim") LocalDateTime fim,
+            @Param("status") Collection<ConsultaStatus> status);
+
+    /**
+     * Lê em uma única consulta os envolvidos de um cadastro: médico (com a especialidade), paciente e
+     * convênio completos, a situação do recepcionista e se a forma de pagamento existe. Não retorna
+     * linha se o médico ou o paciente não existirem; o convênio vem nulo se não for informado ou não
+     * existir.
+     */
+    @Query("SELECT new br.com.smartmed.consultas.rest.dto.ReferenciasCadastroDTO(m, p, cv, " +
+            "(SELECT r.ativo FROM RecepcionistaModel r WHERE r.id = :recepcionistaId), " +
+            "(SELECT COUNT(f) FROM FormaPagamentoModel f WHERE f.id = :formaPagamentoId)) " +
+            "FROM MedicoModel m JOIN FETCH m.especialidade, PacienteModel p " +
+            "LEFT JOIN ConvenioModel cv ON cv.id = :convenioId " +
+            "WHERE m.id = :medicoId " +
+            "AND p.id = :pacienteId")
+    Optional<ReferenciasCadastroDTO> findReferenciasCadastro(
             @Param("medicoId") Integer medicoId,
-            @Param("inicioSlot") LocalDateTime inicioSlot,
-            @Param("fimSlot") LocalDateTime fimSlot
+            @Param("pacienteId") Integer pacienteId,
+            @Param("recepcionistaId") Integer recepcionistaId,
+            @Param("formaPagamentoId") Integer formaPagamentoId,
+            @Param("convenioId") Integer convenioId
     );
 
     @Query("SELECT new br.com.smartmed.consultas.rest.dto.RankingMedicoDTO(c.medico.nome, COUNT(c)) " +
             "FROM ConsultaModel c " +
-            "WHERE FUNCTION('MONTH', c.dataHoraConsulta) = :mes " +
-            "AND FUNCTION('YEAR', c.dataHoraConsulta) = :ano " +
-            "AND c.status = :status " +
+            "WHERE c.status = :status " +
+            "AND c.dataHoraConsulta >= :inicioMes " +
+            "AND c.dataHoraConsulta < :inicioMesSeguinte " +
             "GROUP BY c.medico.nome " +
             "ORDER BY COUNT(c) DESC")
     Page<RankingMedicoDTO> findRankingMedicos(
-            @Param("mes") Integer mes,
-            @Param("ano") Integer ano,
+            @Param("inicioMes") LocalDateTime inicioMes,
+            @Param("inicioMesSeguinte") LocalDateTime inicioMesSeguinte,
             @Param("status") ConsultaStatus status,
             Pageable pageable);
-}
\ No newline at end of file
+
+    /**
+     * Busca apenas o ID do médico de uma consulta.
+     *
+     * @param consultaId ID da consulta.
+     * @return ID do médico, se a consulta existir.
+     */
+    @Query("SELECT c.medico.id FROM ConsultaModel c WHERE c.id = :consultaId")
+    Optional<Integer> findMedicoIdById(@Param("consultaId") Integer consultaId);
+
+    /**
+     * Busca apenas o ID do paciente de uma consulta.
+     *
+     * @param consultaId ID da consulta.
+     * @return ID do paciente, se a consulta existir.
+     */
+    @Query("SELECT c.paciente.id FROM ConsultaModel c WHERE c.id = :consultaId")
+    Optional<Integer> findPacienteIdById(@Param("consultaId") Integer consultaId);
+
+    /**
+     * Busca as ocupações (início e fim) de um médico, sem carregar as associações da consulta.
+     *
+     * @param medicoId ID do médico.
+     * @param status   Status que ocupam a agenda.
+     * @return Lista de ocupações do médico.
+     */
+    @Query("SELECT new br.com.smartmed.consultas.rest.dto.OcupacaoAgendaDTO(c.id, c.dataHoraConsulta, c.dataHoraFim, c.medico.id) " +
+            "FROM ConsultaModel c " +
+            "WHERE c.medico.id = :medicoId " +
+            "AND c.status IN :status")
+    List<OcupacaoAgendaDTO> findOcupacoesByMedico(
+            @Param("medicoId") Integer medicoId,
+            @Param("status") Collection<ConsultaStatus> status);
+
+    /**
+     * Busca as consultas de um médico com o status informado que começam no período, já com paciente,
+     * recepcionista, forma de pagamento e convênio, ordenadas pelo início.
+     *
+     * @param medicoId ID do médico.
+     * @param status   Status das consultas.
+     * @param inicio   Início do período (inclusive).
+     * @param fim      Fim do período (exclusive).
+     * @return Lista de consultas do médico no período.
+     */
+    @Query("SELECT c FROM ConsultaModel c " +
+            "JOIN FETCH c.medico JOIN FETCH c.paciente JOIN FETCH c.recepcionista " +
+            "LEFT JOIN FETCH c.formaPagamento LEFT JOIN FETCH c.convenio " +
+            "WHERE c.medico.id = :medicoId " +
+            "AND c.status = :status " +
+            "AND c.dataHoraConsulta >= :inicio " +
+            "AND c.dataHoraConsulta < :fim " +
+            "ORDER BY c.dataHoraConsulta")
+    List<ConsultaModel> findConsultasByMedicoStatusAndPeriodo(
+            @Param("medicoId") Integer medicoId,
+            @Param("status") ConsultaStatus status,
+            @Param("inicio") LocalDateTime inicio,
+            @Param("fim") LocalDateTime fim);
+
+    /**
+     * Busca, em uma única consulta, as ocupações de vários médicos que se sobrepõem a um período,
+     * ordenadas pelo início. O início das consultas é limitado a [inicioBusca, fim), uma faixa curta
+     * do índice (medicoId, dataHoraConsulta) por médico.
+     *
+     * @param medicoIds   IDs dos médicos.
+     * @param inicioBusca Início mais antigo de uma consulta que ainda pode alcançar o período
+     *                    ({@code inicio} menos {@link ConsultaModel#DURACAO_MAXIMA}).
+     * @param inicio      Início do período.
+     * @param fim         Fim do período.
+     * @param status      Status que ocupam a agenda.
+     * @return Lista de ocupações dos médicos no período.
+     */
+    @Query("SELECT new br.com.smartmed.consultas.rest.dto.OcupacaoAgendaDTO(c.id, c.dataHoraConsulta, c.dataHoraFim, c.medico.id) " +
+            "FROM ConsultaModel c " +
+            "WHERE c.medico.id IN :medicoIds " +
+            "AND c.status IN :status " +
+            "AND c.dataHoraConsulta >= :inicioBusca " +
+            "AND c.dataHoraConsulta < :fim " +
+            "AND c.dataHoraFim > :inicio " +
+            "ORDER BY c.dataHoraConsulta")
+    List<OcupacaoAgendaDTO> findOcupacoesByMedicosAndPeriodo(
+            @Param("medicoIds") Collection<Integer> medicoIds,
+            @Param("inicioBusca") LocalDateTime inicioBusca,
+            @Param("inicio") LocalDateTime inicio,
+            @Param("fim") LocalDateTime fim,
+            @Param("status") Collection<ConsultaStatus> status);
+
+    /**
+     * Encontra, em uma única instrução, o início da primeira lacuna de pelo menos {@code duracao}
+     * minutos na agenda de um médico, dentro de um turno do expediente e apenas em dias sem feriado,
+     * recesso ou bloqueio de agenda do médico.
+     * <p>
+     * Os turnos vêm do expediente semanal do médico (um ou dois por dia da semana, conforme haja
+     * intervalo) ou, se ele não tiver um, do expediente único do cadastro, de segunda a sexta. Para
+     * cada turno de cada dia do período, a abertura e o fechamento entram como marcos junto com as
+     * consultas que ocupam a agenda, procuradas apenas entre um dia antes da abertura (a maior duração
+     * de uma consulta) e o fechamento, uma faixa curta do índice por turno; ordenados por início, cada
+     * marco é comparado com o seguinte (LEAD) e a lacuna é o intervalo entre o maior fim acumulado e o
+     * próximo início. O início da lacuna é arredondado para cima até o próximo horário da grade do
+     * turno (abertura do turno mais um múltiplo de {@code passo}), como na busca em memória, e só então
+     * comparado com o fim.
+     *
+     * @param medicoId ID do médico.
+     * @param inicio   Data/hora a partir da qual buscar.
+     * @param limite   Data/hora limite para o início da lacuna.
+     * @param duracao  Duração mínima da lacuna, em minutos.
+     * @param passo    Intervalo, em minutos, entre os horários da grade do médico.
+     * @return O início da primeira lacuna encontrada, se houver.
+     */
+    @Query(value = "WITH RECURSIVE dias(dia) AS ( " +
+            "    SELECT CAST(:inicio AS DATE) " +
+            "    UNION ALL " +
+            "    SELECT DATEADD(DAY, 1, dia) FROM dias WHERE dia < CAST(:limite AS DATE) " +
+            "), turnos(diaSemana, inicioTurno, fimTurno) AS ( " +
+            "    SELECT e.diaSemana + 1, e.horaInicio, COALESCE(e.inicioIntervalo, e.horaFim) " +
+            "    FROM expedienteMedico e WHERE e.medicoId = :medicoId " +
+            "    UNION ALL " +
+            "    SELECT e.diaSemana + 1, e.fimIntervalo, e.horaFim " +
+            "    FROM expedienteMedico e WHERE e.medicoId = :medicoId AND e.inicioIntervalo IS NOT NULL " +
+            "    UNION ALL " +
+            "    SELECT s.X, m.horaInicioExpediente, m.horaFimExpediente " +
+            "    FROM medico m CROSS JOIN SYSTEM_RANGE(1, 5) s " +
+            "    WHERE m.id = :medicoId " +
+            "    AND NOT EXISTS (SELECT 1 FROM expedienteMedico e WHERE e.medicoId = :medicoId) " +
+            "), janelas(turno, abertura, fechamento) AS ( " +
+            "    SELECT DATEADD(MINUTE, HOUR(t.inicioTurno) * 60 + MINUTE(t.inicioTurno), CAST(d.dia AS TIMESTAMP)), " +
+            "           GREATEST(DATEADD(MINUTE, HOUR(t.inicioTurno) * 60 + MINUTE(t.inicioTurno), CAST(d.dia AS TIMESTAMP)), :inicio), " +
+            "           DATEADD(MINUTE, HOUR(t.fimTurno) * 60 + MINUTE(t.fimTurno), CAST(d.dia AS TIMESTAMP)) " +
+            "    FROM dias d JOIN turnos t ON t.diaSemana = ISO_DAY_OF_WEEK(d.dia) " +
+            "    WHERE DATEADD(MINUTE, HOUR(t.fimTurno) * 60 + MINUTE(t.fimTurno), CAST(d.dia AS TIMESTAMP)) > :inicio " +
+            "    AND NOT EXISTS (SELECT 1 FROM bloqueioAgenda b " +
+            "        WHERE (b.medicoId IS NULL OR b.medicoId = :medicoId) " +
+            "        AND d.dia BETWEEN b.dataInicio AND b.dataFim) " +
+            "), marcos(turno, inicio, fim) AS ( " +
+            "    SELECT j.turno, j.abertura, j.abertura FROM janelas j " +
+            "    UNION ALL " +
+            "    SELECT j.turno, c.dataHoraConsulta, c.dataHoraFim " +
+            "    FROM janelas j JOIN consulta c ON c.medicoId = :medicoId " +
+            "        AND c.status IN ('AGENDADA', 'REALIZADA') " +
+            "        AND c.dataHoraConsulta >= DATEADD(DAY, -1, j.abertura) " +
+            "        AND c.dataHoraConsulta < j.fechamento " +
+            "        AND c.dataHoraFim > j.abertura " +
+            "    UNION ALL " +
+            "    SELECT j.turno, j.fechamento, j.fechamento FROM janelas j " +
+            "), lacunas(turno, inicioLacuna, fimLacuna) AS ( " +
+            "    SELECT turno, " +
+            "           MAX(fim) OVER (PARTITION BY turno ORDER BY inicio, fim ROWS BETWEEN UNBOUNDED PRECEDING AND CURRENT ROW), " +
+            "           LEAD(inicio) OVER (PARTITION BY turno ORDER BY inicio, fim) " +
+            "    FROM marcos " +
+            "), alinhadas(inicioLacuna, fimLacuna) AS ( " +
+            "    SELECT DATEADD(MINUTE, (DATEDIFF(SECOND, turno, inicioLacuna) + :passo * 60 - 1) / (:passo * 60) * :passo, turno), " +
+            "           fimLacuna " +
+            "    FROM lacunas WHERE fimLacuna IS NOT NULL " +
+            ") " +
+            "SELECT MIN(inicioLacuna) FROM alinhadas " +
+            "WHERE inicioLacuna < :limite " +
+            "AND DATEADD(MINUTE, :duracao, inicioLacuna) <= fimLacuna",
+            nativeQuery = true)
+    Optional<LocalDateTime> findPrimeiraLacunaDisponivel(
+            @Param("medicoId") Integer medicoId,
+            @Param("inicio") LocalDateTime inicio,
+            @Param("limite") LocalDateTime limite,
+            @Param("duracao") Integer duracao,
+            @Param("passo") Integer passo);
+}
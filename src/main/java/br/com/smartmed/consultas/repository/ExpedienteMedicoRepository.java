@@ -0,0 +1,37 @@
+package br.com.smartmed.consultas.repository;
+
+import br.com.smartmed.consultas.model.ExpedienteMedicoModel;
+import br.com.smartmed.consultas.rest.dto.ExpedienteMedicoDTO;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ExpedienteMedicoRepository extends JpaRepository<ExpedienteMedicoModel, Integer> {
+
+    /**
+     * Lista o expediente semanal de um médico como projeção, sem carregar o médico.
+     *
+     * @param medicoId ID do médico.
+     * @return Lista de expedientes ordenada pelo dia da semana.
+     */
+    @Query("SELECT new br.com.smartmed.consultas.rest.dto.ExpedienteMedicoDTO(" +
+            "e.diaSemana, e.horaInicio, e.horaFim, e.inicioIntervalo, e.fimIntervalo) " +
+            "FROM ExpedienteMedicoModel e " +
+            "WHERE e.medico.id = :medicoId " +
+            "ORDER BY e.diaSemana")
+    List<ExpedienteMedicoDTO> findExpedientesByMedico(@Param("medicoId") Integer medicoId);
+
+    /**
+     * Remove todo o expediente semanal de um médico.
+     *
+     * @param medicoId ID do médico.
+     */
+    @Modifying
+    @Query("DELETE FROM ExpedienteMedicoModel e WHERE e.medico.id = :medicoId")
+    void deleteByMedicoId(@Param("medicoId") Integer medicoId);
+}
@@ -0,0 +1,64 @@
+package br.com.smartmed.consultas.repository;
+
+import br.com.smartmed.consultas.model.ListaEsperaModel;
+import br.com.smartmed.consultas.model.StatusListaEspera;
+import br.com.smartmed.consultas.rest.dto.ListaEsperaDTO;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+@Repository
+public interface ListaEsperaRepository extends JpaRepository<ListaEsperaModel, Integer> {
+
+    /**
+     * Lista os pedidos da lista de espera como projeção, filtrando opcionalmente por especialidade,
+     * médico e status.
+     *
+     * @return Lista de pedidos ordenada pela inclusão.
+     */
+    @Query("SELECT new br.com.smartmed.consultas.rest.dto.ListaEsperaDTO(l.id, p.id, e.id, m.id, r.id, f.id, cv.id, " +
+            "l.dataInicio, l.dataFim, l.horaInicio, l.horaFim, l.dataHoraInclusao, l.status, c.id) " +
+            "FROM ListaEsperaModel l JOIN l.paciente p JOIN l.especialidade e LEFT JOIN l.medico m " +
+            "JOIN l.recepcionista r JOIN l.formaPagamento f LEFT JOIN l.convenio cv LEFT JOIN l.consulta c " +
+            "WHERE (:especialidadeId IS NULL OR e.id = :especialidadeId) " +
+            "AND (:medicoId IS NULL OR m.id = :medicoId) " +
+            "AND (:status IS NULL OR l.status = :status) " +
+            "ORDER BY l.dataHoraInclusao, l.id")
+    List<ListaEsperaDTO> findListaEspera(@Param("especialidadeId") Integer especialidadeId,
+                                        @Param("medicoId") Integer medicoId,
+                                        @Param("status") StatusListaEspera status);
+
+    /**
+     * Busca os pedidos aguardando que aceitam um horário liberado do médico: da especialidade dele,
+     * sem médico preferido ou com ele como preferido, e com a data e a faixa de horário compatíveis.
+     * Os pedidos que escolheram o médico vêm primeiro e, entre eles, os mais antigos.
+     *
+     * @param medicoId        ID do médico do horário liberado.
+     * @param especialidadeId ID da especialidade do médico.
+     * @param data            Data do horário liberado.
+     * @param horaInicio      Hora de início do horário liberado.
+     * @param horaFim         Hora de término do horário liberado.
+     * @param pageable        Quantidade máxima de pedidos.
+     * @return IDs dos pedidos compatíveis, do mais prioritário para o menos.
+     */
+    @Query("SELECT l.id FROM ListaEsperaModel l LEFT JOIN l.medico m " +
+            "WHERE l.status = br.com.smartmed.consultas.model.StatusListaEspera.AGUARDANDO " +
+            "AND l.especialidade.id = :especialidadeId " +
+            "AND (m IS NULL OR m.id = :medicoId) " +
+            "AND l.dataInicio <= :data AND l.dataFim >= :data " +
+            "AND (l.horaInicio IS NULL OR l.horaInicio <= :horaInicio) " +
+            "AND (l.horaFim IS NULL OR l.horaFim >= :horaFim) " +
+            "ORDER BY CASE WHEN m IS NULL THEN 1 ELSE 0 END, l.dataHoraInclusao, l.id")
+    List<Integer> findCandidatosParaHorario(@Param("medicoId") Integer medicoId,
+                                            @Param("especialidadeId") Integer especialidadeId,
+                                            @Param("data") LocalDate data,
+                                            @Param("horaInicio") LocalTime horaInicio,
+                                            @Param("horaFim") LocalTime horaFim,
+                                            Pageable pageable);
+}
@@ -3,8 +3,11 @@ package br.com.smartmed.consultas.repository;
 import br.com.smartmed.consultas.model.EspecialidadeModel;
 import br.com.smartmed.consultas.model.MedicoModel;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -37,4 +40,13 @@ public interface MedicoRepository extends JpaRepository<MedicoModel, Integer> {
     Optional<MedicoModel> findByEmail(String email);
 
     Optional<MedicoModel> findByUsuarioId(Integer usuarioId);
+
+    /**
+     * Bloqueia as linhas dos médicos até o fim da transação corrente, em ordem de ID.
+     *
+     * @param ids IDs dos médicos.
+     * @return IDs dos médicos bloqueados.
+     */
+    @Query(value = "SELECT id FROM medico WHERE id IN (:ids) ORDER BY id FOR UPDATE", nativeQuery = true)
+    List<Integer> bloquearPorIds(@Param("ids") Collection<Integer> ids);
 }
@@ -2,8 +2,12 @@ package br.com.smartmed.consultas.repository;
 
 import br.com.smartmed.consultas.model.PacienteModel;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -42,5 +46,14 @@ public interface PacienteRepository extends JpaRepository<PacienteModel, Integer
      * @return Optional contendo o PacienteModel se encontrado e ativo, ou vazio.
      */
     Optional<PacienteModel> findByIdAndAtivoTrue(Integer id);
+
+    /**
+     * Bloqueia as linhas dos pacientes até o fim da transação corrente, em ordem de ID.
+     *
+     * @param ids IDs dos pacientes.
+     * @return IDs dos pacientes bloqueados.
+     */
+    @Query(value = "SELECT id FROM paciente WHERE id IN (:ids) ORDER BY id FOR UPDATE", nativeQuery = true)
+    List<Integer> bloquearPorIds(@Param("ids") Collection<Integer> ids);
 }
 
@@ -0,0 +1,45 @@
+package br.com.smartmed.consultas.rest.controller;
+
+import br.com.smartmed.consultas.rest.dto.BloqueioAgendaDTO;
+import br.com.smartmed.consultas.service.CalendarioAgendaService;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/bloqueio-agenda")
+public class BloqueioAgendaController {
+
+    @Autowired
+    private CalendarioAgendaService calendarioAgendaService;
+
+    /**
+     * Lista os feriados, recessos e bloqueios de agenda. Se o médico for informado, apenas os que o afetam.
+     * Link: http://localhost:8080/api/bloqueio-agenda?medicoId=1
+     */
+    @GetMapping
+    public ResponseEntity<List<BloqueioAgendaDTO>> listar(@RequestParam(required = false) Integer medicoId) {
+        return ResponseEntity.ok(calendarioAgendaService.listar(medicoId));
+    }
+
+    /**
+     * Cadastra um bloqueio da clínica inteira (sem médico) ou de um médico.
+     */
+    @PostMapping
+    public ResponseEntity<BloqueioAgendaDTO> salvar(@RequestBody @Valid BloqueioAgendaDTO bloqueio) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(calendarioAgendaService.salvar(bloqueio));
+    }
+
+    /**
+     * Remove um bloqueio pelo ID.
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deletar(@PathVariable int id) {
+        calendarioAgendaService.deletar(id);
+        return ResponseEntity.noContent().build();
+    }
+}
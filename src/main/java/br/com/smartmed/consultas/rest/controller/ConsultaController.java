@@ -3,6 +3,8 @@ package br.com.smartmed.consultas.rest.controller;
 import br.com.smartmed.consultas.model.ConsultaModel;
 import br.com.smartmed.consultas.rest.dto.*;
 import br.com.smartmed.consultas.service.ConsultaService;
+import br.com.smartmed.consultas.service.FilaAgendaMedicoService;
+import br.com.smartmed.consultas.service.PreReservaService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -11,6 +13,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Controlador responsável por gerenciar as operações relacionadas às consultas.
@@ -26,6 +29,19 @@ public class ConsultaController {
     @Autowired
     private ConsultaService consultaService;
 
+    /**
+     * Executa os comandos de cadastro, reagendamento e cancelamento, opcionalmente
+     * serializados em uma fila por médico.
+     */
+    @Autowired
+    private FilaAgendaMedicoService filaAgendaMedicoService;
+
+    /**
+     * Segura horários temporariamente enquanto a recepção confirma com o paciente.
+     */
+    @Autowired
+    private PreReservaService preReservaService;
+
     /**
      * Obtém uma consulta pelo ID.
      * Link: http://localhost:8080/api/consulta/{id}
@@ -95,10 +111,99 @@ public class ConsultaController {
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
+    /**
+     * Endpoint para agendar automaticamente um lote de consultas (ex.: campanhas), com o resultado de cada item.
+     * Link: http://localhost:8080/api/consulta/agendar-automatico/lote
+     *
+     * @param request DTO com a lista de agendamentos.
+     * @return ResponseEntity com o AgendamentoLoteResponseDTO.
+     */
+    @PostMapping("/agendar-automatico/lote")
+    public ResponseEntity<AgendamentoLoteResponseDTO> agendarEmLote(@Valid @RequestBody AgendamentoLoteRequestDTO request) {
+        return ResponseEntity.ok(consultaService.agendarEmLote(request));
+    }
+
+    /**
+     * Endpoint para sugerir os horários livres mais cedo entre os médicos elegíveis, sem agendar.
+     * Link: http://localhost:8080/api/consulta/agendar-automatico/sugestoes
+     *
+     * @param request DTO com os critérios do agendamento e a quantidade de sugestões.
+     * @return ResponseEntity com a lista de HorarioSugeridoDTO.
+     */
+    @PostMapping("/agendar-automatico/sugestoes")
+    public ResponseEntity<List<HorarioSugeridoDTO>> sugerirHorarios(@Valid @RequestBody AgendamentoAutomaticoRequestDTO request) {
+        return ResponseEntity.ok(consultaService.sugerirHorarios(request));
+    }
+
+    /**
+     * Endpoint para agendar um dos horários sugeridos.
+     * Link: http://localhost:8080/api/consulta/agendar-automatico/confirmar
+     *
+     * @param request DTO com os critérios do agendamento, o médico e a data/hora escolhidos.
+     * @return ResponseEntity com o AgendamentoAutomaticoResponseDTO.
+     */
+    @PostMapping("/agendar-automatico/confirmar")
+    public ResponseEntity<AgendamentoAutomaticoResponseDTO> confirmarSugestao(@Valid @RequestBody ConfirmacaoSugestaoRequestDTO request) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(consultaService.confirmarSugestao(request));
+    }
+
+    /**
+     * Endpoint para segurar um horário por alguns minutos enquanto a recepção confirma com o paciente.
+     * O ID retornado pode ser informado no cadastro ou na confirmação de sugestão.
+     * Link: http://localhost:8080/api/consulta/pre-reserva
+     *
+     * @param request DTO com o médico, a data/hora e, opcionalmente, a duração.
+     * @return ResponseEntity com o PreReservaDTO.
+     */
+    @PostMapping("/pre-reserva")
+    public ResponseEntity<PreReservaDTO> criarPreReserva(@Valid @RequestBody PreReservaRequestDTO request) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(preReservaService.criar(request));
+    }
+
+    /**
+     * Endpoint para liberar uma pré-reserva antes de ela expirar.
+     * Link: http://localhost:8080/api/consulta/pre-reserva/{id}
+     *
+     * @param id ID da pré-reserva.
+     * @return ResponseEntity sem conteúdo.
+     */
+    @DeleteMapping("/pre-reserva/{id}")
+    public ResponseEntity<Void> liberarPreReserva(@PathVariable String id) {
+        preReservaService.liberar(id);
+        return ResponseEntity.noContent().build();
+    }
+
     @PostMapping("/cadastrar")
-    public ResponseEntity<CadastrarConsultaResponseDTO> cadastrarConsulta(@Valid @RequestBody CadastrarConsultaRequestDTO request) {
-        CadastrarConsultaResponseDTO response = consultaService.cadastrarConsulta(request);
-        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    public CompletableFuture<ResponseEntity<CadastrarConsultaResponseDTO>> cadastrarConsulta(@Valid @RequestBody CadastrarConsultaRequestDTO request) {
+        return filaAgendaMedicoService.cadastrarConsulta(request)
+                .thenApply(response -> ResponseEntity.status(HttpStatus.CREATED).body(response));
+    }
+
+    /**
+     * Endpoint para executar um lote ordenado de comandos de cadastro, reagendamento e cancelamento em
+     * uma única transação, no modo tudo ou nada (padrão) ou de melhor esforço.
+     * Link: http://localhost:8080/api/consulta/batch
+     *
+     * @param request DTO com o modo e a lista de comandos.
+     * @return ResponseEntity com o LoteComandosResponseDTO.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<LoteComandosResponseDTO> executarLoteComandos(@Valid @RequestBody LoteComandosRequestDTO request) {
+        return ResponseEntity.ok(consultaService.executarLoteComandos(request));
+    }
+
+    /**
+     * Endpoint para cadastrar uma série de consultas recorrentes (semanal, quinzenal ou mensal), com o
+     * resultado de cada data da série.
+     * Link: http://localhost:8080/api/consulta/serie
+     *
+     * @param request DTO com a primeira consulta, a regra de recorrência e os envolvidos.
+     * @return ResponseEntity com o SerieConsultasResponseDTO.
+     */
+    @PostMapping("/serie")
+    public CompletableFuture<ResponseEntity<SerieConsultasResponseDTO>> cadastrarSerie(@Valid @RequestBody SerieConsultasRequestDTO request) {
+        return filaAgendaMedicoService.cadastrarSerie(request)
+                .thenApply(response -> ResponseEntity.status(HttpStatus.CREATED).body(response));
     }
 
     /**
@@ -122,19 +227,33 @@ public class ConsultaController {
      * @return Resposta com uma mensagem de sucesso e o novo status.
      */
     @PutMapping("/cancelar")
-    public ResponseEntity<Map<String, String>> cancelarConsulta(@Valid @RequestBody CancelamentoConsultaDTO cancelamentoDTO) {
-        consultaService.cancelarConsulta(cancelamentoDTO);
-        return ResponseEntity.status(HttpStatus.OK).body(
-                Map.of(
-                        "mensagem", "Consulta cancelada com sucesso",
-                        "statusAtual", "CANCELADA"
-                )
-        );
+    public CompletableFuture<ResponseEntity<Map<String, String>>> cancelarConsulta(@Valid @RequestBody CancelamentoConsultaDTO cancelamentoDTO) {
+        return filaAgendaMedicoService.cancelarConsulta(cancelamentoDTO)
+                .thenApply(consulta -> ResponseEntity.status(HttpStatus.OK).body(
+                        Map.of(
+                                "mensagem", "Consulta cancelada com sucesso",
+                                "statusAtual", "CANCELADA"
+                        )
+                ));
     }
 
     @PutMapping("/reagendar")
-    public ResponseEntity<ReagendarConsultaResponseDTO> reagendarConsulta(@Valid @RequestBody ReagendarConsultaRequestDTO request) {
-        ReagendarConsultaResponseDTO response = consultaService.reagendarConsulta(request);
-        return ResponseEntity.ok(response);
+    public CompletableFuture<ResponseEntity<ReagendarConsultaResponseDTO>> reagendarConsulta(@Valid @RequestBody ReagendarConsultaRequestDTO request) {
+        return filaAgendaMedicoService.reagendarConsulta(request)
+                .thenApply(ResponseEntity::ok);
+    }
+
+    /**
+     * Endpoint para reagendar todas as consultas de um médico em uma data (ex.: ausência do médico),
+     * com o resultado de cada consulta. Se solicitado, a data é bloqueada na agenda do médico quando
+     * nenhuma consulta dela continua agendada.
+     * Link: http://localhost:8080/api/consulta/reagendar-dia
+     *
+     * @param request DTO com o médico, a data e o motivo.
+     * @return ResponseEntity com o ReagendamentoDiaResponseDTO.
+     */
+    @PutMapping("/reagendar-dia")
+    public ResponseEntity<ReagendamentoDiaResponseDTO> reagendarDia(@Valid @RequestBody ReagendamentoDiaRequestDTO request) {
+        return ResponseEntity.ok(consultaService.reagendarDia(request));
     }
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+package br.com.smartmed.consultas.rest.controller;
+
+import br.com.smartmed.consultas.model.StatusListaEspera;
+import br.com.smartmed.consultas.rest.dto.ListaEsperaDTO;
+import br.com.smartmed.consultas.service.ListaEsperaService;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/lista-espera")
+public class ListaEsperaController {
+
+    @Autowired
+    private ListaEsperaService listaEsperaService;
+
+    /**
+     * Lista os pedidos da lista de espera, filtrando opcionalmente por especialidade, médico e status.
+     * Link: http://localhost:8080/api/lista-espera?especialidadeId=1&status=AGUARDANDO
+     */
+    @GetMapping
+    public ResponseEntity<List<ListaEsperaDTO>> listar(@RequestParam(required = false) Integer especialidadeId,
+                                                       @RequestParam(required = false) Integer medicoId,
+                                                       @RequestParam(required = false) StatusListaEspera status) {
+        return ResponseEntity.ok(listaEsperaService.listar(especialidadeId, medicoId, status));
+    }
+
+    /**
+     * Inclui um paciente na lista de espera de uma especialidade ou de um médico. O paciente é
+     * agendado automaticamente quando um cancelamento liberar um horário compatível.
+     */
+    @PostMapping
+    public ResponseEntity<ListaEsperaDTO> incluir(@RequestBody @Valid ListaEsperaDTO pedido) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(listaEsperaService.incluir(pedido));
+    }
+
+    /**
+     * Retira um pedido da lista de espera pelo ID.
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> cancelar(@PathVariable int id) {
+        listaEsperaService.cancelar(id);
+        return ResponseEntity.noContent().build();
+    }
+}
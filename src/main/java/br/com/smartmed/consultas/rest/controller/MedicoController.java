@@ -1,19 +1,32 @@
 package br.com.smartmed.consultas.rest.controller;
 
 import br.com.smartmed.consultas.model.MedicoModel;
+import br.com.smartmed.consultas.rest.dto.AgendaMedicaPeriodoRequestDTO;
 import br.com.smartmed.consultas.rest.dto.AgendaMedicaRequestDTO;
 import br.com.smartmed.consultas.rest.dto.AgendaMedicaResponseDTO;
+import br.com.smartmed.consultas.rest.dto.DisponibilidadeEspecialidadeRequestDTO;
+import br.com.smartmed.consultas.rest.dto.DisponibilidadeEspecialidadeResponseDTO;
+import br.com.smartmed.consultas.rest.dto.ExpedienteSemanalDTO;
 import br.com.smartmed.consultas.rest.dto.MedicoDTO;
 import br.com.smartmed.consultas.service.ConsultaService;
+import br.com.smartmed.consultas.service.ExpedienteService;
 import br.com.smartmed.consultas.service.MedicoService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.temporal.ChronoUnit;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/medico")
@@ -24,8 +37,20 @@ public class MedicoController {
 
     @Autowired
     private ConsultaService consultaService;
+
+    @Autowired
+    private ExpedienteService expedienteService;
     @Autowired
     private ModelMapper modelMapper;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * A partir de quantos dias a agenda por período é enviada em streaming, dia a dia,
+     * em vez de montada inteira em memória.
+     */
+    @Value("${smartmed.agenda.dias-streaming:31}")
+    private int diasStreaming;
 
     /**
      * Lista todos os médicos.
@@ -64,6 +89,24 @@ public class MedicoController {
         return ResponseEntity.status(HttpStatus.OK).body(medico);
     }
 
+    /**
+     * Retorna o expediente semanal do médico, com os intervalos de cada dia.
+     * Link: http://localhost:8080/api/medico/1/expediente
+     */
+    @GetMapping("/{id}/expediente")
+    public ResponseEntity<ExpedienteSemanalDTO> obterExpediente(@PathVariable Integer id) {
+        return ResponseEntity.ok(expedienteService.obter(id));
+    }
+
+    /**
+     * Substitui o expediente semanal do médico. Sem dias, volta a valer o expediente único do cadastro.
+     */
+    @PutMapping("/{id}/expediente")
+    public ResponseEntity<ExpedienteSemanalDTO> atualizarExpediente(@PathVariable Integer id,
+                                                                    @Valid @RequestBody ExpedienteSemanalDTO expediente) {
+        return ResponseEntity.ok(expedienteService.salvar(id, expediente));
+    }
+
     /**
      * Cadastra um novo médico.
      */
@@ -103,4 +146,48 @@ public class MedicoController {
         AgendaMedicaResponseDTO response = consultaService.obterAgendaMedico(request);
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * Endpoint para retornar a agenda de um médico, dia a dia, para um período.
+     * Períodos com mais de {@code smartmed.agenda.dias-streaming} dias são enviados em streaming.
+     * Link: http://localhost:8080/api/medico/agenda/periodo
+     *
+     * @param request DTO com o ID do médico e o período.
+     * @return ResponseEntity com a lista (JSON) da agenda de cada dia do período.
+     */
+    @PostMapping("/agenda/periodo")
+    public ResponseEntity<StreamingResponseBody> obterAgendaMedicoPeriodo(@Valid @RequestBody AgendaMedicaPeriodoRequestDTO request) {
+        Stream<AgendaMedicaResponseDTO> agenda = consultaService.obterAgendaMedicoPeriodo(request);
+        long dias = ChronoUnit.DAYS.between(request.getDataInicio(), request.getDataFim()) + 1;
+        if (dias <= diasStreaming) {
+            List<AgendaMedicaResponseDTO> agendaCompleta = agenda.toList();
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                    .body(saida -> objectMapper.writeValue(saida, agendaCompleta));
+        }
+
+        StreamingResponseBody corpo = saida -> {
+            try (JsonGenerator gerador = objectMapper.getFactory().createGenerator(saida)) {
+                gerador.writeStartArray();
+                for (Iterator<AgendaMedicaResponseDTO> dia = agenda.iterator(); dia.hasNext(); ) {
+                    gerador.writeObject(dia.next());
+                    gerador.flush();
+                }
+                gerador.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(corpo);
+    }
+
+    /**
+     * Endpoint para retornar a matriz de disponibilidade (médico × horário) de uma especialidade em uma data.
+     * Link: http://localhost:8080/api/medico/disponibilidade
+     *
+     * @param request DTO com o ID da especialidade e a data.
+     * @return ResponseEntity com a matriz de disponibilidade.
+     */
+    @PostMapping("/disponibilidade")
+    public ResponseEntity<DisponibilidadeEspecialidadeResponseDTO> obterDisponibilidadeEspecialidade(@Valid @RequestBody DisponibilidadeEspecialidadeRequestDTO request) {
+        DisponibilidadeEspecialidadeResponseDTO response = consultaService.obterDisponibilidadeEspecialidade(request);
+        return ResponseEntity.ok(response);
+    }
 }
@@ -0,0 +1,24 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalTime;
+
+/**
+ * Representação compacta dos horários de um turno de um dia da agenda (a agenda de um dia traz um
+ * destes por turno do expediente, em ordem). O slot {@code i} começa em
+ * {@code inicio + i * duracaoSlotMinutos} e está ocupado se o bit {@code i} de {@link #ocupados}
+ * estiver ligado: bit {@code i % 8} (do menos para o mais significativo) do byte {@code i / 8}.
+ * Bytes finais zerados podem ser omitidos.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AgendaCompactaDTO {
+    private LocalTime inicio;
+    private Integer duracaoSlotMinutos;
+    private Integer quantidadeSlots;
+    private String ocupados; // Base64
+}
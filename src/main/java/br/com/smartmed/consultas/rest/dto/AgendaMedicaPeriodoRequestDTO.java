@@ -0,0 +1,28 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import br.com.smartmed.consultas.model.FormatoAgenda;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AgendaMedicaPeriodoRequestDTO {
+    @NotNull(message = "O ID do médico é obrigatório.")
+    private Integer medicoId;
+
+    @NotNull(message = "A data inicial é obrigatória.")
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate dataInicio;
+
+    @NotNull(message = "A data final é obrigatória.")
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate dataFim;
+
+    private FormatoAgenda formato; // Opcional, padrão LISTA
+}
@@ -1,5 +1,6 @@
 package br.com.smartmed.consultas.rest.dto;
 
+import br.com.smartmed.consultas.model.FormatoAgenda;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -18,4 +19,6 @@ public class AgendaMedicaRequestDTO {
     @NotNull(message = "A data é obrigatória.")
     @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
     private LocalDate data;
+
+    private FormatoAgenda formato; // Opcional, padrão LISTA
 }
@@ -1,5 +1,6 @@
 package br.com.smartmed.consultas.rest.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -10,9 +11,11 @@ import java.util.List;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class AgendaMedicaResponseDTO {
     private String medico;
     private LocalDate data;
     private List<String> horariosOcupados;
     private List<String> horariosDisponiveis;
+    private List<AgendaCompactaDTO> compacta; // Apenas no formato COMPACTO, no lugar das listas; um item por turno
 }
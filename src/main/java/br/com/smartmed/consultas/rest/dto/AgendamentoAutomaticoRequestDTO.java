@@ -1,5 +1,6 @@
 package br.com.smartmed.consultas.rest.dto;
 
+import br.com.smartmed.consultas.model.PoliticaAgendamento;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -17,4 +18,6 @@ public class AgendamentoAutomaticoRequestDTO {
     private Integer convenioId;
     private Integer formaPagamentoId;
     private Integer recepcionistaId;
+    private PoliticaAgendamento politica; // Opcional, padrão PRIMEIRO_DISPONIVEL
+    private Integer quantidadeSugestoes; // Opcional, usado apenas nas sugestões de horários, padrão 3
 }
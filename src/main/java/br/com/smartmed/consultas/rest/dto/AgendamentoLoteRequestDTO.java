@@ -0,0 +1,19 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AgendamentoLoteRequestDTO {
+    @NotEmpty(message = "Informe ao menos um agendamento.")
+    @Size(max = 1000, message = "O lote pode ter no máximo 1000 agendamentos.")
+    private List<@Valid AgendamentoAutomaticoRequestDTO> agendamentos;
+}
@@ -0,0 +1,27 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Resultado de um agendamento em lote. Cada item de {@link #resultados} corresponde ao agendamento
+ * de mesma posição na requisição e traz a consulta agendada ou o motivo da falha.
+ */
+@Data
+public class AgendamentoLoteResponseDTO {
+    private int total;
+    private int agendados;
+    private int falhas;
+    private List<ResultadoItemDTO> resultados;
+
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class ResultadoItemDTO {
+        private int indice;
+        private boolean sucesso;
+        private AgendamentoAutomaticoResponseDTO agendamento;
+        private String erro;
+    }
+}
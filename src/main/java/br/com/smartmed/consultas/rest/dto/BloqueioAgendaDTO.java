@@ -0,0 +1,27 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BloqueioAgendaDTO {
+    private Integer id;
+
+    @NotNull(message = "A data inicial é obrigatória.")
+    private LocalDate dataInicio;
+
+    @NotNull(message = "A data final é obrigatória.")
+    private LocalDate dataFim;
+
+    @NotBlank(message = "O motivo é obrigatório.")
+    private String motivo;
+
+    private Integer medicoId; // Opcional, nulo para bloqueios da clínica inteira
+}
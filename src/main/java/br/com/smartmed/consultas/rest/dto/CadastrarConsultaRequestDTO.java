@@ -15,7 +15,9 @@ public class CadastrarConsultaRequestDTO {
     @NotNull
     private Integer medicoId;
     private Integer convenioId;
+    @NotNull
     private Integer formaPagamentoId;
     @NotNull
     private Integer recepcionistaId;
+    private String preReservaId; // Opcional, pré-reserva que segura o horário para este agendamento
 }
\ No newline at end of file
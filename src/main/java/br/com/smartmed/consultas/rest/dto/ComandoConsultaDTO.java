@@ -0,0 +1,28 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import br.com.smartmed.consultas.model.TipoComandoConsulta;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Comando de um lote de comandos de consulta. Apenas o campo correspondente ao tipo é usado.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ComandoConsultaDTO {
+    @NotNull(message = "O tipo do comando é obrigatório.")
+    private TipoComandoConsulta tipo;
+
+    @Valid
+    private CadastrarConsultaRequestDTO cadastro; // Para CADASTRAR
+
+    @Valid
+    private ReagendarConsultaRequestDTO reagendamento; // Para REAGENDAR
+
+    @Valid
+    private CancelamentoConsultaDTO cancelamento; // Para CANCELAR
+}
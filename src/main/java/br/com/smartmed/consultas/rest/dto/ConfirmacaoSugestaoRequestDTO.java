@@ -0,0 +1,28 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Future;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConfirmacaoSugestaoRequestDTO {
+    @NotNull(message = "Os dados do agendamento são obrigatórios.")
+    @Valid
+    private AgendamentoAutomaticoRequestDTO agendamento;
+
+    @NotNull(message = "O ID do médico é obrigatório.")
+    private Integer medicoId;
+
+    @NotNull(message = "A data/hora escolhida é obrigatória.")
+    @Future
+    private LocalDateTime dataHora;
+
+    private String preReservaId; // Opcional, pré-reserva que segura o horário escolhido
+}
@@ -8,6 +8,7 @@ import java.time.LocalDateTime;
 public class ConsultaDTO {
     private Integer id;
     private LocalDateTime dataHoraConsulta;
+    private LocalDateTime dataHoraFim;
     private String status;
     private Double valor;
     private String observacoes;
@@ -16,4 +17,5 @@ public class ConsultaDTO {
     private FormaPagamentoDTO formaPagamento;
     private ConvenioDTO convenio;
     private RecepcionistaDTO recepcionista;
+    private Long versao;
 }
@@ -0,0 +1,24 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import br.com.smartmed.consultas.model.FormatoAgenda;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DisponibilidadeEspecialidadeRequestDTO {
+    @NotNull(message = "O ID da especialidade é obrigatório.")
+    private Integer especialidadeId;
+
+    @NotNull(message = "A data é obrigatória.")
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate data;
+
+    private FormatoAgenda formato; // Opcional, padrão LISTA
+}
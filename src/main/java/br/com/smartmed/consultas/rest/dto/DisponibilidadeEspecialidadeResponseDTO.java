@@ -0,0 +1,34 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Matriz médico × horário da disponibilidade de uma especialidade em uma data.
+ * Cada posição de {@link MedicoDisponibilidadeDTO#getDisponivel()} corresponde ao horário de mesma
+ * posição em {@link #horarios}: {@code true} se livre, {@code false} se ocupado e {@code null} se o
+ * horário não faz parte da agenda do médico (ou já passou).
+ * <p>
+ * No formato {@link br.com.smartmed.consultas.model.FormatoAgenda#COMPACTO COMPACTO}, {@link #horarios}
+ * e {@code disponivel} são omitidos e cada médico traz a sua agenda em {@code compacta}.
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DisponibilidadeEspecialidadeResponseDTO {
+    private String especialidade;
+    private LocalDate data;
+    private List<String> horarios;
+    private List<MedicoDisponibilidadeDTO> medicos;
+
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class MedicoDisponibilidadeDTO {
+        private Integer medicoId;
+        private String medico;
+        private List<Boolean> disponivel;
+        private List<AgendaCompactaDTO> compacta;
+    }
+}
@@ -0,0 +1,26 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ExpedienteMedicoDTO {
+    @NotNull(message = "O dia da semana é obrigatório.")
+    private DayOfWeek diaSemana;
+
+    @NotNull(message = "A hora de início é obrigatória.")
+    private LocalTime horaInicio;
+
+    @NotNull(message = "A hora de fim é obrigatória.")
+    private LocalTime horaFim;
+
+    private LocalTime inicioIntervalo; // Opcional, junto com fimIntervalo
+    private LocalTime fimIntervalo;
+}
@@ -0,0 +1,25 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Expediente semanal de um médico, um item por dia da semana em que ele atende. Uma lista vazia
+ * volta a usar o expediente único do cadastro do médico, de segunda a sexta.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ExpedienteSemanalDTO {
+    private Integer medicoId;
+
+    @NotNull(message = "A lista de dias é obrigatória.")
+    @Size(max = 7, message = "Informe no máximo um expediente por dia da semana.")
+    private List<@Valid ExpedienteMedicoDTO> dias;
+}
@@ -0,0 +1,24 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Projeção com o faturamento somado no banco para um grupo de consultas realizadas (uma forma de
+ * pagamento ou um convênio).
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class FaturamentoAgrupadoDTO {
+    private String nome;
+    private BigDecimal porcentagemDesconto; // apenas nos grupos por convênio
+    private BigDecimal valor;
+
+    public FaturamentoAgrupadoDTO(String nome, BigDecimal valor) {
+        this(nome, null, valor);
+    }
+}
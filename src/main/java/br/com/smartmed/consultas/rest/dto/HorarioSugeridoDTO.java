@@ -0,0 +1,17 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class HorarioSugeridoDTO {
+    private Integer medicoId;
+    private String medico;
+    private LocalDateTime dataHora;
+    private Integer duracaoMinutos;
+}
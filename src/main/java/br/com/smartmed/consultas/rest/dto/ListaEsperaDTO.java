@@ -0,0 +1,48 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import br.com.smartmed.consultas.model.StatusListaEspera;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ListaEsperaDTO {
+    private Integer id;
+
+    @NotNull(message = "O ID do paciente é obrigatório.")
+    private Integer pacienteId;
+
+    @NotNull(message = "O ID da especialidade é obrigatório.")
+    private Integer especialidadeId;
+
+    private Integer medicoId; // Opcional, nulo para aceitar qualquer médico da especialidade
+
+    @NotNull(message = "O ID do recepcionista é obrigatório.")
+    private Integer recepcionistaId;
+
+    @NotNull(message = "O ID da forma de pagamento é obrigatório.")
+    private Integer formaPagamentoId;
+
+    private Integer convenioId; // Opcional
+
+    @NotNull(message = "A data inicial é obrigatória.")
+    private LocalDate dataInicio;
+
+    @NotNull(message = "A data final é obrigatória.")
+    private LocalDate dataFim;
+
+    private LocalTime horaInicio; // Opcional, início da faixa de horário preferida
+    private LocalTime horaFim; // Opcional, fim da faixa de horário preferida
+
+    // Preenchidos pelo sistema
+    private LocalDateTime dataHoraInclusao;
+    private StatusListaEspera status;
+    private Integer consultaId;
+}
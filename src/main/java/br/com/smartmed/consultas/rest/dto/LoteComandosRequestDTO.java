@@ -0,0 +1,22 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import br.com.smartmed.consultas.model.ModoLote;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LoteComandosRequestDTO {
+    private ModoLote modo; // Opcional, padrão TUDO_OU_NADA
+
+    @NotEmpty(message = "Informe ao menos um comando.")
+    @Size(max = 1000, message = "O lote pode ter no máximo 1000 comandos.")
+    private List<@Valid ComandoConsultaDTO> comandos;
+}
@@ -0,0 +1,35 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import br.com.smartmed.consultas.model.ModoLote;
+import br.com.smartmed.consultas.model.TipoComandoConsulta;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Resultado de um lote de comandos de consulta. Cada item de {@link #resultados} corresponde ao comando
+ * de mesma posição na requisição. {@link #confirmado} indica se as alterações foram gravadas; no modo
+ * {@link ModoLote#TUDO_OU_NADA}, uma falha desfaz o lote e nenhum comando é aplicado.
+ */
+@Data
+public class LoteComandosResponseDTO {
+    private ModoLote modo;
+    private boolean confirmado;
+    private int total;
+    private int sucessos;
+    private int falhas;
+    private List<ResultadoComandoDTO> resultados;
+
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class ResultadoComandoDTO {
+        private int indice;
+        private TipoComandoConsulta tipo;
+        private boolean sucesso;
+        private CadastrarConsultaResponseDTO cadastro;
+        private ReagendarConsultaResponseDTO reagendamento;
+        private ConsultaDTO cancelamento;
+        private String erro;
+    }
+}
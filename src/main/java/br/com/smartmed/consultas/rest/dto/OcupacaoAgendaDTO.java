@@ -0,0 +1,20 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Projeção enxuta de uma consulta que ocupa a agenda de um médico.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class OcupacaoAgendaDTO {
+    private Integer consultaId;
+    private LocalDateTime inicio;
+    private LocalDateTime fim;
+    private Integer medicoId;
+}
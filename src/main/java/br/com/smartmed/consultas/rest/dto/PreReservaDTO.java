@@ -0,0 +1,18 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PreReservaDTO {
+    private String id;
+    private Integer medicoId;
+    private LocalDateTime dataHora;
+    private LocalDateTime dataHoraFim;
+    private LocalDateTime expiraEm;
+}
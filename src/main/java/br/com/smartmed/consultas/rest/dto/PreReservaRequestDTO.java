@@ -0,0 +1,25 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import jakarta.validation.constraints.Future;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PreReservaRequestDTO {
+    @NotNull(message = "O ID do médico é obrigatório.")
+    private Integer medicoId;
+
+    @NotNull(message = "A data/hora é obrigatória.")
+    @Future
+    private LocalDateTime dataHora;
+
+    @Positive(message = "A duração deve ser positiva.")
+    private Integer duracaoMinutos; // Opcional, usando a duração padrão do médico
+}
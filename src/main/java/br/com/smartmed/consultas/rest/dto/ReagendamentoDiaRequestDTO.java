@@ -0,0 +1,25 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReagendamentoDiaRequestDTO {
+    @NotNull(message = "O ID do médico é obrigatório.")
+    private Integer medicoId;
+
+    @NotNull(message = "A data é obrigatória.")
+    private LocalDate data;
+
+    @NotBlank(message = "O motivo é obrigatório.")
+    private String motivo;
+
+    private Boolean bloquearData; // Opcional, padrão false; bloqueia a data se todas as consultas forem reagendadas
+}
@@ -0,0 +1,29 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Resultado do reagendamento do dia de um médico. Cada item de {@link #resultados} corresponde a uma
+ * consulta agendada do médico na data, em ordem de horário, e traz a nova consulta ou o motivo pelo
+ * qual a consulta original foi mantida.
+ */
+@Data
+public class ReagendamentoDiaResponseDTO {
+    private int total;
+    private int reagendadas;
+    private int falhas;
+    private boolean dataBloqueada;
+    private List<ResultadoConsultaDTO> resultados;
+
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class ResultadoConsultaDTO {
+        private Integer consultaId;
+        private boolean sucesso;
+        private AgendamentoAutomaticoResponseDTO novaConsulta;
+        private String erro;
+    }
+}
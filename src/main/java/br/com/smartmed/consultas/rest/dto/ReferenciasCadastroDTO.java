@@ -0,0 +1,24 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import br.com.smartmed.consultas.model.ConvenioModel;
+import br.com.smartmed.consultas.model.MedicoModel;
+import br.com.smartmed.consultas.model.PacienteModel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Projeção com os envolvidos de um cadastro de consulta, lidos em uma única consulta: médico,
+ * paciente e convênio completos, usados no cálculo do valor e na resposta, e apenas a situação do
+ * recepcionista e da forma de pagamento, que entram na consulta como referências.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReferenciasCadastroDTO {
+    private MedicoModel medico;
+    private PacienteModel paciente;
+    private ConvenioModel convenio;
+    private Boolean recepcionistaAtivo; // null se o recepcionista não existir
+    private Long formasPagamento;
+}
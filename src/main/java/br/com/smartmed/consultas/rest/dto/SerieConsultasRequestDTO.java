@@ -0,0 +1,32 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import br.com.smartmed.consultas.model.FrequenciaSerie;
+import jakarta.validation.constraints.Future;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Data
+public class SerieConsultasRequestDTO {
+    @NotNull
+    @Future
+    private LocalDateTime dataHora; // Primeira consulta da série
+    private Integer duracaoMinutos; // Pode ser opcional, usando a duração padrão do médico
+    @NotNull
+    private FrequenciaSerie frequencia;
+    @Positive
+    private Integer quantidade; // Número de consultas; informar este campo, dataFim ou ambos
+    private LocalDate dataFim; // Última data em que a série pode ter consulta
+    @NotNull
+    private Integer pacienteId;
+    @NotNull
+    private Integer medicoId;
+    private Integer convenioId;
+    @NotNull
+    private Integer formaPagamentoId;
+    @NotNull
+    private Integer recepcionistaId;
+}
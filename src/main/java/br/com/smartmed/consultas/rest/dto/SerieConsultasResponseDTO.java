@@ -0,0 +1,28 @@
+package br.com.smartmed.consultas.rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Resultado do cadastro de uma série de consultas. Cada item de {@link #ocorrencias} corresponde a uma
+ * data da série, em ordem, e traz a consulta agendada ou o motivo pelo qual a data ficou de fora.
+ */
+@Data
+public class SerieConsultasResponseDTO {
+    private int total;
+    private int agendadas;
+    private int falhas;
+    private List<OcorrenciaDTO> ocorrencias;
+
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class OcorrenciaDTO {
+        private LocalDateTime dataHora;
+        private boolean sucesso;
+        private Integer consultaId;
+        private String erro;
+    }
+}
@@ -0,0 +1,202 @@
+package br.com.smartmed.consultas.service;
+
+import br.com.smartmed.consultas.exception.BusinessRuleException;
+import br.com.smartmed.consultas.exception.ObjectNotFoundException;
+import br.com.smartmed.consultas.model.BloqueioAgendaModel;
+import br.com.smartmed.consultas.repository.BloqueioAgendaRepository;
+import br.com.smartmed.consultas.rest.dto.BloqueioAgendaDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calendário de atendimento: feriados e recessos da clínica e bloqueios de agenda (férias,
+ * afastamentos) de cada médico. Os dias da semana em que cada médico atende vêm do
+ * {@link ExpedienteService}.
+ * <p>
+ * Os bloqueios são mantidos em memória como máscaras de dias (um bit por dia, indexado pelo dia
+ * desde a época), uma para a clínica e uma por médico, de modo que verificar se um dia está
+ * bloqueado custa duas consultas de bit. As máscaras são imutáveis depois de montadas e são
+ * substituídas por inteiro após o commit de qualquer alteração nos bloqueios.
+ */
+@Service
+public class CalendarioAgendaService {
+
+    /**
+     * Maior período, em dias, aceito para um único bloqueio.
+     */
+    private static final int MAX_DIAS_BLOQUEIO = 366;
+
+    @Autowired
+    private BloqueioAgendaRepository bloqueioAgendaRepository;
+
+    @Autowired
+    private MedicoService medicoService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private volatile Mascaras mascaras;
+
+    /**
+     * Verifica se a data está bloqueada para o médico por um bloqueio dele ou da clínica.
+     *
+     * @param medicoId ID do médico.
+     * @param data     Data a verificar.
+     * @return {@code true} se a data estiver bloqueada.
+     */
+    public boolean bloqueado(Integer medicoId, LocalDate data) {
+        Mascaras atuais = mascaras();
+        int dia = (int) data.toEpochDay();
+        if (dia < 0) {
+            return false;
+        }
+        BitSet doMedico = atuais.porMedico().get(medicoId);
+        return atuais.clinica().get(dia) || (doMedico != null && doMedico.get(dia));
+    }
+
+    /**
+     * Versão das máscaras em uso; muda sempre que os bloqueios são alterados. Permite que estruturas
+     * derivadas do calendário, como o catálogo de horários livres, percebam que precisam ser refeitas.
+     *
+     * @return Versão atual.
+     */
+    public long versao() {
+        return mascaras().versao();
+    }
+
+    /**
+     * Lista os bloqueios cadastrados.
+     *
+     * @param medicoId Se informado, apenas os bloqueios que afetam o médico (os dele e os da clínica).
+     * @return Lista de bloqueios.
+     */
+    @Transactional(readOnly = true)
+    public List<BloqueioAgendaDTO> listar(Integer medicoId) {
+        return medicoId == null
+                ? bloqueioAgendaRepository.findAllBloqueios()
+                : bloqueioAgendaRepository.findBloqueiosByMedico(medicoId);
+    }
+
+    /**
+     * Cadastra um bloqueio da clínica (sem médico) ou de um médico.
+     *
+     * @param dto Dados do bloqueio.
+     * @return Bloqueio cadastrado.
+     * @throws BusinessRuleException   Se o período for inválido.
+     * @throws ObjectNotFoundException Se o médico não for encontrado.
+     */
+    @Transactional
+    public BloqueioAgendaDTO salvar(BloqueioAgendaDTO dto) {
+        if (dto.getDataFim().isBefore(dto.getDataInicio())) {
+            throw new BusinessRuleException("A data final não pode ser anterior à data inicial.");
+        }
+        if (ChronoUnit.DAYS.between(dto.getDataInicio(), dto.getDataFim()) >= MAX_DIAS_BLOQUEIO) {
+            throw new BusinessRuleException("O bloqueio não pode exceder " + MAX_DIAS_BLOQUEIO + " dias.");
+        }
+
+        BloqueioAgendaModel bloqueio = new BloqueioAgendaModel();
+        bloqueio.setDataInicio(dto.getDataInicio());
+        bloqueio.setDataFim(dto.getDataFim());
+        bloqueio.setMotivo(dto.getMotivo());
+        if (dto.getMedicoId() != null) {
+            bloqueio.setMedico(medicoService.obterMedicoModelPorId(dto.getMedicoId()));
+        }
+        BloqueioAgendaModel salvo = bloqueioAgendaRepository.save(bloqueio);
+        recarregarAposCommit();
+        return new BloqueioAgendaDTO(salvo.getId(), salvo.getDataInicio(), salvo.getDataFim(), salvo.getMotivo(),
+                dto.getMedicoId());
+    }
+
+    /**
+     * Remove um bloqueio.
+     *
+     * @param id ID do bloqueio.
+     * @throws ObjectNotFoundException Se o bloqueio não for encontrado.
+     */
+    @Transactional
+    public void deletar(Integer id) {
+        if (!bloqueioAgendaRepository.existsById(id)) {
+            throw new ObjectNotFoundException("Bloqueio de agenda com ID " + id + " não encontrado.");
+        }
+        bloqueioAgendaRepository.deleteById(id);
+        recarregarAposCommit();
+    }
+
+    private Mascaras mascaras() {
+        Mascaras atuais = mascaras;
+        if (atuais == null) {
+            synchronized (this) {
+                atuais = mascaras;
+                if (atuais == null) {
+                    atuais = carregar(0);
+                    mascaras = atuais;
+                }
+            }
+        }
+        return atuais;
+    }
+
+    /**
+     * Lê os bloqueios em uma transação somente leitura própria, mesmo quando chamada de dentro de uma
+     * transação de escrita ou após o commit dela: as máscaras só podem refletir o que já foi
+     * confirmado, e não os bloqueios ainda pendentes (e talvez desfeitos depois) do chamador.
+     */
+    private Mascaras carregar(long versao) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        template.setReadOnly(true);
+        List<BloqueioAgendaDTO> bloqueios = template.execute(status -> bloqueioAgendaRepository.findAllBloqueios());
+
+        BitSet clinica = new BitSet();
+        Map<Integer, BitSet> porMedico = new HashMap<>();
+        for (BloqueioAgendaDTO bloqueio : bloqueios) {
+            BitSet mascara = bloqueio.getMedicoId() == null
+                    ? clinica
+                    : porMedico.computeIfAbsent(bloqueio.getMedicoId(), id -> new BitSet());
+            int inicio = (int) Math.max(0, bloqueio.getDataInicio().toEpochDay());
+            int fim = (int) bloqueio.getDataFim().toEpochDay();
+            if (fim >= inicio) {
+                mascara.set(inicio, fim + 1);
+            }
+        }
+        return new Mascaras(versao, clinica, porMedico);
+    }
+
+    private void recarregarAposCommit() {
+        Runnable recarga = () -> {
+            synchronized (this) {
+                Mascaras atuais = mascaras;
+                mascaras = carregar(atuais == null ? 0 : atuais.versao() + 1);
+            }
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            recarga.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recarga.run();
+            }
+        });
+    }
+
+    /**
+     * Dias bloqueados da clínica e de cada médico, um bit por dia desde a época.
+     */
+    private record Mascaras(long versao, BitSet clinica, Map<Integer, BitSet> porMedico) {
+    }
+}
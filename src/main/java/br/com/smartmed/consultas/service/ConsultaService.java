@@ -1,27 +1,58 @@
 package br.com.smartmed.consultas.service;
 
+import br.com.smartmed.consultas.config.ContadorComandosSql;
 import br.com.smartmed.consultas.exception.*;
 import br.com.smartmed.consultas.model.*;
 import br.com.smartmed.consultas.repository.ConsultaRepository;
 import br.com.smartmed.consultas.rest.dto.*;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionTimedOutException;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Serviço responsável pelas operações relacionadas às consultas.
@@ -29,6 +60,27 @@ import java.util.stream.Collectors;
 @Service
 public class ConsultaService {
 
+    /**
+     * Número máximo de tentativas de um agendamento que perdeu o horário para outra transação.
+     */
+    private static final int MAX_TENTATIVAS_AGENDAMENTO = 3;
+
+    /**
+     * Maior período, em dias, aceito pela agenda do médico por período.
+     */
+    private static final int MAX_DIAS_AGENDA_PERIODO = 366;
+
+    /**
+     * Quantidade padrão e máxima de horários devolvidos pelas sugestões de agendamento.
+     */
+    private static final int QUANTIDADE_PADRAO_SUGESTOES = 3;
+    private static final int MAX_SUGESTOES = 10;
+
+    /**
+     * Número máximo de consultas de uma série recorrente.
+     */
+    private static final int MAX_OCORRENCIAS_SERIE = 104;
+
     @Autowired
     private ConsultaRepository consultaRepository;
     @Autowired
@@ -43,9 +95,49 @@ public class ConsultaService {
     private RecepcionistaService recepcionistaService;
     @Autowired
     private EspecialidadeService especialidadeService;
+    @Autowired
+    private IndiceAgendaService indiceAgendaService;
+
+    @Autowired
+    private CalendarioAgendaService calendarioAgendaService;
+
+    @Autowired
+    private ExpedienteService expedienteService;
+
+    @Autowired
+    private PreReservaService preReservaService;
+
+    @Autowired
+    private ListaEsperaService listaEsperaService;
+
+    @Autowired
+    private ContadorComandosSql contadorComandosSql;
 
     @Autowired
     private ModelMapper modelMapper;
+    @Autowired
+    private ExecutorService virtualThreadExecutor;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * Quando habilitado, o agendamento automático busca a primeira lacuna livre de cada médico
+     * com uma única consulta SQL, em vez de percorrer os horários em Java.
+     */
+    @Value("${smartmed.agendamento.busca-lacuna-sql:false}")
+    private boolean buscaLacunaPorSql;
+
+    /**
+     * Até quantos meses à frente da data inicial o agendamento automático procura horários.
+     */
+    @Value("${smartmed.agendamento.horizonte-busca-meses:3}")
+    private int horizonteBuscaMeses;
+
+    /**
+     * Tempo máximo, em milissegundos, da busca de horário do agendamento automático.
+     */
+    @Value("${smartmed.agendamento.prazo-busca-ms:2000}")
+    private long prazoBuscaMs;
 
     /**
      * Obtém uma consulta pelo ID.
@@ -135,7 +227,9 @@ public class ConsultaService {
     @Transactional
     public ConsultaDTO salvar(ConsultaModel novaConsulta) {
         try {
-            return modelMapper.map(consultaRepository.save(novaConsulta), ConsultaDTO.class);
+            ConsultaModel consultaSalva = consultaRepository.save(novaConsulta);
+            indiceAgendaService.invalidar(consultaSalva.getMedico().getId());
+            return modelMapper.map(consultaSalva, ConsultaDTO.class);
         } catch (DataIntegrityException e) {
             throw new DataIntegrityException("Erro! Não foi possível salvar a consulta ID " + novaConsulta.getId()
                     + " devido à violação de integridade.");
@@ -172,6 +266,8 @@ public class ConsultaService {
                 throw new ObjectNotFoundException("Consulta com ID " + consultaExistente.getId() + " não encontrada.");
             }
 
+            // A consulta pode ter mudado de médico; descarta todas as agendas indexadas.
+            indiceAgendaService.invalidarTodos();
             return modelMapper.map(consultaRepository.save(consultaExistente), ConsultaDTO.class);
 
         } catch (DataIntegrityException e) {
@@ -210,6 +306,7 @@ public class ConsultaService {
             }
 
             consultaRepository.delete(consultaExistente);
+            indiceAgendaService.invalidarTodos();
 
         } catch (DataIntegrityException e) {
             throw new DataIntegrityException("Erro! Não foi possível deletar a consulta ID " + consultaExistente.getId()
@@ -232,29 +329,200 @@ public class ConsultaService {
     /**
      * Agenda uma consulta automaticamente, encontrando o primeiro horário
      * disponível.
+     * <p>
+     * O agendamento é feito em três etapas, para não manter uma conexão presa durante a varredura
+     * da agenda: (1) validação dos envolvidos em uma transação somente leitura curta; (2) busca do
+     * horário fora de transação, limitada ao horizonte e ao prazo configurados; (3) uma transação
+     * de escrita curta que revalida apenas o horário escolhido e grava a consulta. Se o horário for
+     * perdido para outro agendamento entre a busca e a gravação, ou se o paciente já tiver outra
+     * consulta que se sobrepõe a ele, a busca segue para o próximo candidato.
      *
      * @param request DTO com os critérios para agendamento automático.
      * @return DTO com os dados da consulta agendada.
      * @throws ObjectNotFoundException Se paciente, médico, especialidade, convênio
      *                                 ou forma de pagamento não forem encontrados.
      * @throws BusinessRuleException   Se não for possível encontrar um horário
-     *                                 disponível ou regras de negócio forem
-     *                                 violadas.
+     *                                 disponível, o prazo de busca se esgotar ou
+     *                                 regras de negócio forem violadas.
      */
-    @Transactional
     public AgendamentoAutomaticoResponseDTO agendarAutomaticamente(AgendamentoAutomaticoRequestDTO request) {
         // 1. Validar e buscar entidades principais
+        DadosAgendamento dados = transacaoSomenteLeitura().execute(status ->
+                carregarDadosAgendamento(request, new HashMap<>()));
+
+        // 2. Buscar o horário disponível conforme a política de escolha do médico
+        PoliticaAgendamento politica = Optional.ofNullable(request.getPolitica())
+                .orElse(PoliticaAgendamento.PRIMEIRO_DISPONIVEL);
+        long prazo = System.nanoTime() + prazoBuscaMs * 1_000_000L;
+        Map<Integer, LocalDateTime> inicioBusca = new HashMap<>();
+
+        // Horários perdidos para outra reserva em memória apenas levam ao próximo candidato, limitados
+        // pelo prazo; rejeições pela restrição única do banco são limitadas a MAX_TENTATIVAS_AGENDAMENTO.
+        int rejeicoesNoBanco = 0;
+        while (true) {
+            Optional<HorarioCandidato> candidato = buscarCandidato(
+                    politica, dados.medicos(), request, inicioBusca, prazo, buscaLacunaPorSql);
+
+            if (candidato.isEmpty()) {
+                throw semHorarioDisponivel();
+            }
+
+            // 3. Revalidar o horário escolhido e gravar a consulta em uma transação curta
+            HorarioCandidato horarioLivre = candidato.get();
+            Integer medicoId = horarioLivre.medico().getId();
+            LocalDateTime fimConsulta = horarioLivre.dataHora()
+                    .plusMinutes(duracaoDaConsulta(request.getDuracaoConsultaMinutos(), horarioLivre.medico()));
+            try {
+                // Um horário em que o paciente já tem outra consulta também leva ao próximo candidato
+                Optional<AgendamentoAutomaticoResponseDTO> agendamento = transactionTemplate.execute(status -> {
+                    bloquearAgendas(Set.of(medicoId), Set.of(dados.paciente().getId()));
+                    return pacienteOcupado(dados.paciente().getId(), horarioLivre.dataHora(), fimConsulta, null)
+                            ? Optional.empty()
+                            : gravarAgendamento(dados, horarioLivre, fimConsulta, null);
+                });
+                if (agendamento.isPresent()) {
+                    return agendamento.get();
+                }
+            } catch (DataIntegrityViolationException e) {
+                if (!violouHorarioReservado(e)) {
+                    throw e;
+                }
+                indiceAgendaService.invalidar(medicoId);
+                if (++rejeicoesNoBanco >= MAX_TENTATIVAS_AGENDAMENTO) {
+                    throw new BusinessRuleException(
+                            "Não foi possível reservar um horário: a agenda está sendo disputada por outros agendamentos. Tente novamente.");
+                }
+            }
+            inicioBusca.put(medicoId, fimConsulta);
+        }
+    }
+
+    /**
+     * Sugere os horários livres mais cedo entre todos os médicos elegíveis, sem agendar nada, para que
+     * a recepção ofereça opções ao paciente. A política de escolha do médico é ignorada.
+     * <p>
+     * As agendas dos médicos são percorridas em conjunto, como uma intercalação de listas ordenadas:
+     * uma fila de prioridade guarda o próximo horário livre de cada médico (no máximo um por médico),
+     * o mais cedo é retirado e apenas a agenda daquele médico avança. A busca para assim que a
+     * quantidade pedida é atingida, sem varrer o restante do horizonte de nenhum médico. Horários em
+     * que o paciente já tem outra consulta são pulados.
+     *
+     * @param request DTO com os critérios do agendamento e, opcionalmente, a quantidade de sugestões.
+     * @return Horários sugeridos, do mais cedo para o mais tarde.
+     * @throws ObjectNotFoundException Se paciente, médico, especialidade, convênio
+     *                                 ou forma de pagamento não forem encontrados.
+     * @throws BusinessRuleException   Se a quantidade for inválida, o prazo de busca se esgotar ou
+     *                                 regras de negócio forem violadas.
+     */
+    public List<HorarioSugeridoDTO> sugerirHorarios(AgendamentoAutomaticoRequestDTO request) {
+        int quantidade = Optional.ofNullable(request.getQuantidadeSugestoes()).orElse(QUANTIDADE_PADRAO_SUGESTOES);
+        if (quantidade < 1 || quantidade > MAX_SUGESTOES) {
+            throw new BusinessRuleException("A quantidade de sugestões deve estar entre 1 e " + MAX_SUGESTOES + ".");
+        }
+        DadosAgendamento dados = transacaoSomenteLeitura().execute(status ->
+                carregarDadosAgendamento(request, new HashMap<>()));
+
+        long prazo = System.nanoTime() + prazoBuscaMs * 1_000_000L;
+        Map<Integer, LocalDateTime> inicioBusca = new HashMap<>();
+        Map<Integer, Integer> posicao = new HashMap<>();
+        for (MedicoModel medico : dados.medicos()) {
+            posicao.put(medico.getId(), posicao.size());
+        }
+        // Em caso de empate, vence o médico que vem antes na lista, como no agendamento automático
+        PriorityQueue<HorarioCandidato> proximos = new PriorityQueue<>(Math.max(1, dados.medicos().size()),
+                Comparator.comparing(HorarioCandidato::dataHora)
+                        .thenComparing(candidato -> posicao.get(candidato.medico().getId())));
+        for (MedicoModel medico : dados.medicos()) {
+            buscarHorarioDoMedico(medico, request, inicioBusca, prazo, buscaLacunaPorSql)
+                    .ifPresent(horario -> proximos.add(new HorarioCandidato(medico, horario)));
+        }
+
+        List<HorarioSugeridoDTO> sugestoes = new ArrayList<>(quantidade);
+        while (sugestoes.size() < quantidade && !proximos.isEmpty()) {
+            HorarioCandidato candidato = proximos.poll();
+            MedicoModel medico = candidato.medico();
+            Integer duracao = duracaoDaConsulta(request.getDuracaoConsultaMinutos(), medico);
+            // Horários em que o paciente já tem outra consulta não são sugeridos
+            if (!pacienteOcupado(dados.paciente().getId(), candidato.dataHora(),
+                    candidato.dataHora().plusMinutes(duracao), null)) {
+                sugestoes.add(new HorarioSugeridoDTO(medico.getId(), medico.getNome(), candidato.dataHora(), duracao));
+            }
+
+            inicioBusca.put(medico.getId(), candidato.dataHora().plusMinutes(duracao));
+            buscarHorarioDoMedico(medico, request, inicioBusca, prazo, buscaLacunaPorSql)
+                    .ifPresent(horario -> proximos.add(new HorarioCandidato(medico, horario)));
+        }
+        return sugestoes;
+    }
+
+    /**
+     * Agenda um dos horários devolvidos por {@link #sugerirHorarios}. Os envolvidos são validados
+     * novamente e o horário é apenas revalidado (reserva no índice em memória e verificação pontual
+     * no banco) antes da gravação, sem nova busca.
+     *
+     * @param request DTO com os critérios do agendamento original, o médico e a data/hora escolhidos.
+     * @return DTO com os dados da consulta agendada.
+     * @throws ObjectNotFoundException Se paciente, médico, especialidade, convênio
+     *                                 ou forma de pagamento não forem encontrados.
+     * @throws BusinessRuleException   Se o médico não for elegível, o horário não couber no expediente
+     *                                 ou já tiver sido ocupado, o paciente já tiver outra consulta que
+     *                                 se sobrepõe a ele, ou se a pré-reserva informada não existir,
+     *                                 tiver expirado ou não cobrir o horário.
+     */
+    public AgendamentoAutomaticoResponseDTO confirmarSugestao(ConfirmacaoSugestaoRequestDTO request) {
+        DadosAgendamento dados = transacaoSomenteLeitura().execute(status ->
+                carregarDadosAgendamento(request.getAgendamento(), new HashMap<>()));
+        MedicoModel medico = dados.medicos().stream()
+                .filter(elegivel -> elegivel.getId().equals(request.getMedicoId()))
+                .findFirst()
+                .orElseThrow(() -> new BusinessRuleException(
+                        "O médico escolhido não atende a especialidade informada."));
+
+        LocalDateTime inicio = request.getDataHora();
+        LocalDateTime fim = inicio.plusMinutes(duracaoDaConsulta(request.getAgendamento().getDuracaoConsultaMinutos(), medico));
+        if (!expedienteService.atende(medico, inicio.toLocalDate())
+                || !expedienteService.grade(medico).cobre(inicio, fim)) {
+            throw new BusinessRuleException("O horário escolhido está fora do expediente do médico ou em um dia sem atendimento.");
+        }
+
+        try {
+            return transactionTemplate.execute(status -> {
+                        bloquearAgendas(Set.of(medico.getId()), Set.of(dados.paciente().getId()));
+                        verificarAgendaPaciente(dados.paciente().getId(), inicio, fim, null);
+                        return gravarAgendamento(dados, new HorarioCandidato(medico, inicio), fim,
+                                preReservaService.usar(request.getPreReservaId(), medico.getId(), inicio, fim));
+                    })
+                    .orElseThrow(ConsultaService::horarioSugeridoOcupado);
+        } catch (DataIntegrityViolationException e) {
+            if (!violouHorarioReservado(e)) {
+                throw e;
+            }
+            indiceAgendaService.invalidar(medico.getId());
+            throw horarioSugeridoOcupado();
+        }
+    }
+
+    private static BusinessRuleException horarioSugeridoOcupado() {
+        return new BusinessRuleException("O horário escolhido não está mais disponível. Solicite novas sugestões.");
+    }
+
+    /**
+     * Carrega e valida paciente, recepcionista, forma de pagamento, convênio e os médicos elegíveis.
+     *
+     * @param medicosPorEspecialidade Médicos já carregados, por ID da especialidade; completado aqui.
+     */
+    private DadosAgendamento carregarDadosAgendamento(AgendamentoAutomaticoRequestDTO request,
+                                                      Map<Integer, List<MedicoModel>> medicosPorEspecialidade) {
         PacienteModel paciente = pacienteService.obterPacienteModelPorId(request.getPacienteId());
         RecepcionistaModel recepcionista = recepcionistaService.obterRecepcionistaPorId(request.getRecepcionistaId());
         FormaPagamentoModel formaPagamento = formaPagamentoService
                 .obterFormaPagamentoModelPorId(request.getFormaPagamentoId());
 
-        // 2. Lógica de busca e ordenação de médicos
+        // Lógica de busca e ordenação de médicos
         List<MedicoModel> medicosElegiveis;
         if (request.getEspecialidadeId() != null) {
-            EspecialidadeModel especialidade = especialidadeService
-                    .obterEspecialidadeModelPorId(request.getEspecialidadeId());
-            medicosElegiveis = medicoService.buscarMedicosModelPorEspecialidade(especialidade);
+            medicosElegiveis = medicosPorEspecialidade.computeIfAbsent(request.getEspecialidadeId(), id ->
+                    medicoService.buscarMedicosModelPorEspecialidade(especialidadeService.obterEspecialidadeModelPorId(id)));
 
             if (medicosElegiveis.isEmpty()) {
                 throw new ObjectNotFoundException(
@@ -265,7 +533,7 @@ public class ConsultaService {
             throw new BusinessRuleException("É necessário informar a especialidade para agendamento automático.");
         }
 
-        // 3. Validação de usuários ativos (Recepcionista e Médicos)
+        // Validação de usuários ativos (Recepcionista e Médicos)
         if (!recepcionista.isAtivo()) {
             throw new BusinessRuleException("Recepcionista inativo. Não é possível agendar consultas.");
         }
@@ -276,323 +544,1144 @@ public class ConsultaService {
             }
         }
 
-        // 4. Iterar pelos médicos e buscar o primeiro horário disponível
-        for (MedicoModel medico : medicosElegiveis) {
-            LocalDateTime dataHoraAtual = request.getDataHoraInicial();
-            LocalTime horaInicioExpediente = medico.getHoraInicioExpediente();
-            LocalTime horaFimExpediente = medico.getHoraFimExpediente();
-            Integer duracaoConsulta = Optional.ofNullable(request.getDuracaoConsultaMinutos())
-                    .orElse(medico.getDuracaoPadraoConsulta());
-
-            LocalDateTime limiteBusca = request.getDataHoraInicial().plusMonths(3);
-
-            while (dataHoraAtual.isBefore(limiteBusca)) {
-                if (dataHoraAtual.getDayOfWeek() == DayOfWeek.SATURDAY
-                        || dataHoraAtual.getDayOfWeek() == DayOfWeek.SUNDAY) {
-                    dataHoraAtual = dataHoraAtual.toLocalDate().plusDays(1).atTime(horaInicioExpediente);
-                    continue;
-                }
-
-                if (dataHoraAtual.toLocalTime().isBefore(horaInicioExpediente)) {
-                    dataHoraAtual = dataHoraAtual.withHour(horaInicioExpediente.getHour())
-                            .withMinute(horaInicioExpediente.getMinute());
-                }
-
-                LocalDateTime fimDoSlot = dataHoraAtual.plusMinutes(duracaoConsulta);
-                if (fimDoSlot.toLocalTime().isAfter(horaFimExpediente)) {
-                    dataHoraAtual = dataHoraAtual.toLocalDate().plusDays(1).atTime(horaInicioExpediente);
-                    continue;
-                }
-
-                List<ConsultaModel> consultasPotenciaisConflito = consultaRepository.findConsultasByMedicoAndPeriod(
-                        medico.getId(),
-                        dataHoraAtual.minusMinutes(medico.getDuracaoPadraoConsulta()),
-                        fimDoSlot.plusMinutes(medico.getDuracaoPadraoConsulta()));
-
-                boolean hasConflict = false;
-                for (ConsultaModel consultaExistente : consultasPotenciaisConflito) {
-                    LocalDateTime inicioConsultaExistente = consultaExistente.getDataHoraConsulta();
-                    Integer duracaoExistente = consultaExistente.getMedico() != null
-                            ? consultaExistente.getMedico().getDuracaoPadraoConsulta()
-                            : 30;
-                    LocalDateTime fimConsultaExistente = inicioConsultaExistente.plusMinutes(duracaoExistente);
-
-                    if (dataHoraAtual.isBefore(fimConsultaExistente) && fimDoSlot.isAfter(inicioConsultaExistente)) {
-                        hasConflict = true;
-                        break;
-                    }
-                }
-
-                if (!hasConflict) {
-                    // Horário disponível encontrado!
-                    // 5. Lógica de criação e agendamento da consulta
-                    ConsultaModel novaConsulta = new ConsultaModel();
-                    novaConsulta.setDataHoraConsulta(dataHoraAtual);
-                    novaConsulta.setStatus(ConsultaStatus.AGENDADA);
-                    novaConsulta.setPaciente(paciente);
-                    novaConsulta.setMedico(medico);
-                    novaConsulta.setRecepcionista(recepcionista);
-                    novaConsulta.setFormaPagamento(formaPagamento);
-
-                    BigDecimal valorBase = BigDecimal.valueOf(medico.getValorConsultaReferencia());
-                    if (request.getConvenioId() != null) {
-                        ConvenioModel convenio = convenioService.obterConvenioModelPorId(request.getConvenioId());
-                        novaConsulta.setConvenio(convenio);
-                        novaConsulta.setValor(valorBase.multiply(BigDecimal.valueOf(0.50)));
-                    } else {
-                        novaConsulta.setValor(valorBase);
-                    }
-
-                    ConsultaModel consultaAgendada = consultaRepository.save(novaConsulta);
-
-                    // 6. Construir e retornar o DTO de resposta
-                    AgendamentoAutomaticoResponseDTO responseDTO = new AgendamentoAutomaticoResponseDTO();
-                    responseDTO.setId(consultaAgendada.getId());
-                    responseDTO.setDataHoraConsulta(consultaAgendada.getDataHoraConsulta());
-                    responseDTO.setValor(consultaAgendada.getValor());
-                    responseDTO.setMedico(modelMapper.map(consultaAgendada.getMedico(), MedicoDTO.class));
-                    responseDTO.setPaciente(modelMapper.map(consultaAgendada.getPaciente(), PacienteDTO.class));
-                    return responseDTO;
-                }
-
-                dataHoraAtual = dataHoraAtual.plusMinutes(duracaoConsulta);
-            }
-        }
-
-        throw new BusinessRuleException(
-                "Não foi possível encontrar um horário disponível para agendamento com os critérios informados dentro do período de busca.");
-    }
-
-    @Transactional
-    public CadastrarConsultaResponseDTO cadastrarConsulta(CadastrarConsultaRequestDTO request) {
-        // 1. Validar e buscar os envolvidos na consulta
-        PacienteModel paciente = pacienteService.obterPacienteModelPorId(request.getPacienteId());
-        RecepcionistaModel recepcionista = recepcionistaService.obterRecepcionistaPorId(request.getRecepcionistaId());
-        MedicoModel medico = medicoService.obterMedicoModelPorId(request.getMedicoId());
-
-        // 2. Aplicar as Regras de Negócio (Validação de Acesso)
-        if (!recepcionista.isAtivo()) {
-            throw new BusinessRuleException("Recepcionista inativo. Não é possível agendar consultas.");
-        }
-
-        if (!medico.isAtivo()) {
-            throw new BusinessRuleException("Médico inativo. Não é possível agendar consultas para ele.");
-        }
-
-        // 3. Obter dados auxiliares
-        FormaPagamentoModel formaPagamento = formaPagamentoService
-                .obterFormaPagamentoModelPorId(request.getFormaPagamentoId());
         ConvenioModel convenio = request.getConvenioId() != null
                 ? convenioService.obterConvenioModelPorId(request.getConvenioId())
                 : null;
 
-        // 4. Lógica de Agendamento: Verificar conflito de horário
-        LocalDateTime inicioSlot = request.getDataHora();
-        Integer duracao = Optional.ofNullable(request.getDuracaoMinutos()).orElse(medico.getDuracaoPadraoConsulta());
-        LocalDateTime fimSlot = inicioSlot.plusMinutes(duracao);
-
-        boolean temConflito = consultaRepository.existsByMedicoAndPeriod(medico.getId(), inicioSlot, fimSlot);
+        return new DadosAgendamento(request, paciente, recepcionista, formaPagamento, convenio, medicosElegiveis);
+    }
 
-        if (temConflito) {
-            throw new BusinessRuleException("Já existe uma consulta agendada para este médico nesse horário.");
+    /**
+     * Com as agendas do médico e do paciente já bloqueadas, reserva o horário escolhido, confirma no
+     * banco que ele continua livre e grava a consulta.
+     *
+     * @param preReservaUsada ID da ocupação da pré-reserva que segura o horário para este agendamento,
+     *                        desconsiderada na verificação de conflitos, ou {@code null}.
+     * @return A consulta agendada, ou vazio se o horário já tiver sido ocupado por outro agendamento.
+     */
+    private Optional<AgendamentoAutomaticoResponseDTO> gravarAgendamento(DadosAgendamento dados,
+                                                                         HorarioCandidato horarioLivre,
+                                                                         LocalDateTime fimConsulta,
+                                                                         Integer preReservaUsada) {
+        MedicoModel medico = horarioLivre.medico();
+        if (!indiceAgendaService.reservar(medico.getId(), horarioLivre.dataHora(), fimConsulta, preReservaUsada)) {
+            return Optional.empty();
+        }
+        if (consultaRepository.existsByMedicoAndPeriod(medico.getId(),
+                horarioLivre.dataHora().minus(ConsultaModel.DURACAO_MAXIMA), horarioLivre.dataHora(), fimConsulta, null)) {
+            // Ocupado por uma gravação que o índice em memória ainda não conhecia
+            indiceAgendaService.invalidar(medico.getId());
+            return Optional.empty();
         }
 
-        // 5. Criar e salvar a nova consulta
+        ConsultaModel consultaAgendada = consultaRepository.save(novaConsultaAgendada(dados, horarioLivre, fimConsulta));
+        indiceAgendaService.registrar(consultaAgendada);
+        return Optional.of(montarRespostaAgendamento(consultaAgendada));
+    }
+
+    private static ConsultaModel novaConsultaAgendada(DadosAgendamento dados, HorarioCandidato horarioLivre,
+                                                      LocalDateTime fimConsulta) {
+        MedicoModel medico = horarioLivre.medico();
         ConsultaModel novaConsulta = new ConsultaModel();
-        novaConsulta.setDataHoraConsulta(inicioSlot);
+        novaConsulta.setDataHoraConsulta(horarioLivre.dataHora());
+        novaConsulta.setDataHoraFim(fimConsulta);
         novaConsulta.setStatus(ConsultaStatus.AGENDADA);
-        novaConsulta.setPaciente(paciente);
+        novaConsulta.setPaciente(dados.paciente());
         novaConsulta.setMedico(medico);
-        novaConsulta.setRecepcionista(recepcionista);
-        novaConsulta.setFormaPagamento(formaPagamento);
-        novaConsulta.setConvenio(convenio);
+        novaConsulta.setRecepcionista(dados.recepcionista());
+        novaConsulta.setFormaPagamento(dados.formaPagamento());
 
-        // 6. Calcular valor da consulta
         BigDecimal valorBase = BigDecimal.valueOf(medico.getValorConsultaReferencia());
-        if (convenio != null) {
+        if (dados.convenio() != null) {
+            novaConsulta.setConvenio(dados.convenio());
             novaConsulta.setValor(valorBase.multiply(BigDecimal.valueOf(0.50)));
         } else {
             novaConsulta.setValor(valorBase);
         }
-
-        ConsultaModel consultaAgendada = consultaRepository.save(novaConsulta);
-
-        // 7. Construir e retornar o DTO de resposta
-        CadastrarConsultaResponseDTO responseDTO = new CadastrarConsultaResponseDTO();
-        responseDTO.setMensagem("Consulta agendada com sucesso");
-        responseDTO.setStatus(ConsultaStatus.AGENDADA);
-
-        CadastrarConsultaResponseDTO.DadosConsultaDTO dadosConsultaDTO = new CadastrarConsultaResponseDTO.DadosConsultaDTO();
-        dadosConsultaDTO.setId(consultaAgendada.getId());
-        dadosConsultaDTO.setDataHora(consultaAgendada.getDataHoraConsulta());
-        dadosConsultaDTO.setMedico(modelMapper.map(consultaAgendada.getMedico(), MedicoDTO.class));
-        dadosConsultaDTO.setPaciente(modelMapper.map(consultaAgendada.getPaciente(), PacienteDTO.class));
-        dadosConsultaDTO.setValor(consultaAgendada.getValor());
-
-        responseDTO.setDadosConsulta(dadosConsultaDTO);
-        return responseDTO;
+        return novaConsulta;
     }
 
     /**
-     * Retorna o histórico detalhado de consultas de um paciente, com filtros
-     * opcionais.
+     * Agenda automaticamente um lote de consultas, como as de campanhas de vacinação ou check-up.
+     * <p>
+     * Os envolvidos de todos os itens são validados em uma única transação somente leitura, com os
+     * médicos de cada especialidade carregados uma só vez. Em seguida, em uma única transação de
+     * escrita, os itens são planejados em ordem sobre o índice em memória, cada horário escolhido é
+     * reservado antes do planejamento do próximo item (pulando horários em que o paciente do item já
+     * tem outra consulta, gravada ou planejada no lote), e as consultas são inseridas com um único
+     * comando JDBC em lote. Antes da inserção, uma única consulta confirma que nenhum horário
+     * planejado foi ocupado por outra instância; se tiver sido, ou se o banco rejeitar o lote pela
+     * restrição {@link ConsultaModel#UK_HORARIO_RESERVADO}, as agendas envolvidas são recarregadas e o
+     * lote é planejado novamente.
+     * <p>
+     * A falha de um item (envolvido inexistente ou inativo, nenhum horário disponível) não impede o
+     * agendamento dos demais e é devolvida no resultado do item.
      *
-     * @param request DTO contendo os filtros para a consulta do histórico.
-     * @return Lista de HistoricoConsultaResponseDTO.
-     * @throws ObjectNotFoundException Se o paciente não for encontrado.
-     * @throws BusinessRuleException   Se o paciente estiver inativo.
+     * @param request DTO com a lista de agendamentos.
+     * @return Resultado de cada item, na ordem da requisição.
+     * @throws BusinessRuleException Se os horários do lote continuarem sendo disputados após
+     *                               {@value #MAX_TENTATIVAS_AGENDAMENTO} tentativas.
      */
-    @Transactional(readOnly = true)
-    public List<HistoricoConsultaResponseDTO> obterHistoricoConsultas(HistoricoConsultaRequestDTO request) {
-
-        LocalDateTime dataInicio = null;
-        if (request.getDataInicio() != null) {
-            dataInicio = request.getDataInicio().atStartOfDay();
+    public AgendamentoLoteResponseDTO agendarEmLote(AgendamentoLoteRequestDTO request) {
+        List<AgendamentoAutomaticoRequestDTO> itens = request.getAgendamentos();
+
+        // 1. Validar os envolvidos de todos os itens
+        DadosAgendamento[] dados = new DadosAgendamento[itens.size()];
+        String[] erros = new String[itens.size()];
+        transacaoSomenteLeitura().executeWithoutResult(status -> {
+            Map<Integer, List<MedicoModel>> medicosPorEspecialidade = new HashMap<>();
+            for (int i = 0; i < itens.size(); i++) {
+                try {
+                    dados[i] = carregarDadosAgendamento(itens.get(i), medicosPorEspecialidade);
+                } catch (BusinessRuleException | ObjectNotFoundException e) {
+                    erros[i] = e.getMessage();
+                }
+            }
+            // Nada a confirmar; encerrar com rollback evita a UnexpectedRollbackException causada
+            // pelas falhas de validação dos itens dentro dos serviços transacionais
+            status.setRollbackOnly();
+        });
+
+        // 2. Planejar e gravar todos os itens em uma única transação de escrita
+        for (int tentativa = 1; ; tentativa++) {
+            try {
+                Optional<AgendamentoLoteResponseDTO> resultado = transactionTemplate.execute(status ->
+                        gravarLote(dados, erros));
+                if (resultado.isPresent()) {
+                    return resultado.get();
+                }
+            } catch (DataIntegrityViolationException e) {
+                if (!violouHorarioReservado(e)) {
+                    throw e;
+                }
+                Arrays.stream(dados)
+                        .filter(Objects::nonNull)
+                        .flatMap(item -> item.medicos().stream())
+                        .map(MedicoModel::getId)
+                        .distinct()
+                        .forEach(indiceAgendaService::invalidar);
+            }
+            if (tentativa >= MAX_TENTATIVAS_AGENDAMENTO) {
+                throw new BusinessRuleException(
+                        "Não foi possível reservar os horários do lote: a agenda está sendo disputada por outros agendamentos. Tente novamente.");
+            }
         }
+    }
 
-        LocalDateTime dataFim = null;
-        if (request.getDataFim() != null) {
-            dataFim = request.getDataFim().atTime(LocalTime.MAX);
+    /**
+     * Bloqueia as agendas de todos os médicos elegíveis, planeja os itens válidos do lote, confirma os
+     * horários no banco e insere as consultas em lote.
+     *
+     * @return O resultado do lote, ou vazio se algum horário planejado já estiver ocupado no banco.
+     */
+    private Optional<AgendamentoLoteResponseDTO> gravarLote(DadosAgendamento[] dados, String[] erros) {
+        bloquearAgendas(Arrays.stream(dados)
+                        .filter(Objects::nonNull)
+                        .flatMap(item -> item.medicos().stream())
+                        .map(MedicoModel::getId)
+                        .collect(Collectors.toSet()),
+                Arrays.stream(dados)
+                        .filter(Objects::nonNull)
+                        .map(item -> item.paciente().getId())
+                        .collect(Collectors.toSet()));
+        String[] falhas = erros.clone();
+        ConsultaModel[] planejadas = new ConsultaModel[dados.length];
+        AgendaPacientesLote agendaPacientes = new AgendaPacientesLote();
+        for (int i = 0; i < dados.length; i++) {
+            if (dados[i] == null) {
+                continue;
+            }
+            try {
+                planejadas[i] = planejarConsulta(dados[i], agendaPacientes);
+            } catch (BusinessRuleException e) {
+                falhas[i] = e.getMessage();
+            }
+        }
+        List<ConsultaModel> novasConsultas = Arrays.stream(planejadas).filter(Objects::nonNull).toList();
+
+        // Uma única consulta com as ocupações dos médicos no período do lote
+        Set<Integer> desatualizados = medicosComConflitoNoBanco(novasConsultas);
+        if (!desatualizados.isEmpty()) {
+            // Ocupados por gravações que o índice em memória ainda não conhecia
+            desatualizados.forEach(indiceAgendaService::invalidar);
+            return Optional.empty();
         }
 
-        List<ConsultaModel> consultas = consultaRepository.findHistoricoConsultas(
-                request.getPacienteId(),
-                dataInicio,
-                dataFim,
-                request.getMedicoId(),
-                request.getStatus(),
-                request.getEspecialidadeId());
-
-        return consultas.stream().map(consulta -> {
-            HistoricoConsultaResponseDTO dto = new HistoricoConsultaResponseDTO();
-            dto.setDataHora(consulta.getDataHoraConsulta());
-            dto.setMedico(consulta.getMedico() != null ? consulta.getMedico().getNome() : "N/A");
-            dto.setEspecialidade(consulta.getMedico() != null && consulta.getMedico().getEspecialidade() != null
-                    ? consulta.getMedico().getEspecialidade().getNome()
-                    : "N/A");
-            dto.setValor(consulta.getValor());
-            dto.setStatus(consulta.getStatus());
-            dto.setObservacoes(consulta.getObservacoes());
-            return dto;
-        }).collect(Collectors.toList());
+        novasConsultas.forEach(ConsultaModel::prepararPersistencia);
+        consultaRepository.inserirEmLote(novasConsultas);
+        novasConsultas.forEach(indiceAgendaService::registrar);
+
+        AgendamentoLoteResponseDTO responseDTO = new AgendamentoLoteResponseDTO();
+        List<AgendamentoLoteResponseDTO.ResultadoItemDTO> resultados = new ArrayList<>(dados.length);
+        for (int i = 0; i < dados.length; i++) {
+            AgendamentoLoteResponseDTO.ResultadoItemDTO item = new AgendamentoLoteResponseDTO.ResultadoItemDTO();
+            item.setIndice(i);
+            item.setSucesso(planejadas[i] != null);
+            if (planejadas[i] != null) {
+                item.setAgendamento(montarRespostaAgendamento(planejadas[i]));
+            } else {
+                item.setErro(falhas[i]);
+            }
+            resultados.add(item);
+        }
+        responseDTO.setTotal(dados.length);
+        responseDTO.setAgendados(novasConsultas.size());
+        responseDTO.setFalhas(dados.length - novasConsultas.size());
+        responseDTO.setResultados(resultados);
+        return Optional.of(responseDTO);
     }
 
-    @Transactional(readOnly = true)
-    public PageResponseDTO<RankingMedicoDTO> gerarRankingMedicos(RankingMedicoRequestDTO request) {
-        Pageable pageable = PageRequest.of(request.getPagina(), request.getTamanhoPagina());
-
-        Page<RankingMedicoDTO> rankingPage = consultaRepository.findRankingMedicos(
-                request.getMes(),
-                request.getAno(),
-                ConsultaStatus.REALIZADA,
-                pageable
-        );
-
-        return new PageResponseDTO<>(rankingPage);
+    /**
+     * Busca um horário para o item no índice em memória e o reserva até o fim da transação, para que
+     * os próximos itens do lote já o encontrem ocupado. Horários em que o paciente já tem outra
+     * consulta, gravada ou planejada no lote, são pulados.
+     */
+    private ConsultaModel planejarConsulta(DadosAgendamento dados, AgendaPacientesLote agendaPacientes) {
+        AgendamentoAutomaticoRequestDTO request = dados.request();
+        PoliticaAgendamento politica = Optional.ofNullable(request.getPolitica())
+                .orElse(PoliticaAgendamento.PRIMEIRO_DISPONIVEL);
+        long prazo = System.nanoTime() + prazoBuscaMs * 1_000_000L;
+        Map<Integer, LocalDateTime> inicioBusca = new HashMap<>();
+        while (true) {
+            HorarioCandidato horarioLivre = buscarCandidato(politica, dados.medicos(), request, inicioBusca, prazo, false)
+                    .orElseThrow(ConsultaService::semHorarioDisponivel);
+            Integer medicoId = horarioLivre.medico().getId();
+            LocalDateTime fimConsulta = horarioLivre.dataHora()
+                    .plusMinutes(duracaoDaConsulta(request.getDuracaoConsultaMinutos(), horarioLivre.medico()));
+            if (!agendaPacientes.ocupado(dados.paciente().getId(), horarioLivre.dataHora(), fimConsulta, null)
+                    && indiceAgendaService.reservar(medicoId, horarioLivre.dataHora(), fimConsulta, null)) {
+                return agendaPacientes.adicionar(novaConsultaAgendada(dados, horarioLivre, fimConsulta));
+            }
+            inicioBusca.put(medicoId, fimConsulta);
+        }
     }
 
-    @Transactional(readOnly = true)
-    public List<ConsultaModel> buscarConsultasRealizadasNoPeriodo(LocalDateTime dataInicio, LocalDateTime dataFim) {
-        if (dataInicio.isAfter(dataFim)) {
-            throw new BusinessRuleException("A data de início não pode ser posterior à data de fim.");
+    /**
+     * Médicos com alguma ocupação gravada no banco que se sobrepõe a uma consulta planejada. As consultas
+     * planejadas de um mesmo médico não se sobrepõem, então, ordenadas pelo início, também ficam
+     * ordenadas pelo fim: basta comparar cada ocupação com a última consulta planejada que começa antes dela terminar.
+     */
+    private Set<Integer> medicosComConflitoNoBanco(List<ConsultaModel> planejadas) {
+        if (planejadas.isEmpty()) {
+            return Set.of();
+        }
+        Map<Integer, NavigableMap<LocalDateTime, ConsultaModel>> planejadasPorMedico = new HashMap<>();
+        LocalDateTime inicio = LocalDateTime.MAX;
+        LocalDateTime fim = LocalDateTime.MIN;
+        for (ConsultaModel consulta : planejadas) {
+            planejadasPorMedico.computeIfAbsent(consulta.getMedico().getId(), id -> new TreeMap<>())
+                    .put(consulta.getDataHoraConsulta(), consulta);
+            inicio = consulta.getDataHoraConsulta().isBefore(inicio) ? consulta.getDataHoraConsulta() : inicio;
+            fim = consulta.getDataHoraFim().isAfter(fim) ? consulta.getDataHoraFim() : fim;
         }
 
-        List<ConsultaModel> consultas = consultaRepository.findConsultasRealizadasByPeriodo(dataInicio, dataFim);
+        Set<Integer> medicos = new HashSet<>();
+        for (OcupacaoAgendaDTO ocupacao : consultaRepository.findOcupacoesByMedicosAndPeriodo(planejadasPorMedico.keySet(),
+                inicio.minus(ConsultaModel.DURACAO_MAXIMA), inicio, fim, IndiceAgendaService.STATUS_OCUPAM_AGENDA)) {
+            Map.Entry<LocalDateTime, ConsultaModel> anterior =
+                    planejadasPorMedico.get(ocupacao.getMedicoId()).lowerEntry(ocupacao.getFim());
+            if (anterior != null && anterior.getValue().getDataHoraFim().isAfter(ocupacao.getInicio())) {
+                medicos.add(ocupacao.getMedicoId());
+            }
+        }
+        return medicos;
+    }
 
-        if (consultas.isEmpty()) {
-            throw new ObjectNotFoundException("Nenhuma consulta realizada encontrada no período especificado.");
+    /**
+     * Inícios das consultas reservadas que se sobrepõem a alguma das ocupações. As reservadas não se
+     * sobrepõem entre si: as que começam antes do fim de uma ocupação terminam na mesma ordem, então
+     * basta percorrê-las de trás para frente até a primeira que termina antes do início dela.
+     */
+    private static Set<LocalDateTime> reservasSobrepostas(NavigableMap<LocalDateTime, ConsultaModel> reservadas,
+                                                          List<OcupacaoAgendaDTO> ocupacoes) {
+        Set<LocalDateTime> sobrepostas = new HashSet<>();
+        for (OcupacaoAgendaDTO ocupacao : ocupacoes) {
+            for (ConsultaModel consulta : reservadas.headMap(ocupacao.getFim(), false).descendingMap().values()) {
+                if (!consulta.getDataHoraFim().isAfter(ocupacao.getInicio())) {
+                    break;
+                }
+                sobrepostas.add(consulta.getDataHoraConsulta());
+            }
         }
+        return sobrepostas;
+    }
 
-        return consultas;
+    private AgendamentoAutomaticoResponseDTO montarRespostaAgendamento(ConsultaModel consultaAgendada) {
+        AgendamentoAutomaticoResponseDTO responseDTO = new AgendamentoAutomaticoResponseDTO();
+        responseDTO.setId(consultaAgendada.getId());
+        responseDTO.setDataHoraConsulta(consultaAgendada.getDataHoraConsulta());
+        responseDTO.setValor(consultaAgendada.getValor());
+        responseDTO.setMedico(modelMapper.map(consultaAgendada.getMedico(), MedicoDTO.class));
+        responseDTO.setPaciente(modelMapper.map(consultaAgendada.getPaciente(), PacienteDTO.class));
+        return responseDTO;
     }
 
     /**
-     * Retorna a agenda de um médico para uma data específica, com horários
-     * disponíveis e ocupados.
+     * Executa um agendamento em uma transação própria. Se o banco rejeitar o horário pela restrição
+     * {@link ConsultaModel#UK_HORARIO_RESERVADO} (o horário foi reservado por outra instância ou
+     * transação que o índice em memória ainda não conhecia), a agenda do médico é recarregada e o
+     * agendamento é repetido, agora enxergando o horário perdido.
      *
-     * @param request DTO com o ID do médico e a data.
-     * @return AgendaMedicoResponseDTO com os horários.
-     * @throws ObjectNotFoundException Se o médico não for encontrado.
-     * @throws BusinessRuleException   Se o médico estiver inativo.
+     * @param agendamento Agendamento a executar.
+     * @param medicoId    Médico cujo horário foi disputado.
+     * @return Resultado do agendamento.
      */
-    @Transactional(readOnly = true)
-    public AgendaMedicaResponseDTO obterAgendaMedico(AgendaMedicaRequestDTO request) {
-        // 1. Verificar se o médico existe e está ativo
-        MedicoModel medico = medicoService.buscarMedicoModelPorIdEAtivo(request.getMedicoId());
+    private <T> T executarComRetentativa(TransactionCallback<T> agendamento, Integer medicoId) {
+        for (int tentativa = 1; ; tentativa++) {
+            try {
+                return transactionTemplate.execute(agendamento);
+            } catch (DataIntegrityViolationException e) {
+                if (!violouHorarioReservado(e)) {
+                    throw e;
+                }
+                indiceAgendaService.invalidar(medicoId);
+                if (tentativa >= MAX_TENTATIVAS_AGENDAMENTO) {
+                    throw new BusinessRuleException("Já existe uma consulta agendada para este médico nesse horário.");
+                }
+            }
+        }
+    }
 
-        // 2. Definir o período de busca para a data informada
-        LocalDateTime inicioDoDia = request.getData().atStartOfDay();
-        LocalDateTime fimDoDia = request.getData().atTime(LocalTime.MAX);
+    private static boolean violouHorarioReservado(DataIntegrityViolationException e) {
+        String mensagem = e.getMostSpecificCause().getMessage();
+        return mensagem != null && mensagem.toLowerCase().contains(ConsultaModel.UK_HORARIO_RESERVADO);
+    }
 
-        // 3. Obter todas as consultas do médico para a data
-        List<ConsultaModel> consultasOcupadas = consultaRepository.findConsultasByMedicoAndDate(
-                medico.getId(),
-                inicioDoDia,
-                fimDoDia);
+    /**
+     * Transação somente leitura para as etapas de consulta do agendamento; pode ser atendida por
+     * uma réplica ou snapshot. O tempo limite, se informado, é aplicado às consultas SQL da transação.
+     */
+    private TransactionTemplate transacaoSomenteLeitura() {
+        TransactionTemplate template = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        template.setReadOnly(true);
+        return template;
+    }
+
+    /**
+     * Interrompe a busca se o prazo do agendamento automático tiver se esgotado.
+     */
+    private void verificarPrazo(long prazo) {
+        if (System.nanoTime() - prazo > 0) {
+            throw prazoEsgotado();
+        }
+    }
 
-        // 4. Gerar todos os slots de tempo possíveis para o dia
-        List<LocalTime> todosOsSlots = new ArrayList<>();
-        LocalTime slotAtual = medico.getHoraInicioExpediente();
-        LocalTime horaFimExpediente = medico.getHoraFimExpediente();
-        Integer duracaoPadraoConsulta = medico.getDuracaoPadraoConsulta();
+    /**
+     * Bloqueia no banco, até o fim da transação de escrita corrente, as agendas dos médicos em que ela
+     * vai gravar e as dos pacientes das consultas gravadas. A reserva no índice em memória só vale para
+     * esta instância e se perde quando a agenda é recarregada; é o bloqueio que impede duas gravações
+     * sobrepostas na agenda de um médico ou de um paciente, e a confirmação no banco feita depois dele
+     * enxerga tudo o que as transações anteriores gravaram. Uma transação que grava em várias agendas
+     * bloqueia todas de uma vez, antes da primeira conferência: primeiro os médicos e depois os
+     * pacientes, cada grupo em ordem de ID, para que duas transações nunca se bloqueiem mutuamente.
+     */
+    private void bloquearAgendas(Collection<Integer> medicoIds, Collection<Integer> pacienteIds) {
+        medicoService.bloquearAgendas(medicoIds);
+        pacienteService.bloquearAgendas(pacienteIds);
+    }
 
-        while (slotAtual.isBefore(horaFimExpediente)) {
-            todosOsSlots.add(slotAtual);
-            slotAtual = slotAtual.plusMinutes(duracaoPadraoConsulta);
+    /**
+     * Impede agendamentos em dias em que a agenda do médico está bloqueada (feriado, recesso ou afastamento).
+     */
+    private void verificarBloqueioAgenda(MedicoModel medico, LocalDateTime dataHora) {
+        if (calendarioAgendaService.bloqueado(medico.getId(), dataHora.toLocalDate())) {
+            throw new BusinessRuleException("A agenda do médico " + medico.getNome() + " está bloqueada em "
+                    + dataHora.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")) + " (feriado, recesso ou afastamento).");
         }
+    }
 
-        // 5. Identificar horários ocupados e disponíveis
-        List<String> horariosOcupados = new ArrayList<>();
-        List<String> horariosDisponiveis = new ArrayList<>();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
-        LocalDateTime agora = LocalDateTime.now();
+    /**
+     * Indica se o paciente já tem, com qualquer médico, uma consulta que ocupa a agenda e se sobrepõe
+     * ao intervalo [inicio, fim), com uma única leitura do índice (pacienteId, dataHoraConsulta).
+     *
+     * @param consultaIgnoradaId Consulta desconsiderada (a que está sendo reagendada), ou {@code null}.
+     */
+    private boolean pacienteOcupado(Integer pacienteId, LocalDateTime inicio, LocalDateTime fim,
+                                    Integer consultaIgnoradaId) {
+        return consultaRepository.existsByPacienteAndPeriod(pacienteId, inicio.minus(ConsultaModel.DURACAO_MAXIMA),
+                inicio, fim, consultaIgnoradaId);
+    }
+
+    private void verificarAgendaPaciente(Integer pacienteId, LocalDateTime inicio, LocalDateTime fim,
+                                         Integer consultaIgnoradaId) {
+        if (pacienteOcupado(pacienteId, inicio, fim, consultaIgnoradaId)) {
+            throw pacienteComConsultaNoHorario();
+        }
+    }
+
+    private static BusinessRuleException pacienteComConsultaNoHorario() {
+        return new BusinessRuleException("O paciente já tem outra consulta que se sobrepõe a este horário.");
+    }
+
+    private static BusinessRuleException semHorarioDisponivel() {
+        return new BusinessRuleException(
+                "Não foi possível encontrar um horário disponível para agendamento com os critérios informados dentro do período de busca.");
+    }
 
-        for (LocalTime slot : todosOsSlots) {
-            LocalDateTime slotInicio = request.getData().atTime(slot);
-            LocalDateTime slotFim = slotInicio.plusMinutes(duracaoPadraoConsulta);
+    private BusinessRuleException prazoEsgotado() {
+        return new BusinessRuleException("A busca por um horário disponível excedeu o prazo de "
+                + prazoBuscaMs + " ms. Refine os critérios ou tente novamente.");
+    }
 
-            // Não retornar horários anteriores ao momento atual
-            if (slotFim.isBefore(agora)) {
+    /**
+     * Busca o próximo horário candidato conforme a política de escolha do médico.
+     *
+     * @param lacunaPorSql Se a agenda de cada médico é pesquisada pela consulta SQL de lacunas em vez
+     *                     do índice em memória.
+     */
+    private Optional<HorarioCandidato> buscarCandidato(PoliticaAgendamento politica, List<MedicoModel> medicos,
+                                                       AgendamentoAutomaticoRequestDTO request,
+                                                       Map<Integer, LocalDateTime> inicioBusca, long prazo,
+                                                       boolean lacunaPorSql) {
+        return switch (politica) {
+            case PRIMEIRO_DISPONIVEL -> buscarNoPrimeiroMedicoDisponivel(medicos, request, inicioBusca, prazo, lacunaPorSql);
+            case MAIS_CEDO -> buscarHorarioMaisCedo(medicos, request, inicioBusca, prazo, lacunaPorSql);
+            case MENOS_OCUPADO -> buscarNoMedicoMenosOcupado(medicos, request, inicioBusca, prazo, lacunaPorSql);
+        };
+    }
+
+    /**
+     * Percorre os médicos na ordem em que foram encontrados e retorna o primeiro horário
+     * livre do primeiro médico que tiver algum.
+     */
+    private Optional<HorarioCandidato> buscarNoPrimeiroMedicoDisponivel(List<MedicoModel> medicos,
+                                                                      AgendamentoAutomaticoRequestDTO request,
+                                                                      Map<Integer, LocalDateTime> inicioBusca,
+                                                                      long prazo, boolean lacunaPorSql) {
+        for (MedicoModel medico : medicos) {
+            Optional<LocalDateTime> horario = buscarHorarioDoMedico(medico, request, inicioBusca, prazo, lacunaPorSql);
+            if (horario.isPresent()) {
+                return Optional.of(new HorarioCandidato(medico, horario.get()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Pesquisa a agenda de todos os médicos ao mesmo tempo e retorna o horário livre mais cedo
+     * entre eles. Em caso de empate, vence o médico que vem antes na lista.
+     */
+    private Optional<HorarioCandidato> buscarHorarioMaisCedo(List<MedicoModel> medicos,
+                                                           AgendamentoAutomaticoRequestDTO request,
+                                                           Map<Integer, LocalDateTime> inicioBusca,
+                                                           long prazo, boolean lacunaPorSql) {
+        HorarioCandidato maisCedo = null;
+        for (HorarioCandidato candidato : buscarEmParalelo(medicos, request, inicioBusca, prazo, lacunaPorSql)) {
+            if (maisCedo == null || candidato.dataHora().isBefore(maisCedo.dataHora())) {
+                maisCedo = candidato;
+            }
+        }
+        return Optional.ofNullable(maisCedo);
+    }
+
+    /**
+     * Pesquisa a agenda de todos os médicos ao mesmo tempo e, entre os que têm horário livre na semana
+     * (de segunda a domingo) do horário mais cedo encontrado, retorna o primeiro horário do médico com
+     * menos minutos ocupados nessa semana, segundo os contadores do índice em memória. Assim as cargas
+     * comparadas são sempre da mesma semana; uma semana seguinte só é considerada se nenhum médico
+     * tiver horário livre antes dela. Em caso de empate, vence o horário mais cedo e, depois, o médico
+     * que vem antes na lista.
+     */
+    private Optional<HorarioCandidato> buscarNoMedicoMenosOcupado(List<MedicoModel> medicos,
+                                                                AgendamentoAutomaticoRequestDTO request,
+                                                                Map<Integer, LocalDateTime> inicioBusca,
+                                                                long prazo, boolean lacunaPorSql) {
+        List<HorarioCandidato> candidatos = buscarEmParalelo(medicos, request, inicioBusca, prazo, lacunaPorSql);
+        // Último dia (domingo) da semana do horário mais cedo; horários de semanas seguintes não concorrem
+        LocalDate fimDaSemana = candidatos.stream()
+                .map(candidato -> candidato.dataHora().toLocalDate())
+                .min(Comparator.naturalOrder())
+                .map(data -> data.with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY)))
+                .orElse(null);
+        HorarioCandidato escolhido = null;
+        long menorCarga = Long.MAX_VALUE;
+        for (HorarioCandidato candidato : candidatos) {
+            if (candidato.dataHora().toLocalDate().isAfter(fimDaSemana)) {
                 continue;
             }
+            long carga = indiceAgendaService.minutosOcupadosNaSemana(
+                    candidato.medico().getId(), candidato.dataHora().toLocalDate());
+            if (carga < menorCarga || (carga == menorCarga && candidato.dataHora().isBefore(escolhido.dataHora()))) {
+                escolhido = candidato;
+                menorCarga = carga;
+            }
+        }
+        return Optional.ofNullable(escolhido);
+    }
 
-            boolean ocupado = false;
-            for (ConsultaModel consulta : consultasOcupadas) {
-                LocalDateTime inicioConsulta = consulta.getDataHoraConsulta();
-                // Garante que o médico da consulta existente está carregado para obter a
-                // duração
-                Integer duracaoExistente = consulta.getMedico() != null
-                        ? consulta.getMedico().getDuracaoPadraoConsulta()
-                        : 30;
-                LocalDateTime fimConsulta = inicioConsulta.plusMinutes(duracaoExistente);
-
-                // Verifica sobreposição: (slot_inicio < consulta_fim AND slot_fim >
-                // consulta_inicio)
-                if (slotInicio.isBefore(fimConsulta) && slotFim.isAfter(inicioConsulta)) {
-                    ocupado = true;
-                    break;
+    /**
+     * Busca o primeiro horário livre de cada médico em virtual threads.
+     *
+     * @return Os horários encontrados, na ordem dos médicos; médicos sem horário livre ficam de fora.
+     */
+    private List<HorarioCandidato> buscarEmParalelo(List<MedicoModel> medicos, AgendamentoAutomaticoRequestDTO request,
+                                                    Map<Integer, LocalDateTime> inicioBusca, long prazo,
+                                                    boolean lacunaPorSql) {
+        medicos.forEach(medico -> indiceAgendaService.preparar(medico.getId()));
+        List<CompletableFuture<Optional<LocalDateTime>>> buscas = medicos.stream()
+                .map(medico -> CompletableFuture.supplyAsync(
+                        () -> buscarHorarioDoMedico(medico, request, inicioBusca, prazo, lacunaPorSql),
+                        virtualThreadExecutor))
+                .toList();
+
+        List<HorarioCandidato> candidatos = new ArrayList<>(medicos.size());
+        for (int i = 0; i < medicos.size(); i++) {
+            Optional<LocalDateTime> horario = aguardar(buscas.get(i));
+            if (horario.isPresent()) {
+                candidatos.add(new HorarioCandidato(medicos.get(i), horario.get()));
+            }
+        }
+        return candidatos;
+    }
+
+    /**
+     * Busca o primeiro horário livre de um médico dentro do horizonte do agendamento automático,
+     * pelo índice em memória ou pela consulta SQL de lacunas. A busca começa em
+     * {@code inicioBusca} quando um candidato anterior do médico já foi perdido para outra reserva.
+     * A consulta SQL roda em uma transação somente leitura cujo tempo limite é o que resta do prazo;
+     * como pré-reservas e reservas em andamento só existem em memória, uma lacuna que conflite com
+     * alguma delas é descartada e a busca recomeça no fim da ocupação conflitante.
+     */
+    private Optional<LocalDateTime> buscarHorarioDoMedico(MedicoModel medico, AgendamentoAutomaticoRequestDTO request,
+                                                          Map<Integer, LocalDateTime> inicioBusca, long prazo,
+                                                          boolean lacunaPorSql) {
+        Integer duracaoConsulta = duracaoDaConsulta(request.getDuracaoConsultaMinutos(), medico);
+        LocalDateTime inicio = inicioBusca.getOrDefault(medico.getId(), request.getDataHoraInicial());
+        LocalDateTime limiteBusca = request.getDataHoraInicial().plusMonths(horizonteBuscaMeses);
+
+        if (!lacunaPorSql) {
+            return buscarPrimeiroHorarioLivre(medico, inicio, limiteBusca, duracaoConsulta, prazo);
+        }
+        Optional<LocalDateTime> lacuna = buscarLacunaPorSql(medico, inicio, limiteBusca, duracaoConsulta, prazo);
+        while (lacuna.isPresent()) {
+            Optional<LocalDateTime> fimDoConflito = indiceAgendaService.fimDoConflito(
+                    medico.getId(), lacuna.get(), lacuna.get().plusMinutes(duracaoConsulta), null);
+            if (fimDoConflito.isEmpty()) {
+                break;
+            }
+            lacuna = buscarLacunaPorSql(medico, fimDoConflito.get(), limiteBusca, duracaoConsulta, prazo);
+        }
+        return lacuna;
+    }
+
+    private Optional<LocalDateTime> buscarLacunaPorSql(MedicoModel medico, LocalDateTime inicio,
+                                                       LocalDateTime limiteBusca, Integer duracaoConsulta, long prazo) {
+        verificarPrazo(prazo);
+        TransactionTemplate leitura = transacaoSomenteLeitura();
+        leitura.setTimeout((int) Math.max(1, (prazo - System.nanoTime() + 999_999_999L) / 1_000_000_000L));
+        try {
+            return leitura.execute(status -> consultaRepository.findPrimeiraLacunaDisponivel(
+                    medico.getId(), inicio, limiteBusca, duracaoConsulta, medico.getDuracaoPadraoConsulta()));
+        } catch (QueryTimeoutException | TransactionTimedOutException e) {
+            throw prazoEsgotado();
+        }
+    }
+
+    /**
+     * Duração solicitada para a consulta ou, se não informada, a duração padrão do médico.
+     */
+    private static Integer duracaoDaConsulta(Integer duracaoSolicitada, MedicoModel medico) {
+        return Optional.ofNullable(duracaoSolicitada).orElse(medico.getDuracaoPadraoConsulta());
+    }
+
+    /**
+     * Aguarda o resultado de uma tarefa assíncrona, relançando a exceção original em caso de falha.
+     */
+    private static <T> T aguardar(CompletableFuture<T> tarefa) {
+        try {
+            return tarefa.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Percorre os horários do expediente do médico, a partir de {@code inicio}, e retorna o
+     * primeiro em que uma consulta de {@code duracaoConsulta} minutos cabe sem conflito. Os turnos
+     * de cada dia vêm da grade compilada do expediente semanal, que já descarta os dias sem atendimento
+     * e os horários que invadiriam um intervalo ou o fim do expediente.
+     * Os conflitos são verificados no índice em memória, sem acesso ao banco. Se o médico tiver
+     * catálogo de horários livres e a consulta tiver a duração padrão, os dias cobertos pelo
+     * catálogo são resolvidos com uma única busca nele, sem testar horário por horário.
+     *
+     * @param medico          Médico cuja agenda será pesquisada.
+     * @param inicio          Data/hora a partir da qual buscar.
+     * @param limiteBusca     Data/hora limite da busca.
+     * @param duracaoConsulta Duração da consulta em minutos.
+     * @param prazo           Instante ({@link System#nanoTime()}) em que a busca é interrompida.
+     * @return O primeiro horário livre, se houver.
+     */
+    private Optional<LocalDateTime> buscarPrimeiroHorarioLivre(MedicoModel medico, LocalDateTime inicio,
+                                                               LocalDateTime limiteBusca, Integer duracaoConsulta,
+                                                               long prazo) {
+        ExpedienteService.GradeHorarios grade = expedienteService.grade(medico);
+        boolean usarCatalogo = duracaoConsulta == grade.duracao();
+        LocalDateTime dataHoraAtual = inicio;
+
+        while (dataHoraAtual.isBefore(limiteBusca)) {
+            verificarPrazo(prazo);
+            LocalDate dia = dataHoraAtual.toLocalDate();
+            // Feriados e bloqueios do médico são pulados com uma consulta às máscaras de dias; dias sem
+            // expediente, intervalos e o fim do expediente, com uma consulta aos turnos da grade
+            int minutoAtual = (int) (VarreduraAgenda.minutoAbsoluto(dataHoraAtual, true)
+                    - dia.toEpochDay() * VarreduraAgenda.MINUTOS_POR_DIA);
+            int minuto = calendarioAgendaService.bloqueado(medico.getId(), dia)
+                    ? -1
+                    : grade.proximoInicio(dia.getDayOfWeek(), minutoAtual, duracaoConsulta);
+            if (minuto < 0) {
+                dataHoraAtual = dia.plusDays(1).atStartOfDay();
+                continue;
+            }
+            dataHoraAtual = dia.atStartOfDay().plusMinutes(minuto);
+
+            if (usarCatalogo) {
+                Optional<IndiceAgendaService.BuscaCatalogo> busca =
+                        indiceAgendaService.buscarNoCatalogo(medico, dataHoraAtual, limiteBusca);
+                if (busca.isPresent()) {
+                    if (busca.get().horarioLivre() != null) {
+                        return Optional.of(busca.get().horarioLivre());
+                    }
+                    dataHoraAtual = busca.get().fimCobertura();
+                    continue;
+                }
+            }
+
+            LocalDateTime fimDoSlot = dataHoraAtual.plusMinutes(duracaoConsulta);
+            if (!indiceAgendaService.temConflito(medico.getId(), dataHoraAtual, fimDoSlot, null)) {
+                return Optional.of(dataHoraAtual);
+            }
+
+            dataHoraAtual = fimDoSlot;
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Cadastra uma consulta no horário informado.
+     * <p>
+     * Os envolvidos são validados com uma única consulta ({@link ConsultaRepository#findReferenciasCadastro}):
+     * médico, paciente e convênio vêm completos, pois entram no cálculo do valor e na resposta, e o
+     * recepcionista e a forma de pagamento são associados como referências, sem outra leitura. As
+     * agendas do médico e do paciente são bloqueadas no banco com uma instrução cada. O conflito de
+     * horário do paciente, com qualquer médico, é então verificado com uma única leitura do índice
+     * (pacienteId, dataHoraConsulta), e o do médico no índice em memória, confirmado por uma leitura do
+     * índice (medicoId, dataHoraConsulta), de modo que um cadastro bem-sucedido executa apenas essas
+     * cinco instruções e a inserção. O total de comandos SQL de cada cadastro é registrado no log.
+     *
+     * @param request DTO com os dados da consulta.
+     * @return Resposta com os dados da consulta agendada.
+     * @throws ObjectNotFoundException Se paciente, recepcionista, médico, forma de pagamento ou
+     *                                 convênio não forem encontrados.
+     * @throws BusinessRuleException   Se o recepcionista ou o médico estiverem inativos, a agenda
+     *                                 estiver bloqueada, o horário já estiver ocupado ou o paciente
+     *                                 já tiver outra consulta que se sobrepõe a ele.
+     */
+    public CadastrarConsultaResponseDTO cadastrarConsulta(CadastrarConsultaRequestDTO request) {
+        return contadorComandosSql.medir("Cadastro de consulta",
+                () -> executarComRetentativa(status -> cadastrarNaTransacao(request), request.getMedicoId()));
+    }
+
+    private CadastrarConsultaResponseDTO cadastrarNaTransacao(CadastrarConsultaRequestDTO request) {
+        // 1. Validar os envolvidos na consulta com uma única leitura
+        ReferenciasCadastroDTO referencias = consultaRepository.findReferenciasCadastro(request.getMedicoId(),
+                        request.getPacienteId(), request.getRecepcionistaId(), request.getFormaPagamentoId(),
+                        request.getConvenioId())
+                .orElse(null);
+        if (referencias == null) {
+            // Médico ou paciente inexistente: as buscas individuais apontam qual deles, na ordem de sempre
+            buscarEnvolvidosCadastro(request);
+            throw new ObjectNotFoundException("Paciente ou médico do cadastro não encontrado.");
+        }
+        if (referencias.getRecepcionistaAtivo() == null) {
+            throw new ObjectNotFoundException("Recepcionista com ID " + request.getRecepcionistaId() + " não encontrado.");
+        }
+
+        // 2. Aplicar as Regras de Negócio (Validação de Acesso)
+        if (!referencias.getRecepcionistaAtivo()) {
+            throw new BusinessRuleException("Recepcionista inativo. Não é possível agendar consultas.");
+        }
+
+        if (!referencias.getMedico().isAtivo()) {
+            throw new BusinessRuleException("Médico inativo. Não é possível agendar consultas para ele.");
+        }
+
+        // 3. Conferir os dados auxiliares
+        if (referencias.getFormasPagamento() == 0) {
+            throw new ObjectNotFoundException("Forma de Pagamento com ID " + request.getFormaPagamentoId() + " não encontrada.");
+        }
+        if (request.getConvenioId() != null && referencias.getConvenio() == null) {
+            throw new ObjectNotFoundException("Convênio com ID " + request.getConvenioId() + " não encontrado.");
+        }
+
+        RecepcionistaModel recepcionista = recepcionistaService.obterReferenciaRecepcionista(request.getRecepcionistaId());
+        FormaPagamentoModel formaPagamento =
+                formaPagamentoService.obterReferenciaFormaPagamento(request.getFormaPagamentoId());
+        return agendarCadastro(request, referencias.getPaciente(), recepcionista, referencias.getMedico(),
+                formaPagamento, referencias.getConvenio());
+    }
+
+    /**
+     * Busca um a um os envolvidos de um cadastro, na ordem em que são validados, para indicar qual
+     * deles não existe.
+     */
+    private void buscarEnvolvidosCadastro(CadastrarConsultaRequestDTO request) {
+        pacienteService.obterPacienteModelPorId(request.getPacienteId());
+        recepcionistaService.obterRecepcionistaPorId(request.getRecepcionistaId());
+        medicoService.obterMedicoModelPorId(request.getMedicoId());
+    }
+
+    /**
+     * Reserva o horário do cadastro e grava a consulta, com os envolvidos já carregados e validados.
+     */
+    private CadastrarConsultaResponseDTO agendarCadastro(CadastrarConsultaRequestDTO request, PacienteModel paciente,
+                                                         RecepcionistaModel recepcionista, MedicoModel medico,
+                                                         FormaPagamentoModel formaPagamento, ConvenioModel convenio) {
+        // 4. Lógica de Agendamento: Verificar conflito de horário e reservá-lo atomicamente
+        LocalDateTime inicioSlot = request.getDataHora();
+        Integer duracao = duracaoDaConsulta(request.getDuracaoMinutos(), medico);
+        LocalDateTime fimSlot = inicioSlot.plusMinutes(duracao);
+        verificarBloqueioAgenda(medico, inicioSlot);
+        bloquearAgendas(Set.of(medico.getId()), Set.of(paciente.getId()));
+        verificarAgendaPaciente(paciente.getId(), inicioSlot, fimSlot, null);
+        Integer preReservaUsada = preReservaService.usar(request.getPreReservaId(), medico.getId(), inicioSlot, fimSlot);
+
+        boolean horarioReservado = indiceAgendaService.reservar(medico.getId(), inicioSlot, fimSlot, preReservaUsada);
+
+        if (!horarioReservado) {
+            throw new BusinessRuleException("Já existe uma consulta agendada para este médico nesse horário.");
+        }
+        if (consultaRepository.existsByMedicoAndPeriod(medico.getId(), inicioSlot.minus(ConsultaModel.DURACAO_MAXIMA),
+                inicioSlot, fimSlot, null)) {
+            // Ocupado por uma gravação que o índice em memória ainda não conhecia
+            indiceAgendaService.invalidar(medico.getId());
+            throw new BusinessRuleException("Já existe uma consulta agendada para este médico nesse horário.");
+        }
+
+        // 5. Criar e salvar a nova consulta
+        ConsultaModel novaConsulta = new ConsultaModel();
+        novaConsulta.setDataHoraConsulta(inicioSlot);
+        novaConsulta.setDataHoraFim(fimSlot);
+        novaConsulta.setStatus(ConsultaStatus.AGENDADA);
+        novaConsulta.setPaciente(paciente);
+        novaConsulta.setMedico(medico);
+        novaConsulta.setRecepcionista(recepcionista);
+        novaConsulta.setFormaPagamento(formaPagamento);
+        novaConsulta.setConvenio(convenio);
+
+        // 6. Calcular valor da consulta
+        BigDecimal valorBase = BigDecimal.valueOf(medico.getValorConsultaReferencia());
+        if (convenio != null) {
+            novaConsulta.setValor(valorBase.multiply(BigDecimal.valueOf(0.50)));
+        } else {
+            novaConsulta.setValor(valorBase);
+        }
+
+        ConsultaModel consultaAgendada = consultaRepository.save(novaConsulta);
+        indiceAgendaService.registrar(consultaAgendada);
+
+        // 7. Construir e retornar o DTO de resposta
+        CadastrarConsultaResponseDTO responseDTO = new CadastrarConsultaResponseDTO();
+        responseDTO.setMensagem("Consulta agendada com sucesso");
+        responseDTO.setStatus(ConsultaStatus.AGENDADA);
+
+        CadastrarConsultaResponseDTO.DadosConsultaDTO dadosConsultaDTO = new CadastrarConsultaResponseDTO.DadosConsultaDTO();
+        dadosConsultaDTO.setId(consultaAgendada.getId());
+        dadosConsultaDTO.setDataHora(consultaAgendada.getDataHoraConsulta());
+        dadosConsultaDTO.setMedico(modelMapper.map(consultaAgendada.getMedico(), MedicoDTO.class));
+        dadosConsultaDTO.setPaciente(modelMapper.map(consultaAgendada.getPaciente(), PacienteDTO.class));
+        dadosConsultaDTO.setValor(consultaAgendada.getValor());
+
+        responseDTO.setDadosConsulta(dadosConsultaDTO);
+        return responseDTO;
+    }
+
+    /**
+     * Cadastra uma série de consultas recorrentes do mesmo paciente com o mesmo médico, até atingir a
+     * quantidade ou a data final informadas.
+     * <p>
+     * Os envolvidos são validados uma vez para a série. Cada data é reservada no índice em memória e,
+     * em seguida, uma única consulta por período confirma no banco todas as datas reservadas de uma
+     * vez, assim como outra confirma a agenda do paciente com qualquer médico; as consultas são
+     * inseridas com um único comando JDBC em lote. Uma data bloqueada no calendário, já ocupada na
+     * agenda do médico ou em que o paciente já tem outra consulta fica de fora da série e a falha é
+     * devolvida no resultado dela, sem impedir o agendamento das demais.
+     *
+     * @param request DTO com a primeira consulta, a regra de recorrência e os envolvidos.
+     * @return Resultado de cada data da série.
+     * @throws ObjectNotFoundException Se paciente, médico, recepcionista, forma de pagamento ou
+     *                                 convênio não forem encontrados.
+     * @throws BusinessRuleException   Se a regra de recorrência for inválida ou algum envolvido
+     *                                 estiver inativo.
+     */
+    public SerieConsultasResponseDTO cadastrarSerie(SerieConsultasRequestDTO request) {
+        return executarComRetentativa(status -> cadastrarSerieNaTransacao(request), request.getMedicoId());
+    }
+
+    private SerieConsultasResponseDTO cadastrarSerieNaTransacao(SerieConsultasRequestDTO request) {
+        List<LocalDateTime> datas = datasDaSerie(request);
+
+        PacienteModel paciente = pacienteService.obterPacienteModelPorId(request.getPacienteId());
+        RecepcionistaModel recepcionista = recepcionistaService.obterRecepcionistaPorId(request.getRecepcionistaId());
+        MedicoModel medico = medicoService.obterMedicoModelPorId(request.getMedicoId());
+        if (!recepcionista.isAtivo()) {
+            throw new BusinessRuleException("Recepcionista inativo. Não é possível agendar consultas.");
+        }
+        if (!medico.isAtivo()) {
+            throw new BusinessRuleException("Médico inativo. Não é possível agendar consultas para ele.");
+        }
+        FormaPagamentoModel formaPagamento = formaPagamentoService
+                .obterFormaPagamentoModelPorId(request.getFormaPagamentoId());
+        ConvenioModel convenio = request.getConvenioId() != null
+                ? convenioService.obterConvenioModelPorId(request.getConvenioId())
+                : null;
+
+        // 1. Reservar cada data no índice em memória, que já conhece a agenda do médico
+        bloquearAgendas(Set.of(medico.getId()), Set.of(paciente.getId()));
+        Integer duracao = duracaoDaConsulta(request.getDuracaoMinutos(), medico);
+        String[] falhas = new String[datas.size()];
+        NavigableMap<LocalDateTime, ConsultaModel> reservadas = new TreeMap<>();
+        for (int i = 0; i < datas.size(); i++) {
+            LocalDateTime inicio = datas.get(i);
+            try {
+                verificarBloqueioAgenda(medico, inicio);
+            } catch (BusinessRuleException e) {
+                falhas[i] = e.getMessage();
+                continue;
+            }
+            if (!indiceAgendaService.reservar(medico.getId(), inicio, inicio.plusMinutes(duracao), null)) {
+                falhas[i] = "Já existe uma consulta agendada para este médico nesse horário.";
+                continue;
+            }
+            ConsultaModel consulta = new ConsultaModel();
+            consulta.setDataHoraConsulta(inicio);
+            consulta.setDataHoraFim(inicio.plusMinutes(duracao));
+            consulta.setStatus(ConsultaStatus.AGENDADA);
+            consulta.setObservacoes("Série " + request.getFrequencia().name().toLowerCase() + ": consulta "
+                    + (i + 1) + " de " + datas.size() + ".");
+            consulta.setPaciente(paciente);
+            consulta.setMedico(medico);
+            consulta.setRecepcionista(recepcionista);
+            consulta.setFormaPagamento(formaPagamento);
+            consulta.setConvenio(convenio);
+            reservadas.put(inicio, consulta);
+        }
+
+        // 2. Confirmar todas as datas reservadas no banco com uma única consulta pelo período da série
+        if (!reservadas.isEmpty()) {
+            List<OcupacaoAgendaDTO> ocupacoes = consultaRepository.findOcupacoesByMedicosAndPeriodo(
+                    Set.of(medico.getId()), reservadas.firstKey().minus(ConsultaModel.DURACAO_MAXIMA),
+                    reservadas.firstKey(), reservadas.lastEntry().getValue().getDataHoraFim(),
+                    IndiceAgendaService.STATUS_OCUPAM_AGENDA);
+            Set<LocalDateTime> ocupadasNoBanco = reservasSobrepostas(reservadas, ocupacoes);
+            if (!ocupadasNoBanco.isEmpty()) {
+                // Ocupadas por gravações que o índice em memória ainda não conhecia
+                indiceAgendaService.invalidar(medico.getId());
+                for (int i = 0; i < datas.size(); i++) {
+                    if (ocupadasNoBanco.contains(datas.get(i))) {
+                        reservadas.remove(datas.get(i));
+                        falhas[i] = "Já existe uma consulta agendada para este médico nesse horário.";
+                    }
+                }
+            }
+        }
+
+        // 3. Conferir a agenda do paciente com qualquer médico, também com uma única consulta pelo período
+        if (!reservadas.isEmpty()) {
+            LocalDateTime inicioSerie = reservadas.firstKey();
+            Set<LocalDateTime> pacienteOcupado = reservasSobrepostas(reservadas,
+                    consultaRepository.findOcupacoesByPacienteAndPeriodo(paciente.getId(),
+                            inicioSerie.minus(ConsultaModel.DURACAO_MAXIMA), inicioSerie,
+                            reservadas.lastEntry().getValue().getDataHoraFim(), IndiceAgendaService.STATUS_OCUPAM_AGENDA));
+            for (int i = 0; i < datas.size(); i++) {
+                if (pacienteOcupado.contains(datas.get(i))) {
+                    reservadas.remove(datas.get(i));
+                    falhas[i] = pacienteComConsultaNoHorario().getMessage();
                 }
             }
+        }
 
-            if (ocupado) {
-                horariosOcupados.add(slot.format(formatter));
+        // 4. Inserir a série em lote
+        List<ConsultaModel> novasConsultas = new ArrayList<>(reservadas.values());
+        novasConsultas.forEach(ConsultaModel::prepararPersistencia);
+        consultaRepository.inserirEmLote(novasConsultas);
+        novasConsultas.forEach(indiceAgendaService::registrar);
+
+        SerieConsultasResponseDTO responseDTO = new SerieConsultasResponseDTO();
+        List<SerieConsultasResponseDTO.OcorrenciaDTO> ocorrencias = new ArrayList<>(datas.size());
+        for (int i = 0; i < datas.size(); i++) {
+            ConsultaModel consulta = falhas[i] == null ? reservadas.get(datas.get(i)) : null;
+            SerieConsultasResponseDTO.OcorrenciaDTO ocorrencia = new SerieConsultasResponseDTO.OcorrenciaDTO();
+            ocorrencia.setDataHora(datas.get(i));
+            ocorrencia.setSucesso(consulta != null);
+            if (consulta != null) {
+                ocorrencia.setConsultaId(consulta.getId());
             } else {
-                horariosDisponiveis.add(slot.format(formatter));
+                ocorrencia.setErro(falhas[i]);
             }
+            ocorrencias.add(ocorrencia);
         }
+        responseDTO.setTotal(datas.size());
+        responseDTO.setAgendadas(novasConsultas.size());
+        responseDTO.setFalhas(datas.size() - novasConsultas.size());
+        responseDTO.setOcorrencias(ocorrencias);
+        return responseDTO;
+    }
 
-        // 6. Construir a resposta
-        AgendaMedicaResponseDTO responseDTO = new AgendaMedicaResponseDTO();
-        responseDTO.setMedico(medico.getNome());
-        responseDTO.setData(request.getData());
-        responseDTO.setHorariosOcupados(horariosOcupados);
-        responseDTO.setHorariosDisponiveis(horariosDisponiveis);
+    /**
+     * Datas da série, a partir da primeira, limitadas pela quantidade e pela data final informadas.
+     */
+    private static List<LocalDateTime> datasDaSerie(SerieConsultasRequestDTO request) {
+        if (request.getQuantidade() == null && request.getDataFim() == null) {
+            throw new BusinessRuleException("Informe a quantidade de consultas ou a data final da série.");
+        }
+        if (request.getDataFim() != null && request.getDataFim().isBefore(request.getDataHora().toLocalDate())) {
+            throw new BusinessRuleException("A data final não pode ser anterior à primeira consulta da série.");
+        }
+        int limite = Optional.ofNullable(request.getQuantidade()).orElse(MAX_OCORRENCIAS_SERIE + 1);
+        List<LocalDateTime> datas = new ArrayList<>();
+        for (int i = 0; i < limite; i++) {
+            LocalDateTime data = request.getFrequencia().ocorrencia(request.getDataHora(), i);
+            if (request.getDataFim() != null && data.toLocalDate().isAfter(request.getDataFim())) {
+                break;
+            }
+            if (datas.size() == MAX_OCORRENCIAS_SERIE) {
+                throw new BusinessRuleException("A série não pode ter mais de " + MAX_OCORRENCIAS_SERIE + " consultas.");
+            }
+            datas.add(data);
+        }
+        return datas;
+    }
+
+    /**
+     * Retorna o histórico detalhado de consultas de um paciente, com filtros
+     * opcionais.
+     *
+     * @param request DTO contendo os filtros para a consulta do histórico.
+     * @return Lista de HistoricoConsultaResponseDTO.
+     * @throws ObjectNotFoundException Se o paciente não for encontrado.
+     * @throws BusinessRuleException   Se o paciente estiver inativo.
+     */
+    @Transactional(readOnly = true)
+    public List<HistoricoConsultaResponseDTO> obterHistoricoConsultas(HistoricoConsultaRequestDTO request) {
+
+        LocalDateTime dataInicio = null;
+        if (request.getDataInicio() != null) {
+            dataInicio = request.getDataInicio().atStartOfDay();
+        }
+
+        LocalDateTime dataFim = null;
+        if (request.getDataFim() != null) {
+            dataFim = request.getDataFim().atTime(LocalTime.MAX);
+        }
 
+        List<ConsultaModel> consultas = consultaRepository.findHistoricoConsultas(
+                request.getPacienteId(),
+                dataInicio,
+                dataFim,
+                request.getMedicoId(),
+                request.getStatus(),
+                request.getEspecialidadeId());
+
+        return consultas.stream().map(consulta -> {
+            HistoricoConsultaResponseDTO dto = new HistoricoConsultaResponseDTO();
+            dto.setDataHora(consulta.getDataHoraConsulta());
+            dto.setMedico(consulta.getMedico() != null ? consulta.getMedico().getNome() : "N/A");
+            dto.setEspecialidade(consulta.getMedico() != null && consulta.getMedico().getEspecialidade() != null
+                    ? consulta.getMedico().getEspecialidade().getNome()
+                    : "N/A");
+            dto.setValor(consulta.getValor());
+            dto.setStatus(consulta.getStatus());
+            dto.setObservacoes(consulta.getObservacoes());
+            return dto;
+        }).collect(Collectors.toList());
+    }
+
+    @Transactional(readOnly = true)
+    public PageResponseDTO<RankingMedicoDTO> gerarRankingMedicos(RankingMedicoRequestDTO request) {
+        Pageable pageable = PageRequest.of(request.getPagina(), request.getTamanhoPagina());
+
+        // Intervalo do mês em vez de MONTH()/YEAR() sobre a coluna, para aproveitar o índice (status, dataHoraConsulta)
+        LocalDateTime inicioMes = LocalDate.of(request.getAno(), request.getMes(), 1).atStartOfDay();
+
+        Page<RankingMedicoDTO> rankingPage = consultaRepository.findRankingMedicos(
+                inicioMes,
+                inicioMes.plusMonths(1),
+                ConsultaStatus.REALIZADA,
+                pageable
+        );
+
+        return new PageResponseDTO<>(rankingPage);
+    }
+
+    @Transactional(readOnly = true)
+    public List<ConsultaModel> buscarConsultasRealizadasNoPeriodo(LocalDateTime dataInicio, LocalDateTime dataFim) {
+        if (dataInicio.isAfter(dataFim)) {
+            throw new BusinessRuleException("A data de início não pode ser posterior à data de fim.");
+        }
+
+        List<ConsultaModel> consultas = consultaRepository.findConsultasRealizadasByPeriodo(dataInicio, dataFim);
+
+        if (consultas.isEmpty()) {
+            throw new ObjectNotFoundException("Nenhuma consulta realizada encontrada no período especificado.");
+        }
+
+        return consultas;
+    }
+
+    /**
+     * Retorna a agenda de um médico para uma data específica, com horários
+     * disponíveis e ocupados.
+     *
+     * @param request DTO com o ID do médico, a data e, opcionalmente, o formato dos horários.
+     * @return AgendaMedicaResponseDTO com os horários.
+     * @throws ObjectNotFoundException Se o médico não for encontrado.
+     * @throws BusinessRuleException   Se o médico estiver inativo.
+     */
+    @Transactional(readOnly = true)
+    public AgendaMedicaResponseDTO obterAgendaMedico(AgendaMedicaRequestDTO request) {
+        // 1. Verificar se o médico existe e está ativo
+        MedicoModel medico = medicoService.buscarMedicoModelPorIdEAtivo(request.getMedicoId());
+
+        // 2. Obter as ocupações do médico para a data (índice em memória) e montar os horários do dia
+        return montarAgenda(medico, request.getData(), request.getData(), request.getFormato())
+                .findFirst()
+                .orElseThrow();
+    }
+
+    /**
+     * Retorna a agenda de um médico, dia a dia, para um período. As ocupações de todo o período
+     * são obtidas de uma só vez e os horários de todos os dias são classificados em uma única
+     * varredura. Os dias são gerados sob demanda, na ordem, à medida que o fluxo é consumido.
+     *
+     * @param request DTO com o ID do médico, o período e, opcionalmente, o formato dos horários.
+     * @return Fluxo com a agenda de cada dia do período.
+     * @throws ObjectNotFoundException Se o médico não for encontrado.
+     * @throws BusinessRuleException   Se o médico estiver inativo ou o período for inválido.
+     */
+    @Transactional(readOnly = true)
+    public Stream<AgendaMedicaResponseDTO> obterAgendaMedicoPeriodo(AgendaMedicaPeriodoRequestDTO request) {
+        if (request.getDataFim().isBefore(request.getDataInicio())) {
+            throw new BusinessRuleException("A data final não pode ser anterior à data inicial.");
+        }
+        if (ChronoUnit.DAYS.between(request.getDataInicio(), request.getDataFim()) >= MAX_DIAS_AGENDA_PERIODO) {
+            throw new BusinessRuleException("O período da agenda não pode exceder " + MAX_DIAS_AGENDA_PERIODO + " dias.");
+        }
+
+        MedicoModel medico = medicoService.buscarMedicoModelPorIdEAtivo(request.getMedicoId());
+        return montarAgenda(medico, request.getDataInicio(), request.getDataFim(), request.getFormato());
+    }
+
+    /**
+     * Retorna a matriz de disponibilidade (médico × horário) dos médicos ativos de uma especialidade
+     * em uma data. As ocupações de todos os médicos são obtidas em uma única consulta e a agenda de
+     * cada médico é montada em paralelo, em virtual threads.
+     *
+     * @param request DTO com o ID da especialidade, a data e, opcionalmente, o formato dos horários.
+     * @return DisponibilidadeEspecialidadeResponseDTO com a matriz de disponibilidade.
+     * @throws ObjectNotFoundException Se a especialidade não for encontrada ou não tiver médicos ativos.
+     */
+    @Transactional(readOnly = true)
+    public DisponibilidadeEspecialidadeResponseDTO obterDisponibilidadeEspecialidade(
+            DisponibilidadeEspecialidadeRequestDTO request) {
+        EspecialidadeModel especialidade = especialidadeService.obterEspecialidadeModelPorId(request.getEspecialidadeId());
+        List<MedicoModel> medicos = medicoService.buscarMedicosModelPorEspecialidade(especialidade).stream()
+                .filter(MedicoModel::isAtivo)
+                .toList();
+        if (medicos.isEmpty()) {
+            throw new ObjectNotFoundException(
+                    "Nenhum médico ativo encontrado para a especialidade com ID " + request.getEspecialidadeId() + ".");
+        }
+
+        // 1. Uma única consulta com as ocupações de todos os médicos na data
+        Map<Integer, List<IndiceAgendaService.Ocupacao>> ocupacoesPorMedico = consultaRepository
+                .findOcupacoesByMedicosAndPeriodo(
+                        medicos.stream().map(MedicoModel::getId).toList(),
+                        request.getData().atStartOfDay().minus(ConsultaModel.DURACAO_MAXIMA),
+                        request.getData().atStartOfDay(),
+                        request.getData().plusDays(1).atStartOfDay(),
+                        IndiceAgendaService.STATUS_OCUPAM_AGENDA)
+                .stream()
+                .collect(Collectors.groupingBy(OcupacaoAgendaDTO::getMedicoId, Collectors.mapping(
+                        dto -> new IndiceAgendaService.Ocupacao(dto.getConsultaId(), dto.getInicio(), dto.getFim()),
+                        Collectors.toList())));
+
+        // 2. Agenda de cada médico montada em paralelo; as grades e o calendário são obtidos antes,
+        // nesta thread, para que as virtual threads não disputem conexões para carregá-los
+        LocalDateTime agora = LocalDateTime.now();
+        calendarioAgendaService.versao();
+        List<CompletableFuture<DiaAgenda>> agendas = medicos.stream()
+                .map(medico -> {
+                    VarreduraAgenda varredura = new VarreduraAgenda(medico, expedienteService.grade(medico),
+                            calendarioAgendaService, ocupacoesPorMedico.getOrDefault(medico.getId(), List.of()), agora);
+                    return CompletableFuture.supplyAsync(() -> varredura.varrerDia(request.getData()),
+                            virtualThreadExecutor);
+                })
+                .toList();
+        List<DiaAgenda> dias = agendas.stream().map(ConsultaService::aguardar).toList();
+
+        // 3. Colunas da matriz: união dos horários (minutos do dia) de todos os médicos
+        boolean compacto = request.getFormato() == FormatoAgenda.COMPACTO;
+        Map<Integer, Integer> colunaPorMinuto = new HashMap<>();
+        List<String> horarios = null;
+        if (!compacto) {
+            TreeSet<Integer> minutos = new TreeSet<>();
+            for (DiaAgenda dia : dias) {
+                for (int slot = 0; slot < dia.quantidade(); slot++) {
+                    minutos.add(dia.minuto(slot));
+                }
+            }
+            horarios = new ArrayList<>(minutos.size());
+            for (Integer minuto : minutos) {
+                colunaPorMinuto.put(minuto, horarios.size());
+                horarios.add(formatarHorario(minuto));
+            }
+        }
+
+        List<DisponibilidadeEspecialidadeResponseDTO.MedicoDisponibilidadeDTO> linhas = new ArrayList<>();
+        for (int i = 0; i < medicos.size(); i++) {
+            DiaAgenda dia = dias.get(i);
+            DisponibilidadeEspecialidadeResponseDTO.MedicoDisponibilidadeDTO linha =
+                    new DisponibilidadeEspecialidadeResponseDTO.MedicoDisponibilidadeDTO();
+            linha.setMedicoId(medicos.get(i).getId());
+            linha.setMedico(medicos.get(i).getNome());
+            if (compacto) {
+                linha.setCompacta(dia.compacta());
+            } else {
+                Boolean[] disponivel = new Boolean[horarios.size()];
+                for (int slot = 0; slot < dia.quantidade(); slot++) {
+                    disponivel[colunaPorMinuto.get(dia.minuto(slot))] = !dia.ocupado(slot);
+                }
+                linha.setDisponivel(Arrays.asList(disponivel));
+            }
+            linhas.add(linha);
+        }
+
+        DisponibilidadeEspecialidadeResponseDTO responseDTO = new DisponibilidadeEspecialidadeResponseDTO();
+        responseDTO.setEspecialidade(especialidade.getNome());
+        responseDTO.setData(request.getData());
+        responseDTO.setHorarios(horarios);
+        responseDTO.setMedicos(linhas);
         return responseDTO;
     }
 
+    private Stream<AgendaMedicaResponseDTO> montarAgenda(MedicoModel medico, LocalDate dataInicio, LocalDate dataFim,
+                                                         FormatoAgenda formato) {
+        List<IndiceAgendaService.Ocupacao> ocupacoes = indiceAgendaService.listarOcupacoes(
+                medico.getId(),
+                dataInicio.atStartOfDay(),
+                dataFim.plusDays(1).atStartOfDay());
+
+        VarreduraAgenda varredura = new VarreduraAgenda(medico, expedienteService.grade(medico),
+                calendarioAgendaService, ocupacoes, LocalDateTime.now());
+        return dataInicio.datesUntil(dataFim.plusDays(1)).map(data -> varredura.montarDia(data, formato));
+    }
+
     /**
-     * Cancela uma consulta agendada.
+     * Cancela uma consulta agendada. Após o commit, o horário liberado é oferecido à lista de espera
+     * de forma assíncrona (veja {@link ListaEsperaService}).
      *
      * @param cancelamentoDTO DTO com o ID da consulta e o motivo do cancelamento.
      * @return DTO da consulta cancelada.
@@ -623,7 +1712,10 @@ public class ConsultaService {
 
         // O valor será automaticamente atualizado para zero pelo método @PreUpdate na
         // entidade ConsultaModel.
-        ConsultaModel consultaCancelada = consultaRepository.save(consulta);
+        // Grava imediatamente para liberar o horário reservado antes de um eventual reagendamento
+        ConsultaModel consultaCancelada = consultaRepository.saveAndFlush(consulta);
+        indiceAgendaService.registrar(consultaCancelada);
+        listaEsperaService.horarioLiberado(consultaCancelada);
         return modelMapper.map(consultaCancelada, ConsultaDTO.class);
     }
 
@@ -634,6 +1726,9 @@ public class ConsultaService {
                 .orElseThrow(() -> new ObjectNotFoundException(
                         "Consulta com ID " + request.getConsultaId() + " não encontrada."));
 
+        MedicoModel medico = consultaOriginal.getMedico();
+        bloquearAgendas(Set.of(medico.getId()), Set.of(consultaOriginal.getPaciente().getId()));
+
         // 2. Validações da consulta original
         if (consultaOriginal.getStatus() != ConsultaStatus.AGENDADA) {
             throw new BusinessRuleException("A consulta com ID " + consultaOriginal.getId()
@@ -651,28 +1746,32 @@ public class ConsultaService {
         }
 
         // 4. Verificar se o novo horário está disponível
-        MedicoModel medico = consultaOriginal.getMedico();
-        Integer duracaoConsulta = medico.getDuracaoPadraoConsulta();
+        // Mantém a duração real da consulta original
+        Duration duracaoConsulta = consultaOriginal.getDataHoraFim() != null
+                ? Duration.between(consultaOriginal.getDataHoraConsulta(), consultaOriginal.getDataHoraFim())
+                : Duration.ofMinutes(medico.getDuracaoPadraoConsulta());
         LocalDateTime inicioNovoSlot = request.getNovaDataHora();
-        LocalDateTime fimNovoSlot = inicioNovoSlot.plusMinutes(duracaoConsulta);
+        LocalDateTime fimNovoSlot = inicioNovoSlot.plus(duracaoConsulta);
+        verificarBloqueioAgenda(medico, inicioNovoSlot);
+        verificarAgendaPaciente(consultaOriginal.getPaciente().getId(), inicioNovoSlot, fimNovoSlot,
+                consultaOriginal.getId());
 
-        List<ConsultaModel> consultasConflito = consultaRepository.findConsultasByMedicoAndPeriod(
+        boolean horarioReservado = indiceAgendaService.reservar(
                 medico.getId(),
                 inicioNovoSlot,
-                fimNovoSlot);
+                fimNovoSlot,
+                consultaOriginal.getId());
 
-        boolean temConflito = consultasConflito.stream()
-                .anyMatch(consultaExistente -> {
-                    if (consultaExistente.getId().equals(consultaOriginal.getId())) {
-                        return false;
-                    }
-                    LocalDateTime inicioExistente = consultaExistente.getDataHoraConsulta();
-                    LocalDateTime fimExistente = inicioExistente
-                            .plusMinutes(consultaExistente.getMedico().getDuracaoPadraoConsulta());
-                    return inicioNovoSlot.isBefore(fimExistente) && fimNovoSlot.isAfter(inicioExistente);
-                });
-
-        if (temConflito) {
+        if (!horarioReservado) {
+            throw new BusinessRuleException(
+                    "O novo horário " + inicioNovoSlot.format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"))
+                            + " já está ocupado para o médico " + medico.getNome() + ".");
+        }
+        // Confirmado no banco antes de cancelar a original, para que uma falha não deixe o cancelamento gravado
+        if (consultaRepository.existsByMedicoAndPeriod(medico.getId(), inicioNovoSlot.minus(ConsultaModel.DURACAO_MAXIMA),
+                inicioNovoSlot, fimNovoSlot, consultaOriginal.getId())) {
+            // Ocupado por uma gravação que o índice em memória ainda não conhecia
+            indiceAgendaService.invalidar(medico.getId());
             throw new BusinessRuleException(
                     "O novo horário " + inicioNovoSlot.format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"))
                             + " já está ocupado para o médico " + medico.getNome() + ".");
@@ -690,6 +1789,7 @@ public class ConsultaService {
         // 6. Criar e agendar a nova consulta (toda a lógica aqui dentro)
         ConsultaModel novaConsulta = new ConsultaModel();
         novaConsulta.setDataHoraConsulta(request.getNovaDataHora());
+        novaConsulta.setDataHoraFim(fimNovoSlot);
         novaConsulta.setStatus(ConsultaStatus.AGENDADA);
         novaConsulta.setObservacoes("Reagendamento da consulta original ID: " + consultaOriginal.getId() + ". Motivo: "
                 + request.getMotivo());
@@ -715,8 +1815,630 @@ public class ConsultaService {
         }
 
         ConsultaModel consultaSalva = consultaRepository.save(novaConsulta);
+        indiceAgendaService.registrar(consultaSalva);
 
         return new ReagendarConsultaResponseDTO("Consulta reagendada com sucesso.",
                 consultaSalva.getDataHoraConsulta());
     }
-}
+
+    /**
+     * Reagenda todas as consultas agendadas de um médico em uma data, como quando ele se ausenta e,
+     * se solicitado, bloqueia a data na agenda dele.
+     * <p>
+     * Cada consulta, em ordem de horário, vai para o horário livre mais cedo entre o próprio médico, a
+     * partir do dia seguinte, e os demais médicos ativos da especialidade, respeitando a antecedência
+     * mínima de 1h, mantendo a duração original e sem se sobrepor a outra consulta do paciente; em
+     * caso de empate, fica com o próprio médico. O
+     * planejamento usa o índice em memória, reservando cada horário antes do próximo, e tudo é gravado
+     * em uma única transação: as consultas originais são canceladas com um único comando JDBC em lote
+     * e as novas são inseridas com outro, após uma única consulta que confirma que nenhum horário
+     * planejado foi ocupado por outra instância. Se algum tiver sido, se o banco rejeitar um horário
+     * ou se uma consulta do dia for alterada no meio-tempo, o dia é planejado novamente.
+     * <p>
+     * Uma consulta sem horário disponível (ou que começa em menos de 1h) é mantida e a falha é
+     * devolvida no resultado dela, sem impedir o reagendamento das demais. Nesse caso a data não é
+     * bloqueada mesmo que o bloqueio tenha sido solicitado, já que ainda há consulta agendada nela.
+     *
+     * @param request DTO com o médico, a data, o motivo e se a data deve ser bloqueada.
+     * @return Resultado de cada consulta do médico na data.
+     * @throws ObjectNotFoundException Se o médico não for encontrado.
+     * @throws BusinessRuleException   Se a agenda continuar sendo disputada após
+     *                                 {@value #MAX_TENTATIVAS_AGENDAMENTO} tentativas.
+     */
+    public ReagendamentoDiaResponseDTO reagendarDia(ReagendamentoDiaRequestDTO request) {
+        List<MedicoModel> medicos = transacaoSomenteLeitura().execute(status -> {
+            MedicoModel medico = medicoService.obterMedicoModelPorId(request.getMedicoId());
+            // O médico ausente vem primeiro para ficar com os empates
+            List<MedicoModel> elegiveis = new ArrayList<>();
+            elegiveis.add(medico);
+            medicoService.buscarMedicosModelPorEspecialidade(medico.getEspecialidade()).stream()
+                    .filter(outro -> outro.isAtivo() && !outro.getId().equals(medico.getId()))
+                    .forEach(elegiveis::add);
+            return elegiveis;
+        });
+
+        for (int tentativa = 1; ; tentativa++) {
+            try {
+                Optional<ReagendamentoDiaResponseDTO> resultado = transactionTemplate.execute(status ->
+                        gravarReagendamentoDia(medicos, request));
+                if (resultado.isPresent()) {
+                    return resultado.get();
+                }
+            } catch (DataIntegrityViolationException e) {
+                if (!violouHorarioReservado(e)) {
+                    throw e;
+                }
+                medicos.forEach(medico -> indiceAgendaService.invalidar(medico.getId()));
+            } catch (OptimisticLockingFailureException e) {
+                // Uma consulta do dia foi cancelada ou reagendada no meio-tempo: planeja o dia novamente
+            }
+            if (tentativa >= MAX_TENTATIVAS_AGENDAMENTO) {
+                throw new BusinessRuleException(
+                        "Não foi possível reagendar o dia: a agenda está sendo disputada por outros agendamentos. Tente novamente.");
+            }
+        }
+    }
+
+    /**
+     * Bloqueia as agendas de todos os médicos elegíveis, planeja o novo horário de cada consulta do
+     * dia, confirma os horários no banco, cancela as originais e insere as novas em lote e, se
+     * solicitado e nenhuma consulta do dia continuar agendada, bloqueia a data na agenda do médico.
+     *
+     * @param medicos O médico ausente, seguido dos demais médicos elegíveis.
+     * @return O resultado do dia, ou vazio se algum horário planejado já estiver ocupado no banco.
+     */
+    private Optional<ReagendamentoDiaResponseDTO> gravarReagendamentoDia(List<MedicoModel> medicos,
+                                                                         ReagendamentoDiaRequestDTO request) {
+        bloquearAgendas(medicos.stream().map(MedicoModel::getId).toList(), Set.of());
+        MedicoModel medicoAusente = medicos.get(0);
+        LocalDateTime inicioDia = request.getData().atStartOfDay();
+        LocalDateTime antecedenciaMinima = LocalDateTime.now().plusHours(1);
+        LocalDateTime inicioBusca = inicioDia.isAfter(antecedenciaMinima) ? inicioDia : antecedenciaMinima;
+        LocalDateTime inicioMedicoAusente = inicioDia.plusDays(1).isAfter(antecedenciaMinima)
+                ? inicioDia.plusDays(1) : antecedenciaMinima;
+
+        List<ConsultaModel> originais = consultaRepository.findConsultasByMedicoStatusAndPeriodo(
+                medicoAusente.getId(), ConsultaStatus.AGENDADA, inicioDia, inicioDia.plusDays(1));
+        // Os pacientes do dia só são conhecidos depois de ler as consultas, já com os médicos bloqueados
+        bloquearAgendas(Set.of(), originais.stream()
+                .map(original -> original.getPaciente().getId())
+                .collect(Collectors.toSet()));
+        ConsultaModel[] novas = new ConsultaModel[originais.size()];
+        String[] falhas = new String[originais.size()];
+        AgendaPacientesLote agendaPacientes = new AgendaPacientesLote();
+        for (int i = 0; i < originais.size(); i++) {
+            ConsultaModel original = originais.get(i);
+            if (original.getDataHoraConsulta().isBefore(antecedenciaMinima)) {
+                falhas[i] = "A consulta com ID " + original.getId()
+                        + " começa em menos de 1h e não pode ser reagendada.";
+                continue;
+            }
+            try {
+                novas[i] = planejarReagendamento(original, medicos, inicioBusca, inicioMedicoAusente,
+                        request.getMotivo(), agendaPacientes);
+            } catch (BusinessRuleException e) {
+                falhas[i] = e.getMessage();
+            }
+        }
+        List<ConsultaModel> novasConsultas = Arrays.stream(novas).filter(Objects::nonNull).toList();
+
+        Set<Integer> desatualizados = medicosComConflitoNoBanco(novasConsultas);
+        if (!desatualizados.isEmpty()) {
+            desatualizados.forEach(indiceAgendaService::invalidar);
+            return Optional.empty();
+        }
+
+        List<ConsultaModel> reagendadas = new ArrayList<>(novasConsultas.size());
+        List<String> observacoes = new ArrayList<>(novasConsultas.size());
+        for (int i = 0; i < novas.length; i++) {
+            if (novas[i] != null) {
+                reagendadas.add(originais.get(i));
+                observacoes.add("Reagendamento para o novo horário: "
+                        + novas[i].getDataHoraConsulta().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"))
+                        + " - Motivo: " + request.getMotivo());
+            }
+        }
+        consultaRepository.cancelarEmLote(reagendadas, observacoes);
+        novasConsultas.forEach(ConsultaModel::prepararPersistencia);
+        consultaRepository.inserirEmLote(novasConsultas);
+        novasConsultas.forEach(indiceAgendaService::registrar);
+        // As originais foram canceladas fora do JPA: a agenda do médico é recarregada do banco
+        indiceAgendaService.invalidar(medicoAusente.getId());
+        // Com alguma consulta mantida, bloquear a data a deixaria agendada em um dia sem atendimento
+        boolean bloquearData = Boolean.TRUE.equals(request.getBloquearData())
+                && novasConsultas.size() == originais.size();
+        if (bloquearData && !calendarioAgendaService.bloqueado(medicoAusente.getId(), request.getData())) {
+            calendarioAgendaService.salvar(new BloqueioAgendaDTO(null, request.getData(), request.getData(),
+                    request.getMotivo(), medicoAusente.getId()));
+        }
+
+        ReagendamentoDiaResponseDTO responseDTO = new ReagendamentoDiaResponseDTO();
+        List<ReagendamentoDiaResponseDTO.ResultadoConsultaDTO> resultados = new ArrayList<>(originais.size());
+        for (int i = 0; i < originais.size(); i++) {
+            ReagendamentoDiaResponseDTO.ResultadoConsultaDTO item = new ReagendamentoDiaResponseDTO.ResultadoConsultaDTO();
+            item.setConsultaId(originais.get(i).getId());
+            item.setSucesso(novas[i] != null);
+            if (novas[i] != null) {
+                item.setNovaConsulta(montarRespostaAgendamento(novas[i]));
+            } else {
+                item.setErro(falhas[i]);
+            }
+            resultados.add(item);
+        }
+        responseDTO.setTotal(originais.size());
+        responseDTO.setReagendadas(novasConsultas.size());
+        responseDTO.setFalhas(originais.size() - novasConsultas.size());
+        responseDTO.setDataBloqueada(bloquearData);
+        responseDTO.setResultados(resultados);
+        return Optional.of(responseDTO);
+    }
+
+    /**
+     * Busca o horário livre mais cedo para a consulta entre os médicos elegíveis e o reserva até o
+     * fim da transação, para que as próximas consultas do dia já o encontrem ocupado. Horários em que
+     * o paciente já tem outra consulta, gravada ou replanejada neste dia, são pulados.
+     */
+    private ConsultaModel planejarReagendamento(ConsultaModel original, List<MedicoModel> medicos,
+                                                LocalDateTime inicio, LocalDateTime inicioMedicoAusente,
+                                                String motivo, AgendaPacientesLote agendaPacientes) {
+        AgendamentoAutomaticoRequestDTO request = new AgendamentoAutomaticoRequestDTO();
+        request.setDataHoraInicial(inicio);
+        request.setDuracaoConsultaMinutos(original.getDataHoraFim() != null
+                ? (int) Duration.between(original.getDataHoraConsulta(), original.getDataHoraFim()).toMinutes()
+                : original.getMedico().getDuracaoPadraoConsulta());
+        long prazo = System.nanoTime() + prazoBuscaMs * 1_000_000L;
+        Map<Integer, LocalDateTime> inicioBusca = new HashMap<>();
+        inicioBusca.put(original.getMedico().getId(), inicioMedicoAusente);
+        while (true) {
+            HorarioCandidato horarioLivre = buscarHorarioMaisCedo(medicos, request, inicioBusca, prazo, false)
+                    .orElseThrow(ConsultaService::semHorarioDisponivel);
+            MedicoModel medico = horarioLivre.medico();
+            LocalDateTime fimConsulta = horarioLivre.dataHora().plusMinutes(request.getDuracaoConsultaMinutos());
+            if (!agendaPacientes.ocupado(original.getPaciente().getId(), horarioLivre.dataHora(), fimConsulta,
+                    original.getId())
+                    && indiceAgendaService.reservar(medico.getId(), horarioLivre.dataHora(), fimConsulta, null)) {
+                ConsultaModel novaConsulta = new ConsultaModel();
+                novaConsulta.setDataHoraConsulta(horarioLivre.dataHora());
+                novaConsulta.setDataHoraFim(fimConsulta);
+                novaConsulta.setStatus(ConsultaStatus.AGENDADA);
+                novaConsulta.setObservacoes("Reagendamento da consulta original ID: " + original.getId()
+                        + ". Motivo: " + motivo);
+                novaConsulta.setPaciente(original.getPaciente());
+                novaConsulta.setMedico(medico);
+                novaConsulta.setRecepcionista(original.getRecepcionista());
+                novaConsulta.setFormaPagamento(original.getFormaPagamento());
+                // O valor é recalculado para o novo médico, com o desconto do convênio, antes da inserção
+                novaConsulta.setConvenio(original.getConvenio());
+                return agendaPacientes.adicionar(novaConsulta);
+            }
+            inicioBusca.put(medico.getId(), fimConsulta);
+        }
+    }
+
+    /**
+     * Executa um lote ordenado de comandos de cadastro, reagendamento e cancelamento de consultas,
+     * como as alterações feitas offline pela recepção, em uma única transação.
+     * <p>
+     * Os envolvidos dos cadastros (paciente, recepcionista, médico, forma de pagamento e convênio) são
+     * carregados e validados antes, em uma transação somente leitura, e compartilhados entre os
+     * comandos: cada ID é buscado uma única vez por lote. Os comandos são então aplicados em ordem, com
+     * as mesmas regras das operações individuais, de modo que um comando enxerga o efeito dos
+     * anteriores (ex.: cancelar e cadastrar no horário liberado). No modo
+     * {@link ModoLote#TUDO_OU_NADA}, a primeira falha desfaz o lote; no modo
+     * {@link ModoLote#MELHOR_ESFORCO}, os comandos que falham são relatados e os demais confirmados.
+     * Se o banco rejeitar um horário pela restrição {@link ConsultaModel#UK_HORARIO_RESERVADO}, as
+     * agendas envolvidas são recarregadas e o lote é executado novamente.
+     *
+     * @param request DTO com o modo e a lista de comandos.
+     * @return Resultado de cada comando, na ordem da requisição.
+     * @throws BusinessRuleException Se os horários do lote continuarem sendo disputados após
+     *                               {@value #MAX_TENTATIVAS_AGENDAMENTO} tentativas.
+     */
+    public LoteComandosResponseDTO executarLoteComandos(LoteComandosRequestDTO request) {
+        List<ComandoConsultaDTO> comandos = request.getComandos();
+        ModoLote modo = Optional.ofNullable(request.getModo()).orElse(ModoLote.TUDO_OU_NADA);
+
+        // 1. Carregar e validar os envolvidos dos cadastros, uma vez por ID
+        EnvolvidosCadastro[] envolvidos = new EnvolvidosCadastro[comandos.size()];
+        String[] erros = new String[comandos.size()];
+        transacaoSomenteLeitura().executeWithoutResult(status -> {
+            CacheLote<PacienteModel> pacientes = new CacheLote<>(pacienteService::obterPacienteModelPorId);
+            CacheLote<RecepcionistaModel> recepcionistas = new CacheLote<>(recepcionistaService::obterRecepcionistaPorId);
+            CacheLote<MedicoModel> medicos = new CacheLote<>(medicoService::obterMedicoModelPorId);
+            CacheLote<FormaPagamentoModel> formasPagamento =
+                    new CacheLote<>(formaPagamentoService::obterFormaPagamentoModelPorId);
+            CacheLote<ConvenioModel> convenios = new CacheLote<>(convenioService::obterConvenioModelPorId);
+            for (int i = 0; i < comandos.size(); i++) {
+                try {
+                    ComandoConsultaDTO comando = comandos.get(i);
+                    exigirDadosDoComando(comando);
+                    if (comando.getTipo() != TipoComandoConsulta.CADASTRAR) {
+                        continue;
+                    }
+                    CadastrarConsultaRequestDTO cadastro = comando.getCadastro();
+                    RecepcionistaModel recepcionista = recepcionistas.obter(cadastro.getRecepcionistaId());
+                    MedicoModel medico = medicos.obter(cadastro.getMedicoId());
+                    if (!recepcionista.isAtivo()) {
+                        throw new BusinessRuleException("Recepcionista inativo. Não é possível agendar consultas.");
+                    }
+                    if (!medico.isAtivo()) {
+                        throw new BusinessRuleException("Médico inativo. Não é possível agendar consultas para ele.");
+                    }
+                    envolvidos[i] = new EnvolvidosCadastro(pacientes.obter(cadastro.getPacienteId()), recepcionista,
+                            medico, formasPagamento.obter(cadastro.getFormaPagamentoId()),
+                            cadastro.getConvenioId() != null ? convenios.obter(cadastro.getConvenioId()) : null);
+                } catch (BusinessRuleException | ObjectNotFoundException e) {
+                    erros[i] = e.getMessage();
+                }
+            }
+            // Nada a confirmar; encerrar com rollback evita a UnexpectedRollbackException causada
+            // pelas falhas de validação dentro dos serviços transacionais
+            status.setRollbackOnly();
+        });
+
+        // 2. Aplicar os comandos em ordem em uma única transação de escrita
+        Set<Integer> medicosEnvolvidos = new HashSet<>();
+        for (int tentativa = 1; ; tentativa++) {
+            try {
+                return transactionTemplate.execute(status -> {
+                    LoteComandosResponseDTO resultado =
+                            aplicarComandos(comandos, modo, envolvidos, erros, medicosEnvolvidos);
+                    if (!resultado.isConfirmado()) {
+                        status.setRollbackOnly();
+                    }
+                    return resultado;
+                });
+            } catch (DataIntegrityViolationException e) {
+                if (!violouHorarioReservado(e)) {
+                    throw e;
+                }
+                medicosEnvolvidos.forEach(indiceAgendaService::invalidar);
+            }
+            if (tentativa >= MAX_TENTATIVAS_AGENDAMENTO) {
+                throw new BusinessRuleException(
+                        "Não foi possível executar o lote: a agenda está sendo disputada por outros agendamentos. Tente novamente.");
+            }
+        }
+    }
+
+    /**
+     * Aplica os comandos em ordem na transação corrente, depois de bloquear de uma vez as agendas de
+     * todos os médicos e pacientes dos cadastros e reagendamentos. As falhas de regra de negócio
+     * acontecem antes de qualquer gravação do comando (o reagendamento confirma o novo horário no
+     * banco, desconsiderando a própria consulta, antes de cancelar a original), de modo que, no modo de
+     * melhor esforço, um comando que falha não deixa alterações parciais.
+     *
+     * @param medicosEnvolvidos Completado com os médicos das agendas alteradas, para uma eventual nova tentativa.
+     * @return O resultado do lote; não confirmado se o modo for tudo ou nada e algum comando falhar.
+     */
+    private LoteComandosResponseDTO aplicarComandos(List<ComandoConsultaDTO> comandos, ModoLote modo,
+                                                    EnvolvidosCadastro[] envolvidos, String[] erros,
+                                                    Set<Integer> medicosEnvolvidos) {
+        Set<Integer> agendasAlteradas = new HashSet<>();
+        Set<Integer> pacientesAgendados = new HashSet<>();
+        for (int i = 0; i < comandos.size(); i++) {
+            if (erros[i] != null) {
+                continue;
+            }
+            switch (comandos.get(i).getTipo()) {
+                case CADASTRAR -> {
+                    agendasAlteradas.add(envolvidos[i].medico().getId());
+                    pacientesAgendados.add(envolvidos[i].paciente().getId());
+                }
+                case REAGENDAR -> {
+                    Integer consultaId = comandos.get(i).getReagendamento().getConsultaId();
+                    consultaRepository.findMedicoIdById(consultaId).ifPresent(agendasAlteradas::add);
+                    consultaRepository.findPacienteIdById(consultaId).ifPresent(pacientesAgendados::add);
+                }
+                case CANCELAR -> {
+                }
+            }
+        }
+        bloquearAgendas(agendasAlteradas, pacientesAgendados);
+
+        List<LoteComandosResponseDTO.ResultadoComandoDTO> resultados = new ArrayList<>(comandos.size());
+        Integer primeiraFalha = null;
+        for (int i = 0; i < comandos.size(); i++) {
+            ComandoConsultaDTO comando = comandos.get(i);
+            LoteComandosResponseDTO.ResultadoComandoDTO item = new LoteComandosResponseDTO.ResultadoComandoDTO();
+            item.setIndice(i);
+            item.setTipo(comando.getTipo());
+            resultados.add(item);
+            if (primeiraFalha != null && modo == ModoLote.TUDO_OU_NADA) {
+                continue;
+            }
+            try {
+                if (erros[i] != null) {
+                    throw new BusinessRuleException(erros[i]);
+                }
+                switch (comando.getTipo()) {
+                    case CADASTRAR -> {
+                        EnvolvidosCadastro dados = envolvidos[i];
+                        medicosEnvolvidos.add(dados.medico().getId());
+                        item.setCadastro(agendarCadastro(comando.getCadastro(), dados.paciente(), dados.recepcionista(),
+                                dados.medico(), dados.formaPagamento(), dados.convenio()));
+                    }
+                    case REAGENDAR -> {
+                        // Carrega a consulta no contexto de persistência, onde o reagendamento a encontrará
+                        consultaRepository.findById(comando.getReagendamento().getConsultaId())
+                                .ifPresent(consulta -> medicosEnvolvidos.add(consulta.getMedico().getId()));
+                        item.setReagendamento(reagendarConsulta(comando.getReagendamento()));
+                    }
+                    case CANCELAR -> item.setCancelamento(cancelarConsulta(comando.getCancelamento()));
+                }
+                item.setSucesso(true);
+            } catch (BusinessRuleException | ObjectNotFoundException e) {
+                item.setErro(e.getMessage());
+                if (primeiraFalha == null) {
+                    primeiraFalha = i;
+                }
+            }
+        }
+
+        boolean confirmado = primeiraFalha == null || modo == ModoLote.MELHOR_ESFORCO;
+        if (!confirmado) {
+            for (LoteComandosResponseDTO.ResultadoComandoDTO item : resultados) {
+                if (item.getIndice() != primeiraFalha) {
+                    item.setSucesso(false);
+                    item.setCadastro(null);
+                    item.setReagendamento(null);
+                    item.setCancelamento(null);
+                    item.setErro("Não aplicado: o lote foi desfeito pela falha do comando " + primeiraFalha + ".");
+                }
+            }
+        }
+        LoteComandosResponseDTO responseDTO = new LoteComandosResponseDTO();
+        responseDTO.setModo(modo);
+        responseDTO.setConfirmado(confirmado);
+        responseDTO.setTotal(comandos.size());
+        responseDTO.setSucessos((int) resultados.stream().filter(LoteComandosResponseDTO.ResultadoComandoDTO::isSucesso).count());
+        responseDTO.setFalhas(comandos.size() - responseDTO.getSucessos());
+        responseDTO.setResultados(resultados);
+        return responseDTO;
+    }
+
+    private static void exigirDadosDoComando(ComandoConsultaDTO comando) {
+        boolean informado = switch (comando.getTipo()) {
+            case CADASTRAR -> comando.getCadastro() != null;
+            case REAGENDAR -> comando.getReagendamento() != null;
+            case CANCELAR -> comando.getCancelamento() != null;
+        };
+        if (!informado) {
+            throw new BusinessRuleException("Os dados do comando " + comando.getTipo() + " não foram informados.");
+        }
+    }
+
+    /**
+     * Envolvidos de um comando de cadastro do lote de comandos, já validados.
+     */
+    private record EnvolvidosCadastro(PacienteModel paciente, RecepcionistaModel recepcionista, MedicoModel medico,
+                                      FormaPagamentoModel formaPagamento, ConvenioModel convenio) {
+    }
+
+    /**
+     * Agenda dos pacientes durante o planejamento de um lote: além das consultas gravadas, verificadas
+     * no banco, considera as já planejadas no lote, que só são inseridas ao final. As consultas
+     * planejadas de um mesmo paciente não se sobrepõem, então basta compará-lo com a última que
+     * começa antes do fim do intervalo.
+     */
+    private final class AgendaPacientesLote {
+
+        private final Map<Integer, NavigableMap<LocalDateTime, LocalDateTime>> planejadas = new HashMap<>();
+
+        boolean ocupado(Integer pacienteId, LocalDateTime inicio, LocalDateTime fim, Integer consultaIgnoradaId) {
+            NavigableMap<LocalDateTime, LocalDateTime> doPaciente = planejadas.get(pacienteId);
+            if (doPaciente != null) {
+                Map.Entry<LocalDateTime, LocalDateTime> anterior = doPaciente.lowerEntry(fim);
+                if (anterior != null && anterior.getValue().isAfter(inicio)) {
+                    return true;
+                }
+            }
+            return pacienteOcupado(pacienteId, inicio, fim, consultaIgnoradaId);
+        }
+
+        ConsultaModel adicionar(ConsultaModel consulta) {
+            planejadas.computeIfAbsent(consulta.getPaciente().getId(), id -> new TreeMap<>())
+                    .put(consulta.getDataHoraConsulta(), consulta.getDataHoraFim());
+            return consulta;
+        }
+    }
+
+    /**
+     * Entidades já buscadas por um lote, para que cada ID seja carregado uma única vez. Um ID não
+     * encontrado também é lembrado, e a mesma exceção é relançada nas buscas seguintes.
+     */
+    private static final class CacheLote<T> {
+
+        private final Function<Integer, T> carregar;
+        private final Map<Integer, Object> porId = new HashMap<>();
+
+        CacheLote(Function<Integer, T> carregar) {
+            this.carregar = carregar;
+        }
+
+        @SuppressWarnings("unchecked")
+        T obter(Integer id) {
+            Object encontrado = porId.computeIfAbsent(id, chave -> {
+                try {
+                    return carregar.apply(chave);
+                } catch (ObjectNotFoundException e) {
+                    return e;
+                }
+            });
+            if (encontrado instanceof ObjectNotFoundException naoEncontrado) {
+                throw naoEncontrado;
+            }
+            return (T) encontrado;
+        }
+    }
+
+    /**
+     * Horário livre encontrado na agenda de um médico.
+     */
+    private record HorarioCandidato(MedicoModel medico, LocalDateTime dataHora) {
+    }
+
+    /**
+     * Classifica os horários do expediente de um médico em ocupados e disponíveis, dia após dia. Os
+     * horários de cada dia são os da grade compilada do expediente semanal para o dia da semana;
+     * dias bloqueados no calendário não têm horários.
+     * <p>
+     * Os horários são visitados em ordem crescente, então o fim de cada horário nunca diminui: basta
+     * avançar sobre as ocupações (ordenadas pelo início) que começam antes do fim do horário atual e
+     * guardar o maior fim entre elas. O horário está ocupado se esse maior fim passar do seu início.
+     * Cada ocupação é visitada uma única vez em todo o período.
+     * <p>
+     * Instantes são tratados como minutos absolutos ({@code long}) e horários do dia como minutos desde
+     * a meia-noite ({@code int}); nenhum objeto é criado por horário durante a varredura. Inícios são
+     * arredondados para baixo e fins para cima, o que preserva as comparações com os limites dos
+     * horários, que caem sempre em minutos inteiros.
+     */
+    private static final class VarreduraAgenda {
+
+        private static final int MINUTOS_POR_DIA = 24 * 60;
+
+        private final MedicoModel medico;
+        private final ExpedienteService.GradeHorarios grade;
+        private final CalendarioAgendaService calendario;
+        private final long[] inicios;
+        private final long[] fins;
+        private final long agora;
+        private final int duracao;
+        private int proximaOcupacao;
+        private long maiorFim = Long.MIN_VALUE;
+
+        VarreduraAgenda(MedicoModel medico, ExpedienteService.GradeHorarios grade, CalendarioAgendaService calendario,
+                        List<IndiceAgendaService.Ocupacao> ocupacoes, LocalDateTime agora) {
+            this.medico = medico;
+            this.grade = grade;
+            this.calendario = calendario;
+            this.inicios = new long[ocupacoes.size()];
+            this.fins = new long[ocupacoes.size()];
+            for (int i = 0; i < ocupacoes.size(); i++) {
+                inicios[i] = minutoAbsoluto(ocupacoes.get(i).inicio(), false);
+                fins[i] = minutoAbsoluto(ocupacoes.get(i).fim(), true);
+            }
+            this.agora = minutoAbsoluto(agora, true);
+            this.duracao = grade.duracao();
+        }
+
+        AgendaMedicaResponseDTO montarDia(LocalDate data, FormatoAgenda formato) {
+            DiaAgenda dia = varrerDia(data);
+            AgendaMedicaResponseDTO responseDTO = new AgendaMedicaResponseDTO();
+            responseDTO.setMedico(medico.getNome());
+            responseDTO.setData(data);
+            if (formato == FormatoAgenda.COMPACTO) {
+                responseDTO.setCompacta(dia.compacta());
+                return responseDTO;
+            }
+            List<String> horariosOcupados = new ArrayList<>();
+            List<String> horariosDisponiveis = new ArrayList<>();
+            for (int slot = 0; slot < dia.quantidade(); slot++) {
+                String horario = formatarHorario(dia.minuto(slot));
+                if (dia.ocupado(slot)) {
+                    horariosOcupados.add(horario);
+                } else {
+                    horariosDisponiveis.add(horario);
+                }
+            }
+            responseDTO.setHorariosOcupados(horariosOcupados);
+            responseDTO.setHorariosDisponiveis(horariosDisponiveis);
+            return responseDTO;
+        }
+
+        DiaAgenda varrerDia(LocalDate data) {
+            long base = data.toEpochDay() * MINUTOS_POR_DIA;
+            int[] slots = calendario.bloqueado(medico.getId(), data) ? new int[0] : grade.slots(data.getDayOfWeek());
+            int[] minutos = new int[slots.length];
+            BitSet ocupados = new BitSet();
+            int quantidade = 0;
+
+            for (int minuto : slots) {
+                long slotInicio = base + minuto;
+                long slotFim = slotInicio + duracao;
+
+                while (proximaOcupacao < inicios.length && inicios[proximaOcupacao] < slotFim) {
+                    maiorFim = Math.max(maiorFim, fins[proximaOcupacao++]);
+                }
+
+                // Não retornar horários anteriores ao momento atual
+                if (slotFim < agora) {
+                    continue;
+                }
+                minutos[quantidade] = minuto;
+
+                // Sobreposição: alguma ocupação começa antes do fim do slot e termina depois do seu início
+                if (maiorFim > slotInicio) {
+                    ocupados.set(quantidade);
+                }
+                quantidade++;
+            }
+
+            return new DiaAgenda(duracao, quantidade, minutos, ocupados);
+        }
+
+        private static long minutoAbsoluto(LocalDateTime instante, boolean arredondarParaCima) {
+            long minuto = instante.toLocalDate().toEpochDay() * MINUTOS_POR_DIA
+                    + instante.getHour() * 60L + instante.getMinute();
+            if (arredondarParaCima && (instante.getSecond() != 0 || instante.getNano() != 0)) {
+                minuto++;
+            }
+            return minuto;
+        }
+    }
+
+    /**
+     * Horários de um dia da agenda: {@code quantidade} slots de {@code duracao} minutos, o slot {@code i}
+     * começando no minuto do dia {@code minutos[i]}; o bit {@code i} de {@code ocupados} indica o slot
+     * {@code i} ocupado.
+     */
+    private record DiaAgenda(int duracao, int quantidade, int[] minutos, BitSet ocupados) {
+
+        int minuto(int slot) {
+            return minutos[slot];
+        }
+
+        boolean ocupado(int slot) {
+            return ocupados.get(slot);
+        }
+
+        /**
+         * Um trecho compacto por sequência de slots consecutivos, isto é, um por turno do expediente.
+         */
+        List<AgendaCompactaDTO> compacta() {
+            List<AgendaCompactaDTO> trechos = new ArrayList<>();
+            int primeiro = 0;
+            for (int slot = 1; slot <= quantidade; slot++) {
+                if (slot == quantidade || minutos[slot] != minutos[slot - 1] + duracao) {
+                    trechos.add(new AgendaCompactaDTO(
+                            LocalTime.ofSecondOfDay(minutos[primeiro] * 60L),
+                            duracao,
+                            slot - primeiro,
+                            Base64.getEncoder().encodeToString(ocupados.get(primeiro, slot).toByteArray())));
+                    primeiro = slot;
+                }
+            }
+            return trechos;
+        }
+    }
+
+    /**
+     * Formata um minuto do dia como "HH:mm", sem passar por {@link LocalTime} e {@link DateTimeFormatter}.
+     */
+    private static String formatarHorario(int minutoDoDia) {
+        int hora = minutoDoDia / 60;
+        int minuto = minutoDoDia % 60;
+        return new String(new char[]{
+                (char) ('0' + hora / 10), (char) ('0' + hora % 10), ':',
+                (char) ('0' + minuto / 10), (char) ('0' + minuto % 10)});
+    }
+
+    /**
+     * Envolvidos no agendamento automático, validados na etapa de leitura.
+     */
+    private record DadosAgendamento(AgendamentoAutomaticoRequestDTO request,
+                                    PacienteModel paciente, RecepcionistaModel recepcionista,
+                                    FormaPagamentoModel formaPagamento, ConvenioModel convenio,
+                                    List<MedicoModel> medicos) {
+    }
+}
\ No newline at end of file
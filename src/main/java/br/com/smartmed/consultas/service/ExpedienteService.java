@@ -0,0 +1,328 @@
+package br.com.smartmed.consultas.service;
+
+import br.com.smartmed.consultas.exception.BusinessRuleException;
+import br.com.smartmed.consultas.exception.ObjectNotFoundException;
+import br.com.smartmed.consultas.model.ExpedienteMedicoModel;
+import br.com.smartmed.consultas.model.MedicoModel;
+import br.com.smartmed.consultas.repository.ExpedienteMedicoRepository;
+import br.com.smartmed.consultas.rest.dto.ExpedienteMedicoDTO;
+import br.com.smartmed.consultas.rest.dto.ExpedienteSemanalDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Expediente semanal dos médicos: horário de atendimento por dia da semana, com intervalo opcional.
+ * <p>
+ * O expediente de cada médico é compilado uma única vez em uma {@link GradeHorarios} (turnos e
+ * inícios dos horários de cada dia da semana, em minutos desde a meia-noite) e mantido em cache. A
+ * grade é descartada após o commit de uma alteração no expediente semanal e recompilada se o
+ * expediente único ou a duração padrão do cadastro do médico mudarem.
+ */
+@Service
+public class ExpedienteService {
+
+    private static final int MINUTOS_POR_DIA = 24 * 60;
+
+    @Autowired
+    private ExpedienteMedicoRepository expedienteMedicoRepository;
+
+    @Autowired
+    private MedicoService medicoService;
+
+    @Autowired
+    private CalendarioAgendaService calendarioAgendaService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final Map<Integer, GradeHorarios> grades = new ConcurrentHashMap<>();
+
+    /**
+     * Contador de grades descartadas, para que uma compilação concorrente a um descarte não guarde
+     * uma grade lida antes da alteração.
+     */
+    private final AtomicLong descartes = new AtomicLong();
+
+    /**
+     * Retorna a grade compilada do expediente do médico, compilando-a se ainda não estiver em cache.
+     * A compilação lê o banco fora do mapa de grades, sem segurar o bloqueio dele durante a leitura;
+     * se duas threads compilarem a mesma grade, fica a primeira. Se uma grade for descartada durante
+     * a compilação, a grade compilada pode ter sido lida antes da alteração, e é compilada de novo.
+     *
+     * @param medico Médico.
+     * @return Grade de horários do médico.
+     */
+    public GradeHorarios grade(MedicoModel medico) {
+        GradeHorarios grade = grades.get(medico.getId());
+        while (grade == null || !grade.compiladaPara(medico)) {
+            long versao = descartes.get();
+            GradeHorarios compilada = compilar(medico);
+            boolean guardada = grade == null
+                    ? grades.putIfAbsent(medico.getId(), compilada) == null
+                    : grades.replace(medico.getId(), grade, compilada);
+            if (guardada) {
+                if (descartes.get() == versao) {
+                    return compilada;
+                }
+                grades.remove(medico.getId(), compilada);
+            }
+            grade = grades.get(medico.getId());
+        }
+        return grade;
+    }
+
+    /**
+     * Verifica se o médico atende na data: dia da semana com expediente e sem bloqueio de agenda.
+     *
+     * @param medico Médico.
+     * @param data   Data a verificar.
+     * @return {@code true} se houver atendimento.
+     */
+    public boolean atende(MedicoModel medico, LocalDate data) {
+        return grade(medico).trabalha(data.getDayOfWeek()) && !calendarioAgendaService.bloqueado(medico.getId(), data);
+    }
+
+    /**
+     * Retorna o expediente semanal cadastrado para o médico.
+     *
+     * @param medicoId ID do médico.
+     * @return Expediente semanal; lista de dias vazia se o médico usa o expediente único do cadastro.
+     * @throws ObjectNotFoundException Se o médico não for encontrado.
+     */
+    @Transactional(readOnly = true)
+    public ExpedienteSemanalDTO obter(Integer medicoId) {
+        medicoService.obterMedicoModelPorId(medicoId);
+        return new ExpedienteSemanalDTO(medicoId, expedienteMedicoRepository.findExpedientesByMedico(medicoId));
+    }
+
+    /**
+     * Substitui o expediente semanal do médico.
+     *
+     * @param medicoId  ID do médico.
+     * @param expediente Novo expediente semanal; sem dias, o médico volta ao expediente único do cadastro.
+     * @return Expediente semanal gravado.
+     * @throws ObjectNotFoundException Se o médico não for encontrado.
+     * @throws BusinessRuleException   Se algum dia for repetido ou tiver horários inconsistentes.
+     */
+    @Transactional
+    public ExpedienteSemanalDTO salvar(Integer medicoId, ExpedienteSemanalDTO expediente) {
+        MedicoModel medico = medicoService.obterMedicoModelPorId(medicoId);
+        Set<DayOfWeek> dias = EnumSet.noneOf(DayOfWeek.class);
+        for (ExpedienteMedicoDTO dia : expediente.getDias()) {
+            if (!dias.add(dia.getDiaSemana())) {
+                throw new BusinessRuleException("O dia " + dia.getDiaSemana() + " foi informado mais de uma vez.");
+            }
+            validar(dia);
+        }
+
+        expedienteMedicoRepository.deleteByMedicoId(medicoId);
+        List<ExpedienteMedicoModel> novos = expediente.getDias().stream()
+                .map(dia -> new ExpedienteMedicoModel(null, medico, dia.getDiaSemana(), dia.getHoraInicio(),
+                        dia.getHoraFim(), dia.getInicioIntervalo(), dia.getFimIntervalo()))
+                .toList();
+        expedienteMedicoRepository.saveAll(novos);
+        invalidarAposCommit(medicoId);
+
+        List<ExpedienteMedicoDTO> gravados = new ArrayList<>(expediente.getDias());
+        gravados.sort(Comparator.comparing(ExpedienteMedicoDTO::getDiaSemana));
+        return new ExpedienteSemanalDTO(medicoId, gravados);
+    }
+
+    private static void validar(ExpedienteMedicoDTO dia) {
+        if (!dia.getHoraFim().isAfter(dia.getHoraInicio())) {
+            throw new BusinessRuleException("No dia " + dia.getDiaSemana() + ", a hora de fim deve ser posterior à de início.");
+        }
+        if ((dia.getInicioIntervalo() == null) != (dia.getFimIntervalo() == null)) {
+            throw new BusinessRuleException("No dia " + dia.getDiaSemana() + ", informe o início e o fim do intervalo, ou nenhum dos dois.");
+        }
+        if (dia.getInicioIntervalo() != null
+                && !(dia.getHoraInicio().isBefore(dia.getInicioIntervalo())
+                && dia.getInicioIntervalo().isBefore(dia.getFimIntervalo())
+                && dia.getFimIntervalo().isBefore(dia.getHoraFim()))) {
+            throw new BusinessRuleException("No dia " + dia.getDiaSemana() + ", o intervalo deve ficar dentro do expediente.");
+        }
+    }
+
+    /**
+     * Compila a grade do médico a partir do expediente semanal cadastrado ou, se não houver, do
+     * expediente único do cadastro, de segunda a sexta. A leitura usa a transação do chamador, se houver.
+     */
+    private GradeHorarios compilar(MedicoModel medico) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        List<ExpedienteMedicoDTO> expedientes = template.execute(status ->
+                expedienteMedicoRepository.findExpedientesByMedico(medico.getId()));
+
+        int[][] turnos = new int[7][0];
+        if (expedientes.isEmpty()) {
+            int[] turnoUnico = {
+                    minutoDoDia(medico.getHoraInicioExpediente(), false),
+                    minutoDoDia(medico.getHoraFimExpediente(), true)};
+            for (DayOfWeek dia : EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.FRIDAY)) {
+                turnos[dia.ordinal()] = turnoUnico;
+            }
+        } else {
+            for (ExpedienteMedicoDTO expediente : expedientes) {
+                int inicio = minutoDoDia(expediente.getHoraInicio(), false);
+                int fim = minutoDoDia(expediente.getHoraFim(), true);
+                turnos[expediente.getDiaSemana().ordinal()] = expediente.getInicioIntervalo() == null
+                        ? new int[]{inicio, fim}
+                        : new int[]{inicio, minutoDoDia(expediente.getInicioIntervalo(), true),
+                                minutoDoDia(expediente.getFimIntervalo(), false), fim};
+            }
+        }
+        return new GradeHorarios(medico.getHoraInicioExpediente(), medico.getHoraFimExpediente(),
+                medico.getDuracaoPadraoConsulta(), turnos);
+    }
+
+    private void invalidarAposCommit(Integer medicoId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            descartar(medicoId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                descartar(medicoId);
+            }
+        });
+    }
+
+    private void descartar(Integer medicoId) {
+        descartes.incrementAndGet();
+        grades.remove(medicoId);
+    }
+
+    /**
+     * Minuto desde a meia-noite; com {@code arredondarParaCima}, segundos contam como um minuto a mais.
+     */
+    private static int minutoDoDia(LocalTime hora, boolean arredondarParaCima) {
+        int segundos = hora.toSecondOfDay();
+        return arredondarParaCima ? (segundos + 59) / 60 : segundos / 60;
+    }
+
+    /**
+     * Expediente compilado de um médico. Para cada dia da semana guarda os turnos (pares início/fim,
+     * em minutos desde a meia-noite, em ordem) e os inícios dos horários de {@code duracaoPadraoConsulta}
+     * minutos que cabem inteiros em algum turno, a partir do início de cada turno. Imutável.
+     */
+    public static final class GradeHorarios {
+
+        private static final int[] NENHUM = new int[0];
+
+        private final LocalTime horaInicioExpediente;
+        private final LocalTime horaFimExpediente;
+        private final int duracao;
+        private final int[][] turnos;
+        private final int[][] slots;
+        private final int maxSlotsPorDia;
+
+        private GradeHorarios(LocalTime horaInicioExpediente, LocalTime horaFimExpediente, int duracao, int[][] turnos) {
+            this.horaInicioExpediente = horaInicioExpediente;
+            this.horaFimExpediente = horaFimExpediente;
+            this.duracao = duracao;
+            this.turnos = turnos;
+            this.slots = new int[7][];
+            int maior = 0;
+            for (int dia = 0; dia < 7; dia++) {
+                int[] inicios = new int[MINUTOS_POR_DIA / duracao + 1];
+                int quantidade = 0;
+                for (int t = 0; t < turnos[dia].length; t += 2) {
+                    for (int minuto = turnos[dia][t]; minuto + duracao <= turnos[dia][t + 1]; minuto += duracao) {
+                        inicios[quantidade++] = minuto;
+                    }
+                }
+                slots[dia] = quantidade == 0 ? NENHUM : Arrays.copyOf(inicios, quantidade);
+                maior = Math.max(maior, quantidade);
+            }
+            this.maxSlotsPorDia = maior;
+        }
+
+        boolean compiladaPara(MedicoModel medico) {
+            return horaInicioExpediente.equals(medico.getHoraInicioExpediente())
+                    && horaFimExpediente.equals(medico.getHoraFimExpediente())
+                    && duracao == medico.getDuracaoPadraoConsulta();
+        }
+
+        /**
+         * Duração padrão, em minutos, dos horários da grade.
+         */
+        public int duracao() {
+            return duracao;
+        }
+
+        /**
+         * Indica se o médico tem expediente no dia da semana.
+         */
+        public boolean trabalha(DayOfWeek dia) {
+            return turnos[dia.ordinal()].length > 0;
+        }
+
+        /**
+         * Inícios dos horários do dia da semana, em minutos desde a meia-noite e em ordem crescente.
+         * O array é compartilhado e não deve ser alterado.
+         */
+        public int[] slots(DayOfWeek dia) {
+            return slots[dia.ordinal()];
+        }
+
+        /**
+         * Maior quantidade de horários em um mesmo dia da semana.
+         */
+        public int maxSlotsPorDia() {
+            return maxSlotsPorDia;
+        }
+
+        /**
+         * Primeiro horário da grade do dia, a partir de {@code minuto}, em que uma consulta de
+         * {@code duracao} minutos cabe inteira em um turno do dia da semana: {@code minuto} arredondado
+         * para cima até o próximo início da grade do turno (abertura mais um múltiplo da duração padrão),
+         * se couber, ou o início do turno seguinte.
+         *
+         * @return O minuto encontrado, ou {@code -1} se não houver nenhum nesse dia.
+         */
+        public int proximoInicio(DayOfWeek dia, int minuto, int duracao) {
+            int[] turnosDoDia = turnos[dia.ordinal()];
+            for (int t = 0; t < turnosDoDia.length; t += 2) {
+                int inicio = minuto <= turnosDoDia[t]
+                        ? turnosDoDia[t]
+                        : turnosDoDia[t] + (minuto - turnosDoDia[t] + this.duracao - 1) / this.duracao * this.duracao;
+                if (inicio + duracao <= turnosDoDia[t + 1]) {
+                    return inicio;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Verifica se o intervalo [inicio, fim) cabe inteiro em um único turno do expediente.
+         */
+        public boolean cobre(LocalDateTime inicio, LocalDateTime fim) {
+            if (!fim.toLocalDate().equals(inicio.toLocalDate())) {
+                return false;
+            }
+            int minutoInicio = minutoDoDia(inicio.toLocalTime(), false);
+            int minutoFim = minutoDoDia(fim.toLocalTime(), true);
+            int[] turnosDoDia = turnos[inicio.getDayOfWeek().ordinal()];
+            for (int t = 0; t < turnosDoDia.length; t += 2) {
+                if (minutoInicio >= turnosDoDia[t] && minutoFim <= turnosDoDia[t + 1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
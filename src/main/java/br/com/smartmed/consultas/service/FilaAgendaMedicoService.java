@@ -0,0 +1,183 @@
+package br.com.smartmed.consultas.service;
+
+import br.com.smartmed.consultas.exception.BusinessRuleException;
+import br.com.smartmed.consultas.exception.ObjectNotFoundException;
+import br.com.smartmed.consultas.repository.ConsultaRepository;
+import br.com.smartmed.consultas.rest.dto.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Executa os comandos de agenda de uma única consulta (cadastro, série, reagendamento e
+ * cancelamento) em uma fila por médico.
+ * <p>
+ * Cada médico tem uma fila com um único consumidor, executado em uma virtual thread apenas
+ * enquanto houver comandos pendentes: os comandos de um mesmo médico são aplicados um de cada vez,
+ * na ordem de chegada, sem disputar o mesmo horário entre si, enquanto médicos diferentes
+ * avançam em paralelo. A fila de cada médico aceita até {@code smartmed.agendamento.fila-capacidade}
+ * comandos pendentes; além disso, o comando é recusado de imediato. Com a fila desabilitada
+ * ({@code smartmed.agendamento.fila-por-medico=false}) os comandos são executados diretamente na
+ * thread do chamador.
+ * <p>
+ * Apenas esses comandos passam pela fila. O agendamento automático (individual, em lote e a
+ * confirmação de sugestões), o reagendamento do dia, o lote de comandos e a lista de espera escolhem
+ * o médico durante a execução ou gravam em várias agendas de uma vez e rodam na thread do chamador.
+ * Com os comandos da fila, eles disputam apenas o bloqueio da agenda do médico no banco
+ * ({@link MedicoService#bloquearAgendas}), que é o que impede horários sobrepostos; a fila só
+ * evita que os comandos de um mesmo médico esperem uns pelos outros nesse bloqueio.
+ */
+@Service
+public class FilaAgendaMedicoService {
+
+    @Autowired
+    private ConsultaService consultaService;
+    @Autowired
+    private ConsultaRepository consultaRepository;
+    @Autowired
+    private ExecutorService virtualThreadExecutor;
+
+    @Value("${smartmed.agendamento.fila-por-medico:false}")
+    private boolean habilitada;
+
+    @Value("${smartmed.agendamento.fila-capacidade:1000}")
+    private int capacidade;
+
+    private final Map<Integer, FilaMedico> filas = new ConcurrentHashMap<>();
+
+    /**
+     * Cadastra uma consulta pela fila do médico informado.
+     *
+     * @param request DTO com os dados da consulta.
+     * @return Resultado do cadastro, concluído quando o comando for executado.
+     */
+    public CompletableFuture<CadastrarConsultaResponseDTO> cadastrarConsulta(CadastrarConsultaRequestDTO request) {
+        return executar(request.getMedicoId(), () -> consultaService.cadastrarConsulta(request));
+    }
+
+    /**
+     * Cadastra uma série de consultas recorrentes pela fila do médico informado.
+     *
+     * @param request DTO com a primeira consulta, a regra de recorrência e os envolvidos.
+     * @return Resultado de cada data da série, concluído quando o comando for executado.
+     */
+    public CompletableFuture<SerieConsultasResponseDTO> cadastrarSerie(SerieConsultasRequestDTO request) {
+        return executar(request.getMedicoId(), () -> consultaService.cadastrarSerie(request));
+    }
+
+    /**
+     * Reagenda uma consulta pela fila do médico da consulta.
+     *
+     * @param request DTO com a consulta e o novo horário.
+     * @return Resultado do reagendamento, concluído quando o comando for executado.
+     */
+    public CompletableFuture<ReagendarConsultaResponseDTO> reagendarConsulta(ReagendarConsultaRequestDTO request) {
+        return executarParaConsulta(request.getConsultaId(), () -> consultaService.reagendarConsulta(request));
+    }
+
+    /**
+     * Cancela uma consulta pela fila do médico da consulta.
+     *
+     * @param cancelamentoDTO DTO com o ID da consulta e o motivo do cancelamento.
+     * @return Consulta cancelada, concluída quando o comando for executado.
+     */
+    public CompletableFuture<ConsultaDTO> cancelarConsulta(CancelamentoConsultaDTO cancelamentoDTO) {
+        return executarParaConsulta(cancelamentoDTO.getConsultaId(), () -> consultaService.cancelarConsulta(cancelamentoDTO));
+    }
+
+    /**
+     * Executa o comando na fila do médico da consulta. O médico é descoberto em uma virtual thread,
+     * sem ocupar a thread da requisição com a leitura no banco.
+     */
+    private <T> CompletableFuture<T> executarParaConsulta(Integer consultaId, Supplier<T> comando) {
+        if (!habilitada) {
+            return executarDiretamente(comando);
+        }
+        return CompletableFuture.supplyAsync(() -> consultaRepository.findMedicoIdById(consultaId), virtualThreadExecutor)
+                .thenCompose(medicoId -> medicoId
+                        .map(id -> executar(id, comando))
+                        .orElseGet(() -> CompletableFuture.failedFuture(
+                                new ObjectNotFoundException("Consulta com ID " + consultaId + " não encontrada."))));
+    }
+
+    private <T> CompletableFuture<T> executar(Integer medicoId, Supplier<T> comando) {
+        if (!habilitada) {
+            return executarDiretamente(comando);
+        }
+        CompletableFuture<T> resultado = new CompletableFuture<>();
+        boolean aceito = filas.computeIfAbsent(medicoId, id -> new FilaMedico()).enviar(() -> {
+            try {
+                resultado.complete(comando.get());
+            } catch (Throwable e) {
+                resultado.completeExceptionally(e);
+            }
+        });
+        if (!aceito) {
+            resultado.completeExceptionally(new BusinessRuleException(
+                    "A agenda do médico está com muitos comandos pendentes. Tente novamente em instantes."));
+        }
+        return resultado;
+    }
+
+    private static <T> CompletableFuture<T> executarDiretamente(Supplier<T> comando) {
+        try {
+            return CompletableFuture.completedFuture(comando.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Fila de comandos de um médico. No máximo um consumidor fica ativo por vez; ele é iniciado
+     * pelo primeiro comando que encontra a fila ociosa e termina quando a fila se esvazia.
+     */
+    private final class FilaMedico {
+
+        private final Queue<Runnable> comandos = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendentes = new AtomicInteger();
+        private final AtomicBoolean emExecucao = new AtomicBoolean();
+
+        /**
+         * Enfileira o comando, a menos que a fila já esteja cheia.
+         *
+         * @return {@code false} se o comando foi recusado.
+         */
+        boolean enviar(Runnable comando) {
+            if (pendentes.incrementAndGet() > capacidade) {
+                pendentes.decrementAndGet();
+                return false;
+            }
+            comandos.add(comando);
+            if (emExecucao.compareAndSet(false, true)) {
+                virtualThreadExecutor.execute(this::consumir);
+            }
+            return true;
+        }
+
+        private void consumir() {
+            do {
+                try {
+                    Runnable comando;
+                    while ((comando = comandos.poll()) != null) {
+                        pendentes.decrementAndGet();
+                        comando.run();
+                    }
+                } finally {
+                    // Liberada mesmo se algo escapar de um comando, para que a fila não pare
+                    emExecucao.set(false);
+                }
+                // Um comando pode ter chegado depois do último poll e antes de liberar a fila.
+            } while (!comandos.isEmpty() && emExecucao.compareAndSet(false, true));
+        }
+    }
+}
@@ -49,6 +49,14 @@ public class FormaPagamentoService {
                 .orElseThrow(() -> new ObjectNotFoundException("Forma de Pagamento com ID " + id + " não encontrada."));
     }
 
+    /**
+     * Obtém uma referência à forma de pagamento, sem consultar o banco, para associá-la a outra
+     * entidade quando a sua existência já foi validada.
+     */
+    public FormaPagamentoModel obterReferenciaFormaPagamento(Integer id) {
+        return formaPagamentoRepository.getReferenceById(id);
+    }
+
     /**
      * Busca formas de pagamento pela descrição (parcial, ignorando case).
      */
@@ -0,0 +1,646 @@
+package br.com.smartmed.consultas.service;
+
+import br.com.smartmed.consultas.model.ConsultaModel;
+import br.com.smartmed.consultas.model.ConsultaStatus;
+import br.com.smartmed.consultas.model.MedicoModel;
+import br.com.smartmed.consultas.repository.ConsultaRepository;
+import br.com.smartmed.consultas.rest.dto.OcupacaoAgendaDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Índice em memória dos horários ocupados de cada médico.
+ * <p>
+ * A agenda de um médico é carregada do banco na primeira vez em que é consultada e,
+ * a partir daí, mantida atualizada pelo {@link ConsultaService} sempre que uma consulta
+ * é criada, cancelada ou reagendada. As alterações só são aplicadas ao índice após o
+ * commit da transação, de forma que um rollback nunca deixa o índice inconsistente.
+ * <p>
+ * O índice vale apenas para esta instância e evita a maior parte das leituras no banco, mas
+ * não é ele que garante a ausência de sobreposições: cada gravação bloqueia a agenda do médico
+ * no banco ({@link MedicoService#bloquearAgendas}) e confirma ali o horário antes de gravar.
+ * <p>
+ * Para os médicos das especialidades configuradas em {@code smartmed.agendamento.catalogo-especialidades},
+ * a agenda indexada mantém também um catálogo dos horários livres das próximas semanas, atualizado
+ * a cada ocupação incluída ou removida, de forma que a busca do agendamento automático se reduz a
+ * localizar o próximo horário livre do catálogo.
+ * <p>
+ * Além das consultas, a agenda guarda as pré-reservas do {@link PreReservaService}, que ocupam o
+ * horário enquanto a recepção confirma com o paciente.
+ */
+@Service
+public class IndiceAgendaService {
+
+    /**
+     * Status de consulta que efetivamente ocupam um horário na agenda do médico.
+     */
+    public static final Set<ConsultaStatus> STATUS_OCUPAM_AGENDA =
+            Collections.unmodifiableSet(EnumSet.of(ConsultaStatus.AGENDADA, ConsultaStatus.REALIZADA));
+
+    @Autowired
+    private ConsultaRepository consultaRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private CalendarioAgendaService calendarioAgendaService;
+
+    @Autowired
+    private ExpedienteService expedienteService;
+
+    @Value("${smartmed.agendamento.catalogo-especialidades:}")
+    private Set<Integer> especialidadesComCatalogo;
+
+    @Value("${smartmed.agendamento.catalogo-semanas:4}")
+    private int semanasCatalogo;
+
+    private final Map<Integer, AgendaIndexada> agendas = new ConcurrentHashMap<>();
+
+    /**
+     * Gera IDs negativos para as reservas provisórias e pré-reservas, que nunca colidem com IDs de consultas.
+     */
+    private final AtomicInteger proximaReserva = new AtomicInteger();
+
+    /**
+     * Pré-reservas ativas de cada médico, por ID da ocupação; reaplicadas à agenda sempre que ela é
+     * recarregada do banco.
+     */
+    private final Map<Integer, Map<Integer, Ocupacao>> preReservas = new ConcurrentHashMap<>();
+
+    /**
+     * Contadores de alterações aplicadas à agenda de cada médico (e a todas elas) após o commit; uma
+     * carga durante a qual o contador do médico mudou pode ter perdido a alteração e é descartada.
+     */
+    private final Map<Integer, AtomicLong> alteracoes = new ConcurrentHashMap<>();
+    private final AtomicLong alteracoesGerais = new AtomicLong();
+
+    /**
+     * Chave do recurso de transação com os IDs das consultas liberadas na transação corrente.
+     */
+    private final Object chaveLiberadas = new Object();
+
+    /**
+     * Verifica se o intervalo [inicio, fim) se sobrepõe a alguma consulta do médico. As consultas
+     * canceladas ou reagendadas na transação corrente já não contam para ela.
+     *
+     * @param medicoId          ID do médico.
+     * @param inicio            Início do intervalo.
+     * @param fim               Fim do intervalo.
+     * @param consultaIgnoradaId ID de uma consulta a desconsiderar (ex.: a própria consulta
+     *                          em um reagendamento), ou {@code null}.
+     * @return {@code true} se houver conflito.
+     */
+    public boolean temConflito(Integer medicoId, LocalDateTime inicio, LocalDateTime fim, Integer consultaIgnoradaId) {
+        return agenda(medicoId).temConflito(inicio, fim, consultaIgnoradaId, liberadasNaTransacao());
+    }
+
+    /**
+     * Como {@link #temConflito}, mas informa onde o conflito termina: o maior fim entre as
+     * ocupações do médico que se sobrepõem ao intervalo [inicio, fim).
+     *
+     * @return O fim da última ocupação conflitante, ou vazio se não houver conflito.
+     */
+    public Optional<LocalDateTime> fimDoConflito(Integer medicoId, LocalDateTime inicio, LocalDateTime fim,
+                                                 Integer consultaIgnoradaId) {
+        return agenda(medicoId).fimDoConflito(inicio, fim, consultaIgnoradaId, liberadasNaTransacao());
+    }
+
+    /**
+     * Verifica se o intervalo está livre e, em caso positivo, o reserva provisoriamente no mesmo
+     * passo, até o fim da transação corrente. Duas transações que disputam o mesmo horário do
+     * mesmo médico não conseguem ambas a reserva; médicos diferentes não competem entre si. As
+     * consultas canceladas ou reagendadas na transação corrente já não contam para ela, de modo que
+     * um lote de comandos pode reaproveitar um horário que ele mesmo liberou.
+     * <p>
+     * Após o commit a reserva é substituída pela consulta registrada em {@link #registrar};
+     * após um rollback ela é simplesmente descartada.
+     *
+     * @param medicoId           ID do médico.
+     * @param inicio             Início do intervalo.
+     * @param fim                Fim do intervalo.
+     * @param consultaIgnoradaId ID de uma consulta a desconsiderar, ou {@code null}.
+     * @return {@code true} se o intervalo foi reservado; {@code false} se houver conflito.
+     */
+    public boolean reservar(Integer medicoId, LocalDateTime inicio, LocalDateTime fim, Integer consultaIgnoradaId) {
+        Ocupacao reserva = new Ocupacao(proximaReserva.decrementAndGet(), inicio, fim);
+        AgendaIndexada agenda = agenda(medicoId);
+        if (!agenda.reservar(reserva, consultaIgnoradaId, liberadasNaTransacao())) {
+            return false;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    agenda.remover(reserva.consultaId());
+                }
+            });
+        } else {
+            agenda.remover(reserva.consultaId());
+        }
+        return true;
+    }
+
+    /**
+     * Verifica se o intervalo está livre e, em caso positivo, o ocupa com uma pré-reserva, que não
+     * depende de transação e permanece na agenda até ser liberada por {@link #liberarPreReserva}.
+     * Como qualquer ocupação, a pré-reserva é respeitada por todos os fluxos que consultam o índice.
+     *
+     * @param medicoId ID do médico.
+     * @param inicio   Início do intervalo.
+     * @param fim      Fim do intervalo.
+     * @return A ocupação da pré-reserva, ou vazio se houver conflito.
+     */
+    public Optional<Ocupacao> preReservar(Integer medicoId, LocalDateTime inicio, LocalDateTime fim) {
+        Ocupacao preReserva = new Ocupacao(proximaReserva.decrementAndGet(), inicio, fim);
+        AgendaIndexada agenda = agenda(medicoId);
+        if (!agenda.reservar(preReserva, null, Set.of())) {
+            return Optional.empty();
+        }
+        preReservas.computeIfAbsent(medicoId, id -> new ConcurrentHashMap<>()).put(preReserva.consultaId(), preReserva);
+        if (agendas.get(medicoId) != agenda) {
+            // A agenda foi recarregada entre a reserva e o registro da pré-reserva
+            agendas.computeIfPresent(medicoId, (id, recarregada) -> recarregada.adicionar(preReserva));
+        }
+        return Optional.of(preReserva);
+    }
+
+    /**
+     * Remove imediatamente uma pré-reserva da agenda do médico.
+     *
+     * @param medicoId     ID do médico.
+     * @param preReservaId ID da ocupação da pré-reserva.
+     */
+    public void liberarPreReserva(Integer medicoId, Integer preReservaId) {
+        Map<Integer, Ocupacao> doMedico = preReservas.get(medicoId);
+        if (doMedico != null) {
+            doMedico.remove(preReservaId);
+        }
+        alterada(medicoId);
+        agendas.computeIfPresent(medicoId, (id, agenda) -> agenda.remover(preReservaId));
+    }
+
+    /**
+     * Retorna as ocupações do médico que se sobrepõem ao intervalo informado, em ordem de início.
+     *
+     * @param medicoId ID do médico.
+     * @param inicio   Início do intervalo.
+     * @param fim      Fim do intervalo.
+     * @return Lista de ocupações.
+     */
+    public List<Ocupacao> listarOcupacoes(Integer medicoId, LocalDateTime inicio, LocalDateTime fim) {
+        return agenda(medicoId).ocupacoes(inicio, fim);
+    }
+
+    /**
+     * Total de minutos ocupados na agenda do médico na semana (de segunda a domingo) que contém a data,
+     * mantido incrementalmente a cada ocupação incluída ou removida. Conta as consultas e também as
+     * reservas em andamento e as pré-reservas, que logo devem se tornar consultas; cada ocupação é
+     * contada na semana em que começa.
+     *
+     * @param medicoId ID do médico.
+     * @param data     Data de referência.
+     * @return Minutos ocupados na semana.
+     */
+    public long minutosOcupadosNaSemana(Integer medicoId, LocalDate data) {
+        return agenda(medicoId).minutosNaSemana(AgendaIndexada.semana(data));
+    }
+
+    /**
+     * Garante que a agenda do médico esteja carregada. Deve ser chamado antes de distribuir buscas
+     * por outras threads, que de outro modo disputariam a carga da mesma agenda.
+     *
+     * @param medicoId ID do médico.
+     */
+    public void preparar(Integer medicoId) {
+        agenda(medicoId);
+    }
+
+    /**
+     * Busca no catálogo de horários livres o primeiro horário do médico a partir de {@code inicio}
+     * e antes de {@code limite}. O catálogo segue a {@link ExpedienteService.GradeHorarios grade} do
+     * expediente do médico, nos dias sem bloqueio no {@link CalendarioAgendaService}, e só atende
+     * consultas com a duração padrão. Ele é montado na primeira busca do dia e refeito se a grade do
+     * médico ou os bloqueios de agenda mudarem.
+     *
+     * @param medico Médico cuja agenda será pesquisada.
+     * @param inicio Data/hora a partir da qual buscar; deve cair em um horário da grade.
+     * @param limite Data/hora limite da busca.
+     * @return O resultado da busca, ou vazio se o médico não tiver catálogo ou {@code inicio} não
+     * estiver coberto por ele.
+     */
+    public Optional<BuscaCatalogo> buscarNoCatalogo(MedicoModel medico, LocalDateTime inicio, LocalDateTime limite) {
+        if (semanasCatalogo <= 0 || !especialidadesComCatalogo.contains(medico.getEspecialidade().getId())) {
+            return Optional.empty();
+        }
+        return agenda(medico.getId()).buscarNoCatalogo(medico.getId(), expedienteService.grade(medico),
+                calendarioAgendaService, LocalDate.now(), semanasCatalogo * 7, inicio, limite);
+    }
+
+    /**
+     * Registra (ou atualiza) a consulta no índice após o commit da transação corrente.
+     * Consultas cujo status não ocupa a agenda são removidas do índice.
+     *
+     * @param consulta Consulta persistida.
+     */
+    public void registrar(ConsultaModel consulta) {
+        Integer medicoId = consulta.getMedico().getId();
+        Integer consultaId = consulta.getId();
+        if (!STATUS_OCUPAM_AGENDA.contains(consulta.getStatus())) {
+            liberarNaTransacao(consultaId);
+            aposCommit(() -> {
+                alterada(medicoId);
+                agendas.computeIfPresent(medicoId, (id, agenda) -> agenda.remover(consultaId));
+            });
+            return;
+        }
+        Ocupacao ocupacao = new Ocupacao(consultaId, consulta.getDataHoraConsulta(), consulta.getDataHoraFim());
+        aposCommit(() -> {
+            alterada(medicoId);
+            agendas.computeIfPresent(medicoId, (id, agenda) -> agenda.adicionar(ocupacao));
+        });
+    }
+
+    /**
+     * Descarta a agenda indexada de um médico após o commit; ela será recarregada do banco
+     * na próxima consulta.
+     *
+     * @param medicoId ID do médico.
+     */
+    public void invalidar(Integer medicoId) {
+        aposCommit(() -> {
+            alterada(medicoId);
+            agendas.remove(medicoId);
+        });
+    }
+
+    /**
+     * Descarta todas as agendas indexadas após o commit.
+     */
+    public void invalidarTodos() {
+        aposCommit(() -> {
+            alteracoesGerais.incrementAndGet();
+            agendas.clear();
+        });
+    }
+
+    /**
+     * Agenda indexada do médico, carregada do banco se ainda não estiver em memória. A carga roda fora
+     * do mapa de agendas, sem segurar o bloqueio dele durante a leitura; se duas threads carregarem a
+     * mesma agenda, fica a primeira. Se uma alteração for aplicada às agendas do médico durante a carga,
+     * ela pode não ter entrado no que foi lido, e a agenda carregada é descartada e lida de novo.
+     */
+    private AgendaIndexada agenda(Integer medicoId) {
+        AgendaIndexada agenda = agendas.get(medicoId);
+        while (agenda == null) {
+            long versao = versao(medicoId);
+            AgendaIndexada carregada = carregar(medicoId);
+            agenda = agendas.putIfAbsent(medicoId, carregada);
+            if (agenda == null) {
+                if (versao(medicoId) == versao) {
+                    return carregada;
+                }
+                agendas.remove(medicoId, carregada);
+            }
+        }
+        return agenda;
+    }
+
+    private long versao(Integer medicoId) {
+        return alteracoesGerais.get() + alteracoes.computeIfAbsent(medicoId, id -> new AtomicLong()).get();
+    }
+
+    private void alterada(Integer medicoId) {
+        alteracoes.computeIfAbsent(medicoId, id -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Carrega a agenda do banco em uma transação somente leitura própria, mesmo quando chamada de
+     * dentro de uma transação de escrita: a agenda indexada só pode refletir o que já foi confirmado,
+     * e não as gravações ainda pendentes (e talvez desfeitas depois) da transação do chamador.
+     */
+    private AgendaIndexada carregar(Integer medicoId) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        template.setReadOnly(true);
+        List<OcupacaoAgendaDTO> ocupacoes = template.execute(status ->
+                consultaRepository.findOcupacoesByMedico(medicoId, STATUS_OCUPAM_AGENDA));
+
+        AgendaIndexada agenda = new AgendaIndexada();
+        for (OcupacaoAgendaDTO dto : ocupacoes) {
+            agenda.adicionar(new Ocupacao(dto.getConsultaId(), dto.getInicio(), dto.getFim()));
+        }
+        preReservas.getOrDefault(medicoId, Map.of()).values().forEach(agenda::adicionar);
+        return agenda;
+    }
+
+    /**
+     * Consultas liberadas na transação corrente, que o índice só remove após o commit.
+     */
+    @SuppressWarnings("unchecked")
+    private Set<Integer> liberadasNaTransacao() {
+        Object liberadas = TransactionSynchronizationManager.getResource(chaveLiberadas);
+        return liberadas != null ? (Set<Integer>) liberadas : Set.of();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void liberarNaTransacao(Integer consultaId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        Set<Integer> liberadas = (Set<Integer>) TransactionSynchronizationManager.getResource(chaveLiberadas);
+        if (liberadas == null) {
+            liberadas = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(chaveLiberadas, liberadas);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(chaveLiberadas);
+                }
+            });
+        }
+        liberadas.add(consultaId);
+    }
+
+    private void aposCommit(Runnable acao) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            acao.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                acao.run();
+            }
+        });
+    }
+
+    /**
+     * Intervalo [inicio, fim) ocupado por uma consulta.
+     */
+    public record Ocupacao(Integer consultaId, LocalDateTime inicio, LocalDateTime fim) {
+    }
+
+    /**
+     * Resultado de uma busca no catálogo de horários livres.
+     *
+     * @param horarioLivre  Primeiro horário livre encontrado, ou {@code null} se não houver nenhum
+     *                      dentro do catálogo e antes do limite.
+     * @param fimCobertura  Data/hora até a qual o catálogo cobre a agenda; a busca por horários
+     *                      posteriores deve continuar a partir daí.
+     */
+    public record BuscaCatalogo(LocalDateTime horarioLivre, LocalDateTime fimCobertura) {
+    }
+
+    /**
+     * Agenda de um único médico, ordenada pelo início das consultas.
+     */
+    private static final class AgendaIndexada {
+
+        private static final Comparator<Ocupacao> ORDEM = Comparator
+                .comparing(Ocupacao::inicio)
+                .thenComparing(Ocupacao::consultaId);
+
+        private final NavigableSet<Ocupacao> porInicio = new TreeSet<>(ORDEM);
+        private final Map<Integer, Ocupacao> porConsulta = new HashMap<>();
+
+        /**
+         * Maior duração já indexada; limita quanto antes do intervalo é preciso olhar.
+         */
+        private long maiorDuracaoMinutos;
+
+        /**
+         * Catálogo de horários livres, mantido junto com as ocupações; {@code null} se não usado.
+         */
+        private CatalogoLivres catalogo;
+
+        /**
+         * Minutos ocupados por semana, indexados por {@link #semana}.
+         */
+        private final Map<Long, Long> minutosPorSemana = new HashMap<>();
+
+        /**
+         * Número da semana, de segunda a domingo, contado a partir da época (1970-01-01 foi uma quinta-feira).
+         */
+        static long semana(LocalDate data) {
+            return Math.floorDiv(data.toEpochDay() + 3, 7);
+        }
+
+        synchronized AgendaIndexada adicionar(Ocupacao ocupacao) {
+            remover(ocupacao.consultaId());
+            porInicio.add(ocupacao);
+            porConsulta.put(ocupacao.consultaId(), ocupacao);
+            long duracao = Duration.between(ocupacao.inicio(), ocupacao.fim()).toMinutes();
+            maiorDuracaoMinutos = Math.max(maiorDuracaoMinutos, duracao);
+            minutosPorSemana.merge(semana(ocupacao.inicio().toLocalDate()), duracao, Long::sum);
+            if (catalogo != null) {
+                catalogo.ocupar(ocupacao);
+            }
+            return this;
+        }
+
+        synchronized AgendaIndexada remover(Integer consultaId) {
+            Ocupacao anterior = porConsulta.remove(consultaId);
+            if (anterior != null) {
+                porInicio.remove(anterior);
+                minutosPorSemana.merge(semana(anterior.inicio().toLocalDate()),
+                        -Duration.between(anterior.inicio(), anterior.fim()).toMinutes(), Long::sum);
+                if (catalogo != null) {
+                    catalogo.liberar(anterior, this);
+                }
+            }
+            return this;
+        }
+
+        synchronized Optional<BuscaCatalogo> buscarNoCatalogo(Integer medicoId, ExpedienteService.GradeHorarios grade,
+                                                              CalendarioAgendaService calendario,
+                                                              LocalDate hoje, int dias,
+                                                              LocalDateTime inicio, LocalDateTime limite) {
+            if (catalogo == null || !catalogo.atende(grade, calendario.versao(), hoje, dias)) {
+                catalogo = new CatalogoLivres(medicoId, grade, calendario, hoje, dias, this);
+            }
+            return catalogo.buscar(inicio, limite);
+        }
+
+        synchronized long minutosNaSemana(long semana) {
+            return minutosPorSemana.getOrDefault(semana, 0L);
+        }
+
+        synchronized boolean reservar(Ocupacao reserva, Integer consultaIgnoradaId, Set<Integer> liberadas) {
+            if (temConflito(reserva.inicio(), reserva.fim(), consultaIgnoradaId, liberadas)) {
+                return false;
+            }
+            adicionar(reserva);
+            return true;
+        }
+
+        synchronized boolean temConflito(LocalDateTime inicio, LocalDateTime fim, Integer consultaIgnoradaId,
+                                         Set<Integer> liberadas) {
+            for (Ocupacao ocupacao : candidatas(inicio, fim)) {
+                if (!ocupacao.consultaId().equals(consultaIgnoradaId) && !liberadas.contains(ocupacao.consultaId())
+                        && ocupacao.fim().isAfter(inicio)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized Optional<LocalDateTime> fimDoConflito(LocalDateTime inicio, LocalDateTime fim,
+                                                           Integer consultaIgnoradaId, Set<Integer> liberadas) {
+            LocalDateTime maiorFim = null;
+            for (Ocupacao ocupacao : candidatas(inicio, fim)) {
+                if (!ocupacao.consultaId().equals(consultaIgnoradaId) && !liberadas.contains(ocupacao.consultaId())
+                        && ocupacao.fim().isAfter(inicio)
+                        && (maiorFim == null || ocupacao.fim().isAfter(maiorFim))) {
+                    maiorFim = ocupacao.fim();
+                }
+            }
+            return Optional.ofNullable(maiorFim);
+        }
+
+        synchronized List<Ocupacao> ocupacoes(LocalDateTime inicio, LocalDateTime fim) {
+            List<Ocupacao> resultado = new ArrayList<>();
+            for (Ocupacao ocupacao : candidatas(inicio, fim)) {
+                if (ocupacao.fim().isAfter(inicio)) {
+                    resultado.add(ocupacao);
+                }
+            }
+            return resultado;
+        }
+
+        /**
+         * Ocupações que começam antes de {@code fim} e depois de {@code inicio} menos a maior duração.
+         */
+        private NavigableSet<Ocupacao> candidatas(LocalDateTime inicio, LocalDateTime fim) {
+            Ocupacao de = new Ocupacao(Integer.MIN_VALUE, inicio.minusMinutes(maiorDuracaoMinutos), null);
+            Ocupacao ate = new Ocupacao(Integer.MIN_VALUE, fim, null);
+            return porInicio.subSet(de, true, ate, false);
+        }
+    }
+
+    /**
+     * Horários livres de um médico em uma janela de dias, na grade do seu expediente. O horário
+     * {@code slot} do dia {@code dia} (contado a partir de {@link #primeiroDia}), isto é, o início de
+     * índice {@code slot} em {@link ExpedienteService.GradeHorarios#slots} para o dia da semana, corresponde
+     * ao bit {@code dia * slotsPorDia + slot}, ligado enquanto nenhuma ocupação da agenda se sobrepõe a ele.
+     * Dias sem expediente não têm horários e dias bloqueados nunca ficam livres. É sempre acessado sob
+     * o bloqueio da agenda a que pertence.
+     */
+    private static final class CatalogoLivres {
+
+        private final Integer medicoId;
+        private final ExpedienteService.GradeHorarios grade;
+        private final CalendarioAgendaService calendario;
+        private final long versaoCalendario;
+        private final LocalDate primeiroDia;
+        private final int dias;
+        private final int duracao;
+        private final int slotsPorDia;
+        private final BitSet livres;
+
+        CatalogoLivres(Integer medicoId, ExpedienteService.GradeHorarios grade, CalendarioAgendaService calendario,
+                       LocalDate primeiroDia, int dias, AgendaIndexada agenda) {
+            this.medicoId = medicoId;
+            this.grade = grade;
+            this.calendario = calendario;
+            this.versaoCalendario = calendario.versao();
+            this.primeiroDia = primeiroDia;
+            this.dias = dias;
+            this.duracao = grade.duracao();
+            this.slotsPorDia = grade.maxSlotsPorDia();
+            this.livres = new BitSet(dias * slotsPorDia);
+            for (int dia = 0; dia < dias; dia++) {
+                for (int slot = 0; slot < slotsDoDia(dia).length; slot++) {
+                    atualizar(dia, slot, agenda);
+                }
+            }
+        }
+
+        boolean atende(ExpedienteService.GradeHorarios grade, long versaoCalendario, LocalDate hoje, int dias) {
+            return this.grade == grade
+                    && this.versaoCalendario == versaoCalendario
+                    && primeiroDia.equals(hoje)
+                    && this.dias == dias;
+        }
+
+        Optional<BuscaCatalogo> buscar(LocalDateTime inicio, LocalDateTime limite) {
+            int dia = (int) (inicio.toLocalDate().toEpochDay() - primeiroDia.toEpochDay());
+            if (dia < 0 || dia >= dias || inicio.getSecond() != 0 || inicio.getNano() != 0) {
+                return Optional.empty();
+            }
+            int slot = Arrays.binarySearch(slotsDoDia(dia), inicio.getHour() * 60 + inicio.getMinute());
+            if (slot < 0) {
+                return Optional.empty();
+            }
+
+            LocalDateTime fimCobertura = primeiroDia.plusDays(dias).atStartOfDay();
+            int livre = livres.nextSetBit(dia * slotsPorDia + slot);
+            if (livre < 0) {
+                return Optional.of(new BuscaCatalogo(null, fimCobertura));
+            }
+            LocalDateTime horario = inicioDoSlot(livre / slotsPorDia, livre % slotsPorDia);
+            return Optional.of(new BuscaCatalogo(horario.isBefore(limite) ? horario : null, fimCobertura));
+        }
+
+        void ocupar(Ocupacao ocupacao) {
+            paraCadaSlot(ocupacao, (dia, slot) -> livres.clear(dia * slotsPorDia + slot));
+        }
+
+        /**
+         * Volta a marcar como livres os horários da ocupação removida que não estejam cobertos por outra.
+         */
+        void liberar(Ocupacao ocupacao, AgendaIndexada agenda) {
+            paraCadaSlot(ocupacao, (dia, slot) -> atualizar(dia, slot, agenda));
+        }
+
+        private void atualizar(int dia, int slot, AgendaIndexada agenda) {
+            LocalDateTime inicio = inicioDoSlot(dia, slot);
+            boolean livre = !calendario.bloqueado(medicoId, inicio.toLocalDate())
+                    && !agenda.temConflito(inicio, inicio.plusMinutes(duracao), null, Set.of());
+            livres.set(dia * slotsPorDia + slot, livre);
+        }
+
+        /**
+         * Visita os horários do catálogo que se sobrepõem à ocupação.
+         */
+        private void paraCadaSlot(Ocupacao ocupacao, SlotVisitor visitante) {
+            int primeiro = (int) Math.max(0, ocupacao.inicio().toLocalDate().toEpochDay() - primeiroDia.toEpochDay());
+            int ultimo = (int) Math.min(dias - 1, ocupacao.fim().toLocalDate().toEpochDay() - primeiroDia.toEpochDay());
+            for (int dia = primeiro; dia <= ultimo; dia++) {
+                for (int slot = 0; slot < slotsDoDia(dia).length; slot++) {
+                    LocalDateTime inicio = inicioDoSlot(dia, slot);
+                    if (inicio.isBefore(ocupacao.fim()) && inicio.plusMinutes(duracao).isAfter(ocupacao.inicio())) {
+                        visitante.visitar(dia, slot);
+                    }
+                }
+            }
+        }
+
+        private int[] slotsDoDia(int dia) {
+            return grade.slots(primeiroDia.plusDays(dia).getDayOfWeek());
+        }
+
+        private LocalDateTime inicioDoSlot(int dia, int slot) {
+            return primeiroDia.plusDays(dia).atStartOfDay().plusMinutes(slotsDoDia(dia)[slot]);
+        }
+
+        @FunctionalInterface
+        private interface SlotVisitor {
+            void visitar(int dia, int slot);
+        }
+    }
+}
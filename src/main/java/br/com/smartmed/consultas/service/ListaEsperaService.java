@@ -0,0 +1,267 @@
+package br.com.smartmed.consultas.service;
+
+import br.com.smartmed.consultas.exception.BusinessRuleException;
+import br.com.smartmed.consultas.exception.ObjectNotFoundException;
+import br.com.smartmed.consultas.model.*;
+import br.com.smartmed.consultas.repository.ConsultaRepository;
+import br.com.smartmed.consultas.repository.ListaEsperaRepository;
+import br.com.smartmed.consultas.rest.dto.ListaEsperaDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Lista de espera por especialidade ou médico. Quando uma consulta é cancelada, o horário liberado
+ * é oferecido aos pedidos compatíveis e o mais prioritário é agendado nele.
+ * <p>
+ * O preenchimento do horário é disparado após o commit do cancelamento e executado em uma virtual
+ * thread, fora da thread da requisição, de modo que o cancelamento não espera pela busca. Os pedidos
+ * compatíveis são selecionados por uma única consulta, na ordem de prioridade, e tentados um de cada
+ * vez, cada um em uma transação curta que reserva o horário no {@link IndiceAgendaService}, como no
+ * agendamento automático. Se o horário já tiver sido ocupado por outro agendamento, o preenchimento
+ * termina; se o pedido tiver sido atendido ou retirado por outra transação, passa ao próximo.
+ */
+@Service
+public class ListaEsperaService {
+
+    private static final Logger log = LoggerFactory.getLogger(ListaEsperaService.class);
+
+    /**
+     * Quantidade máxima de pedidos tentados para um mesmo horário liberado.
+     */
+    private static final int MAX_CANDIDATOS = 10;
+
+    @Autowired
+    private ListaEsperaRepository listaEsperaRepository;
+    @Autowired
+    private ConsultaRepository consultaRepository;
+    @Autowired
+    private PacienteService pacienteService;
+    @Autowired
+    private EspecialidadeService especialidadeService;
+    @Autowired
+    private MedicoService medicoService;
+    @Autowired
+    private RecepcionistaService recepcionistaService;
+    @Autowired
+    private FormaPagamentoService formaPagamentoService;
+    @Autowired
+    private ConvenioService convenioService;
+    @Autowired
+    private IndiceAgendaService indiceAgendaService;
+    @Autowired
+    private CalendarioAgendaService calendarioAgendaService;
+    @Autowired
+    private ExecutorService virtualThreadExecutor;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * Lista os pedidos da lista de espera.
+     *
+     * @param especialidadeId Se informado, apenas os pedidos da especialidade.
+     * @param medicoId        Se informado, apenas os pedidos que escolheram o médico.
+     * @param status          Se informado, apenas os pedidos com o status.
+     * @return Lista de pedidos, dos mais antigos para os mais recentes.
+     */
+    @Transactional(readOnly = true)
+    public List<ListaEsperaDTO> listar(Integer especialidadeId, Integer medicoId, StatusListaEspera status) {
+        return listaEsperaRepository.findListaEspera(especialidadeId, medicoId, status);
+    }
+
+    /**
+     * Inclui um paciente na lista de espera.
+     *
+     * @param dto Dados do pedido e preferências de data e horário do paciente.
+     * @return Pedido incluído, aguardando um horário.
+     * @throws ObjectNotFoundException Se paciente, especialidade, médico, recepcionista, forma de
+     *                                 pagamento ou convênio não forem encontrados.
+     * @throws BusinessRuleException   Se o período ou a faixa de horário forem inválidos, o médico
+     *                                 não atender a especialidade ou algum envolvido estiver inativo.
+     */
+    @Transactional
+    public ListaEsperaDTO incluir(ListaEsperaDTO dto) {
+        if (dto.getDataFim().isBefore(dto.getDataInicio())) {
+            throw new BusinessRuleException("A data final não pode ser anterior à data inicial.");
+        }
+        if (dto.getDataFim().isBefore(LocalDate.now())) {
+            throw new BusinessRuleException("O período da lista de espera já terminou.");
+        }
+        if (dto.getHoraInicio() != null && dto.getHoraFim() != null && !dto.getHoraFim().isAfter(dto.getHoraInicio())) {
+            throw new BusinessRuleException("A hora final deve ser posterior à hora inicial.");
+        }
+
+        ListaEsperaModel pedido = new ListaEsperaModel();
+        pedido.setPaciente(pacienteService.obterPacienteModelPorId(dto.getPacienteId()));
+        pedido.setEspecialidade(especialidadeService.obterEspecialidadeModelPorId(dto.getEspecialidadeId()));
+        if (dto.getMedicoId() != null) {
+            MedicoModel medico = medicoService.buscarMedicoModelPorIdEAtivo(dto.getMedicoId());
+            if (!medico.getEspecialidade().getId().equals(dto.getEspecialidadeId())) {
+                throw new BusinessRuleException("O médico escolhido não atende a especialidade informada.");
+            }
+            pedido.setMedico(medico);
+        }
+        RecepcionistaModel recepcionista = recepcionistaService.obterRecepcionistaPorId(dto.getRecepcionistaId());
+        if (!recepcionista.isAtivo()) {
+            throw new BusinessRuleException("Recepcionista inativo. Não é possível agendar consultas.");
+        }
+        pedido.setRecepcionista(recepcionista);
+        pedido.setFormaPagamento(formaPagamentoService.obterFormaPagamentoModelPorId(dto.getFormaPagamentoId()));
+        if (dto.getConvenioId() != null) {
+            pedido.setConvenio(convenioService.obterConvenioModelPorId(dto.getConvenioId()));
+        }
+        pedido.setDataInicio(dto.getDataInicio());
+        pedido.setDataFim(dto.getDataFim());
+        pedido.setHoraInicio(dto.getHoraInicio());
+        pedido.setHoraFim(dto.getHoraFim());
+        pedido.setDataHoraInclusao(LocalDateTime.now());
+        pedido.setStatus(StatusListaEspera.AGUARDANDO);
+
+        ListaEsperaModel salvo = listaEsperaRepository.save(pedido);
+        return new ListaEsperaDTO(salvo.getId(), dto.getPacienteId(), dto.getEspecialidadeId(), dto.getMedicoId(),
+                dto.getRecepcionistaId(), dto.getFormaPagamentoId(), dto.getConvenioId(), salvo.getDataInicio(),
+                salvo.getDataFim(), salvo.getHoraInicio(), salvo.getHoraFim(), salvo.getDataHoraInclusao(),
+                salvo.getStatus(), null);
+    }
+
+    /**
+     * Retira um pedido da lista de espera.
+     *
+     * @param id ID do pedido.
+     * @throws ObjectNotFoundException Se o pedido não for encontrado.
+     * @throws BusinessRuleException   Se o pedido não estiver mais aguardando.
+     */
+    @Transactional
+    public void cancelar(Integer id) {
+        ListaEsperaModel pedido = listaEsperaRepository.findById(id)
+                .orElseThrow(() -> new ObjectNotFoundException("Pedido da lista de espera com ID " + id + " não encontrado."));
+        if (pedido.getStatus() != StatusListaEspera.AGUARDANDO) {
+            throw new BusinessRuleException("O pedido da lista de espera com ID " + id + " não está mais aguardando.");
+        }
+        pedido.setStatus(StatusListaEspera.CANCELADO);
+    }
+
+    /**
+     * Oferece à lista de espera o horário liberado por uma consulta cancelada. O preenchimento é
+     * disparado após o commit da transação corrente, em uma virtual thread; chamado fora de uma
+     * transação, é disparado imediatamente.
+     *
+     * @param consultaCancelada Consulta cujo horário foi liberado.
+     */
+    public void horarioLiberado(ConsultaModel consultaCancelada) {
+        MedicoModel medico = consultaCancelada.getMedico();
+        Integer medicoId = medico.getId();
+        Integer especialidadeId = medico.getEspecialidade().getId();
+        LocalDateTime inicio = consultaCancelada.getDataHoraConsulta();
+        LocalDateTime fim = consultaCancelada.getDataHoraFim();
+
+        Runnable preenchimento = () -> virtualThreadExecutor.execute(() ->
+                preencherHorario(medicoId, especialidadeId, inicio, fim));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    preenchimento.run();
+                }
+            });
+        } else {
+            preenchimento.run();
+        }
+    }
+
+    /**
+     * Agenda no horário liberado o pedido compatível mais prioritário que ainda puder ser atendido.
+     * Executado fora da thread da requisição; falhas são apenas registradas no log.
+     */
+    private void preencherHorario(Integer medicoId, Integer especialidadeId, LocalDateTime inicio, LocalDateTime fim) {
+        try {
+            if (inicio.isBefore(LocalDateTime.now()) || calendarioAgendaService.bloqueado(medicoId, inicio.toLocalDate())) {
+                return;
+            }
+            List<Integer> candidatos = listaEsperaRepository.findCandidatosParaHorario(medicoId, especialidadeId,
+                    inicio.toLocalDate(), inicio.toLocalTime(), fim.toLocalTime(), PageRequest.of(0, MAX_CANDIDATOS));
+            for (Integer pedidoId : candidatos) {
+                Preenchimento resultado;
+                try {
+                    resultado = transactionTemplate.execute(status -> agendarPedido(pedidoId, medicoId, inicio, fim));
+                } catch (OptimisticLockingFailureException e) {
+                    // Pedido atendido ou retirado por outra transação: tenta o próximo
+                    continue;
+                } catch (DataIntegrityViolationException e) {
+                    // Horário ocupado por uma gravação que o índice em memória ainda não conhecia
+                    indiceAgendaService.invalidar(medicoId);
+                    return;
+                }
+                if (resultado != Preenchimento.PEDIDO_INDISPONIVEL) {
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Falha ao preencher pela lista de espera o horário {} do médico {}", inicio, medicoId, e);
+        }
+    }
+
+    private Preenchimento agendarPedido(Integer pedidoId, Integer medicoId, LocalDateTime inicio, LocalDateTime fim) {
+        ListaEsperaModel pedido = listaEsperaRepository.findById(pedidoId).orElse(null);
+        if (pedido == null || pedido.getStatus() != StatusListaEspera.AGUARDANDO) {
+            return Preenchimento.PEDIDO_INDISPONIVEL;
+        }
+        medicoService.bloquearAgendas(Set.of(medicoId));
+        pacienteService.bloquearAgendas(Set.of(pedido.getPaciente().getId()));
+        // O paciente já tem outra consulta nesse horário: o horário fica para o próximo pedido
+        if (consultaRepository.existsByPacienteAndPeriod(pedido.getPaciente().getId(),
+                inicio.minus(ConsultaModel.DURACAO_MAXIMA), inicio, fim, null)) {
+            return Preenchimento.PEDIDO_INDISPONIVEL;
+        }
+        if (!indiceAgendaService.reservar(medicoId, inicio, fim, null)) {
+            return Preenchimento.HORARIO_OCUPADO;
+        }
+        if (consultaRepository.existsByMedicoAndPeriod(medicoId, inicio.minus(ConsultaModel.DURACAO_MAXIMA),
+                inicio, fim, null)) {
+            indiceAgendaService.invalidar(medicoId);
+            return Preenchimento.HORARIO_OCUPADO;
+        }
+
+        ConsultaModel consulta = new ConsultaModel();
+        consulta.setDataHoraConsulta(inicio);
+        consulta.setDataHoraFim(fim);
+        consulta.setStatus(ConsultaStatus.AGENDADA);
+        consulta.setObservacoes("Agendada pela lista de espera (pedido ID " + pedidoId + ").");
+        consulta.setPaciente(pedido.getPaciente());
+        consulta.setMedico(medicoService.obterMedicoModelPorId(medicoId));
+        consulta.setRecepcionista(pedido.getRecepcionista());
+        consulta.setFormaPagamento(pedido.getFormaPagamento());
+        consulta.setConvenio(pedido.getConvenio());
+        // O valor é calculado a partir do médico e do convênio antes da gravação
+
+        ConsultaModel consultaAgendada = consultaRepository.save(consulta);
+        indiceAgendaService.registrar(consultaAgendada);
+        pedido.setStatus(StatusListaEspera.ATENDIDO);
+        pedido.setConsulta(consultaAgendada);
+        listaEsperaRepository.saveAndFlush(pedido);
+        return Preenchimento.AGENDADO;
+    }
+
+    /**
+     * Resultado da tentativa de agendar um pedido no horário liberado.
+     */
+    private enum Preenchimento {
+        AGENDADO,
+        HORARIO_OCUPADO,
+        PEDIDO_INDISPONIVEL
+    }
+}
@@ -10,8 +10,10 @@ import jakarta.validation.Valid;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -106,6 +108,20 @@ public class MedicoService {
         return medicoRepository.findByEspecialidade(especialidade);
     }
 
+    /**
+     * Bloqueia as agendas dos médicos até o fim da transação corrente, que precisa existir. Duas
+     * transações que gravam na agenda de um mesmo médico, na mesma instância ou em instâncias
+     * diferentes, passam a fazê-lo uma de cada vez. Os médicos são bloqueados em ordem de ID.
+     *
+     * @param ids IDs dos médicos.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void bloquearAgendas(Collection<Integer> ids) {
+        if (!ids.isEmpty()) {
+            medicoRepository.bloquearPorIds(ids);
+        }
+    }
+
     @Transactional
     public void vincularUsuario(UsuarioModel usuario) {
         Optional<MedicoModel> medicoOptional = medicoRepository.findByEmail(usuario.getEmail());
@@ -8,8 +8,10 @@ import br.com.smartmed.consultas.rest.dto.PacienteDTO;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -65,6 +67,21 @@ public class PacienteService {
                 .orElseThrow(() -> new BusinessRuleException("Paciente com ID " + id + " não encontrado ou está inativo e não pode ter consultas consultadas."));
     }
 
+    /**
+     * Bloqueia as agendas dos pacientes até o fim da transação corrente, que precisa existir. Duas
+     * transações que agendam para um mesmo paciente, ainda que com médicos diferentes, passam a
+     * conferir a agenda dele e gravar uma de cada vez. Os pacientes são bloqueados em ordem de ID e
+     * sempre depois dos médicos da transação.
+     *
+     * @param ids IDs dos pacientes.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void bloquearAgendas(Collection<Integer> ids) {
+        if (!ids.isEmpty()) {
+            pacienteRepository.bloquearPorIds(ids);
+        }
+    }
+
     /**
      * Obtém a lista de todos os pacientes cadastrados.
      *
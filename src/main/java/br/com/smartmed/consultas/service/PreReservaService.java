@@ -0,0 +1,219 @@
+package br.com.smartmed.consultas.service;
+
+import br.com.smartmed.consultas.exception.BusinessRuleException;
+import br.com.smartmed.consultas.exception.ObjectNotFoundException;
+import br.com.smartmed.consultas.model.MedicoModel;
+import br.com.smartmed.consultas.rest.dto.PreReservaDTO;
+import br.com.smartmed.consultas.rest.dto.PreReservaRequestDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pré-reservas de horário: seguram um horário de um médico por alguns minutos enquanto a recepção
+ * confirma com o paciente, para que outro agendamento não o ocupe nesse meio-tempo.
+ * <p>
+ * A pré-reserva é uma ocupação no {@link IndiceAgendaService}, de modo que todos os fluxos de
+ * agendamento a respeitam, e só existe em memória. A expiração é feita por uma roda de temporização
+ * avançada a cada {@code smartmed.agendamento.pre-reserva-tique-ms}, sem consultar o banco. O
+ * agendamento que informa o ID da pré-reserva pode usar o horário segurado por ela, que é liberada
+ * após o commit.
+ */
+@Service
+public class PreReservaService {
+
+    @Autowired
+    private IndiceAgendaService indiceAgendaService;
+
+    @Autowired
+    private MedicoService medicoService;
+
+    @Autowired
+    private CalendarioAgendaService calendarioAgendaService;
+
+    @Value("${smartmed.agendamento.pre-reserva-minutos:5}")
+    private int minutosPreReserva;
+
+    @Value("${smartmed.agendamento.pre-reserva-tique-ms:1000}")
+    private long tiqueMs;
+
+    private final Map<String, PreReserva> preReservas = new ConcurrentHashMap<>();
+
+    private final RodaExpiracao roda = new RodaExpiracao();
+
+    /**
+     * Segura um horário livre do médico pelo tempo configurado.
+     *
+     * @param request DTO com o médico, a data/hora e, opcionalmente, a duração.
+     * @return Pré-reserva criada, com o seu ID e o instante em que expira.
+     * @throws ObjectNotFoundException Se o médico não for encontrado.
+     * @throws BusinessRuleException   Se o médico estiver inativo, o dia estiver bloqueado ou o
+     *                                 horário já estiver ocupado.
+     */
+    public PreReservaDTO criar(PreReservaRequestDTO request) {
+        MedicoModel medico = medicoService.buscarMedicoModelPorIdEAtivo(request.getMedicoId());
+        LocalDateTime inicio = request.getDataHora();
+        LocalDateTime fim = inicio.plusMinutes(Optional.ofNullable(request.getDuracaoMinutos())
+                .orElse(medico.getDuracaoPadraoConsulta()));
+        if (calendarioAgendaService.bloqueado(medico.getId(), inicio.toLocalDate())) {
+            throw new BusinessRuleException("O médico não atende na data informada (feriado, recesso ou bloqueio de agenda).");
+        }
+
+        IndiceAgendaService.Ocupacao ocupacao = indiceAgendaService.preReservar(medico.getId(), inicio, fim)
+                .orElseThrow(() -> new BusinessRuleException("O horário escolhido não está disponível."));
+        PreReserva preReserva = new PreReserva(UUID.randomUUID().toString(), medico.getId(), ocupacao,
+                LocalDateTime.now().plusMinutes(minutosPreReserva));
+        preReservas.put(preReserva.id(), preReserva);
+        roda.agendar(preReserva, (minutosPreReserva * 60_000L + tiqueMs - 1) / tiqueMs);
+        return paraDTO(preReserva);
+    }
+
+    /**
+     * Libera uma pré-reserva antes de ela expirar.
+     *
+     * @param id ID da pré-reserva.
+     * @throws ObjectNotFoundException Se a pré-reserva não existir ou já tiver expirado.
+     */
+    public void liberar(String id) {
+        PreReserva preReserva = preReservas.remove(id);
+        if (preReserva == null) {
+            throw new ObjectNotFoundException("Pré-reserva " + id + " não encontrada ou expirada.");
+        }
+        indiceAgendaService.liberarPreReserva(preReserva.medicoId(), preReserva.ocupacao().consultaId());
+    }
+
+    /**
+     * Valida a pré-reserva informada em um agendamento e a libera após o commit da transação corrente.
+     * O agendamento deve desconsiderar a ocupação retornada ao verificar conflitos, já que o horário
+     * está segurado justamente para ele.
+     *
+     * @param id       ID da pré-reserva, ou {@code null} se o agendamento não usar uma.
+     * @param medicoId ID do médico do agendamento.
+     * @param inicio   Início do agendamento.
+     * @param fim      Fim do agendamento.
+     * @return ID da ocupação da pré-reserva no índice, ou {@code null} se nenhuma foi informada.
+     * @throws BusinessRuleException Se a pré-reserva não existir, tiver expirado ou não cobrir o
+     *                               horário do agendamento.
+     */
+    public Integer usar(String id, Integer medicoId, LocalDateTime inicio, LocalDateTime fim) {
+        if (id == null) {
+            return null;
+        }
+        PreReserva preReserva = preReservas.get(id);
+        if (preReserva == null || preReserva.expiraEm().isBefore(LocalDateTime.now())) {
+            throw new BusinessRuleException("A pré-reserva " + id + " não existe ou já expirou.");
+        }
+        IndiceAgendaService.Ocupacao ocupacao = preReserva.ocupacao();
+        if (!preReserva.medicoId().equals(medicoId)
+                || inicio.isBefore(ocupacao.inicio()) || fim.isAfter(ocupacao.fim())) {
+            throw new BusinessRuleException("A pré-reserva " + id + " não cobre o médico e o horário do agendamento.");
+        }
+
+        Runnable liberacao = () -> {
+            if (preReservas.remove(id, preReserva)) {
+                indiceAgendaService.liberarPreReserva(medicoId, ocupacao.consultaId());
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    liberacao.run();
+                }
+            });
+        } else {
+            liberacao.run();
+        }
+        return ocupacao.consultaId();
+    }
+
+    /**
+     * Avança a roda de temporização um tique e libera as pré-reservas que expiraram nele. As que já
+     * foram usadas ou liberadas antes simplesmente não estão mais registradas.
+     */
+    @Scheduled(fixedRateString = "${smartmed.agendamento.pre-reserva-tique-ms:1000}")
+    public void expirar() {
+        for (PreReserva preReserva : roda.avancar()) {
+            if (preReservas.remove(preReserva.id(), preReserva)) {
+                indiceAgendaService.liberarPreReserva(preReserva.medicoId(), preReserva.ocupacao().consultaId());
+            }
+        }
+    }
+
+    private static PreReservaDTO paraDTO(PreReserva preReserva) {
+        return new PreReservaDTO(preReserva.id(), preReserva.medicoId(), preReserva.ocupacao().inicio(),
+                preReserva.ocupacao().fim(), preReserva.expiraEm());
+    }
+
+    /**
+     * Horário segurado por uma pré-reserva.
+     */
+    record PreReserva(String id, Integer medicoId, IndiceAgendaService.Ocupacao ocupacao,
+                              LocalDateTime expiraEm) {
+    }
+
+    /**
+     * Roda de temporização com {@code BALDES} baldes, um visitado a cada tique. Uma pré-reserva que
+     * expira daqui a {@code n} tiques entra no balde {@code (tique + n) % BALDES} com
+     * {@code (n - 1) / BALDES} voltas restantes, decrementadas a cada visita ao balde; expira na visita
+     * em que não restam voltas. Agendar custa O(1) e cada tique percorre apenas um balde, qualquer que
+     * seja o número de pré-reservas ativas.
+     */
+    static final class RodaExpiracao {
+
+        private static final int BALDES = 512;
+
+        private final List<ArrayDeque<Entrada>> baldes = new ArrayList<>(BALDES);
+        private long tique;
+
+        RodaExpiracao() {
+            for (int i = 0; i < BALDES; i++) {
+                baldes.add(new ArrayDeque<>());
+            }
+        }
+
+        synchronized void agendar(PreReserva preReserva, long tiques) {
+            long n = Math.max(1, tiques);
+            baldes.get((int) ((tique + n) % BALDES)).add(new Entrada(preReserva, (n - 1) / BALDES));
+        }
+
+        synchronized List<PreReserva> avancar() {
+            tique++;
+            List<PreReserva> expiradas = new ArrayList<>();
+            Iterator<Entrada> entradas = baldes.get((int) (tique % BALDES)).iterator();
+            while (entradas.hasNext()) {
+                Entrada entrada = entradas.next();
+                if (entrada.voltas == 0) {
+                    expiradas.add(entrada.preReserva);
+                    entradas.remove();
+                } else {
+                    entrada.voltas--;
+                }
+            }
+            return expiradas;
+        }
+
+        private static final class Entrada {
+            private final PreReserva preReserva;
+            private long voltas;
+
+            Entrada(PreReserva preReserva, long voltas) {
+                this.preReserva = preReserva;
+                this.voltas = voltas;
+            }
+        }
+    }
+}
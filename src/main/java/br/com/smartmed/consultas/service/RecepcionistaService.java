@@ -49,6 +49,17 @@ public class RecepcionistaService {
                 .orElseThrow(() -> new ObjectNotFoundException("Recepcionista com ID " + id + " não encontrado."));
     }
 
+    /**
+     * Obtém uma referência ao Recepcionista, sem consultar o banco, para associá-lo a outra entidade
+     * quando a sua existência já foi validada.
+     *
+     * @param id ID da Recepcionista.
+     * @return Referência não inicializada à Recepcionista.
+     */
+    public RecepcionistaModel obterReferenciaRecepcionista(Integer id) {
+        return recepcionistaRepository.getReferenceById(id);
+    }
+
     @Transactional(readOnly = true)
     public RecepcionistaModel obterRecepcionistaPorUsuarioId(Integer usuarioId) {
         return recepcionistaRepository.findByUsuarioId(usuarioId)
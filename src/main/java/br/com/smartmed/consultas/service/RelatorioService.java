@@ -4,6 +4,7 @@ import br.com.smartmed.consultas.exception.BusinessRuleException;
 import br.com.smartmed.consultas.exception.ObjectNotFoundException;
 import br.com.smartmed.consultas.exception.SQLException;
 import br.com.smartmed.consultas.model.ConsultaModel;
+import br.com.smartmed.consultas.repository.ConsultaRepository;
 import br.com.smartmed.consultas.rest.dto.EspecialidadeFrequenciaDTO;
 import br.com.smartmed.consultas.rest.dto.FaturamentoRequestDTO;
 import br.com.smartmed.consultas.rest.dto.FaturamentoResponseDTO;
@@ -28,6 +29,20 @@ public class RelatorioService {
     @Autowired
     private ConsultaService consultaService;
 
+    @Autowired
+    private ConsultaRepository consultaRepository;
+
+    /**
+     * Gera o relatório de faturamento das consultas realizadas no período.
+     * <p>
+     * O total, os valores por forma de pagamento e por convênio são somados no banco, com consultas
+     * agregadas que devolvem apenas uma linha por grupo, sem carregar as consultas do período.
+     *
+     * @param request DTO com a data de início e a data de fim do período.
+     * @return Total geral e os valores por forma de pagamento e por convênio.
+     * @throws BusinessRuleException   Se a data de início for posterior à data de fim.
+     * @throws ObjectNotFoundException Se não houver consulta realizada no período.
+     */
     @Transactional(readOnly = true)
     public FaturamentoResponseDTO gerarRelatorioFaturamento(FaturamentoRequestDTO request) {
         try {
@@ -39,17 +54,31 @@ public class RelatorioService {
             LocalDateTime dataInicio = request.getDataInicio().atStartOfDay();
             LocalDateTime dataFim = request.getDataFim().atTime(LocalTime.MAX);
 
-            List<ConsultaModel> consultas = consultaService.buscarConsultasRealizadasNoPeriodo(dataInicio, dataFim);
-
-            if (consultas.isEmpty()) {
+            if (!consultaRepository.existsRealizadasByPeriodo(dataInicio, dataFim)) {
                 throw new ObjectNotFoundException("Nenhuma consulta realizada encontrada no período especificado.");
             }
 
-            // Calcula totais
-            BigDecimal totalGeral = calcularTotalGeral(consultas);
-            List<FaturamentoResponseDTO.FormaPagamentoResumoDTO> porFormaPagamento = calcularPorFormaPagamento(
-                    consultas);
-            List<FaturamentoResponseDTO.ConvenioResumoDTO> porConvenio = calcularPorConvenio(consultas);
+            BigDecimal totalGeral = consultaRepository.sumValorRealizadasByPeriodo(dataInicio, dataFim);
+
+            List<FaturamentoResponseDTO.FormaPagamentoResumoDTO> porFormaPagamento = consultaRepository
+                    .sumValorRealizadasByFormaPagamento(dataInicio, dataFim).stream()
+                    .map(grupo -> {
+                        FaturamentoResponseDTO.FormaPagamentoResumoDTO dto = new FaturamentoResponseDTO.FormaPagamentoResumoDTO();
+                        dto.setFormaPagamento(grupo.getNome());
+                        dto.setValor(grupo.getValor());
+                        return dto;
+                    })
+                    .collect(Collectors.toList());
+            List<FaturamentoResponseDTO.ConvenioResumoDTO> porConvenio = consultaRepository
+                    .sumValorRealizadasByConvenio(dataInicio, dataFim).stream()
+                    .map(grupo -> {
+                        FaturamentoResponseDTO.ConvenioResumoDTO dto = new FaturamentoResponseDTO.ConvenioResumoDTO();
+                        dto.setConvenio(grupo.getNome());
+                        dto.setValor(grupo.getValor());
+                        dto.setPorcentagemDesconto(grupo.getPorcentagemDesconto());
+                        return dto;
+                    })
+                    .collect(Collectors.toList());
 
             FaturamentoResponseDTO response = new FaturamentoResponseDTO();
             response.setTotalGeral(totalGeral);
@@ -65,60 +94,6 @@ public class RelatorioService {
         }
     }
 
-    private BigDecimal calcularTotalGeral(List<ConsultaModel> consultas) {
-        return consultas.stream()
-                .map(ConsultaModel::getValor)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-    }
-
-    private List<FaturamentoResponseDTO.FormaPagamentoResumoDTO> calcularPorFormaPagamento(
-            List<ConsultaModel> consultas) {
-        Map<String, BigDecimal> porFormaPagamento = consultas.stream()
-                .filter(c -> c.getFormaPagamento() != null)
-                .collect(Collectors.groupingBy(
-                        c -> c.getFormaPagamento().getDescricao(),
-                        Collectors.reducing(
-                                BigDecimal.ZERO,
-                                ConsultaModel::getValor,
-                                BigDecimal::add)));
-
-        return porFormaPagamento.entrySet().stream()
-                .map(entry -> {
-                    FaturamentoResponseDTO.FormaPagamentoResumoDTO dto = new FaturamentoResponseDTO.FormaPagamentoResumoDTO();
-                    dto.setFormaPagamento(entry.getKey());
-                    dto.setValor(entry.getValue());
-                    return dto;
-                })
-                .collect(Collectors.toList());
-    }
-
-    private List<FaturamentoResponseDTO.ConvenioResumoDTO> calcularPorConvenio(List<ConsultaModel> consultas) {
-        Map<String, BigDecimal> porConvenio = consultas.stream()
-                .filter(c -> c.getConvenio() != null)
-                .collect(Collectors.groupingBy(
-                        c -> c.getConvenio().getNome(),
-                        Collectors.reducing(
-                                BigDecimal.ZERO,
-                                ConsultaModel::getValor,
-                                BigDecimal::add)));
-
-        return porConvenio.entrySet().stream()
-                .map(entry -> {
-                    FaturamentoResponseDTO.ConvenioResumoDTO dto = new FaturamentoResponseDTO.ConvenioResumoDTO();
-                    dto.setConvenio(entry.getKey());
-                    dto.setValor(entry.getValue());
-
-                    // Adiciona a porcentagem de desconto ao DTO (opcional)
-                    consultas.stream()
-                            .filter(c -> c.getConvenio() != null && c.getConvenio().getNome().equals(entry.getKey()))
-                            .findFirst()
-                            .ifPresent(c -> dto.setPorcentagemDesconto(c.getConvenio().getPorcentagemDesconto()));
-
-                    return dto;
-                })
-                .collect(Collectors.toList());
-    }
-
     public List<EspecialidadeFrequenciaDTO> listarEspecialidadesFrequentes(FaturamentoRequestDTO request) {
         try {
             if (request.getDataInicio().isAfter(request.getDataFim())) {
@@ -293,4 +293,32 @@ VALUES (151, '2025-10-10 14:00:00', 'AGENDADA', 250.00,
 INSERT INTO consulta (id, dataHoraConsulta, status, valor, observacoes, pacienteId, medicoId, formaPagamentoId,
                       convenioId, recepcionistaId)
 VALUES (156, '2025-08-01 10:00:00', 'REALIZADA', 300.00, 'Consulta passada que não pode ser reagendada.', 10, 1, 2,
-        NULL, 6);
\ No newline at end of file
+        NULL, 6);
+
+-- Preenche o fim real das consultas inseridas acima com a duração padrão do médico
+UPDATE consulta c
+SET dataHoraFim = DATEADD(MINUTE, (SELECT m.duracaoPadraoConsulta FROM medico m WHERE m.id = c.medicoId),
+                          c.dataHoraConsulta)
+WHERE c.dataHoraFim IS NULL;
+
+-- Reserva o horário das consultas que ocupam a agenda (restrição única por médico)
+UPDATE consulta
+SET horarioReservado = dataHoraConsulta
+WHERE status IN ('AGENDADA', 'REALIZADA');
+
+-- As consultas acima com ID explícito não avançam a identidade; reinicia após o maior ID inserido
+ALTER TABLE consulta ALTER COLUMN id RESTART WITH 157;
+
+-- Feriados nacionais (bloqueios da clínica inteira)
+INSERT INTO bloqueioAgenda (dataInicio, dataFim, motivo, medicoId)
+VALUES ('2025-11-20', '2025-11-20', 'Dia Nacional de Zumbi e da Consciência Negra', NULL),
+       ('2025-12-25', '2025-12-25', 'Natal', NULL),
+       ('2026-01-01', '2026-01-01', 'Confraternização Universal', NULL),
+       ('2026-04-03', '2026-04-03', 'Sexta-feira Santa', NULL),
+       ('2026-04-21', '2026-04-21', 'Tiradentes', NULL),
+       ('2026-05-01', '2026-05-01', 'Dia do Trabalho', NULL),
+       ('2026-09-07', '2026-09-07', 'Independência do Brasil', NULL),
+       ('2026-10-12', '2026-10-12', 'Nossa Senhora Aparecida', NULL),
+       ('2026-11-02', '2026-11-02', 'Finados', NULL),
+       ('2026-11-20', '2026-11-20', 'Dia Nacional de Zumbi e da Consciência Negra', NULL),
+       ('2026-12-25', '2026-12-25', 'Natal', NULL);
\ No newline at end of file
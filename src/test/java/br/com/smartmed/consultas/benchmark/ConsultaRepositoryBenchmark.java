@@ -0,0 +1,258 @@
+package br.com.smartmed.consultas.benchmark;
+
+import br.com.smartmed.consultas.model.ConsultaModel;
+import br.com.smartmed.consultas.model.ConsultaStatus;
+import br.com.smartmed.consultas.repository.ConsultaRepository;
+import br.com.smartmed.consultas.service.IndiceAgendaService;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Benchmark dos métodos do {@link ConsultaRepository} usados pelos serviços, com e sem índices
+ * na tabela de consultas.
+ * <p>
+ * Popula a tabela com um grande volume de registros, mede a latência de cada método, remove os
+ * índices compostos declarados em {@link ConsultaModel} e as restrições de chave estrangeira e de
+ * unicidade da tabela (o H2 cria um índice para cada uma delas, e os da chave estrangeira do médico
+ * e da unicidade do horário também começam por {@code medicoId}), mede novamente e, ao final, recria
+ * tudo. O relatório lista os índices que restaram na medição sem índices, que deve ser só o da chave
+ * primária. Fica fora do build normal; para rodá-lo:
+ * <pre>
+ * ./mvnw test -Dtest=ConsultaRepositoryBenchmark -Dsmartmed.benchmark=true -DargLine=-Xmx2g
+ * </pre>
+ * O volume e o número de iterações podem ser ajustados pelas propriedades
+ * {@code smartmed.benchmark.consultas} e {@code smartmed.benchmark.iteracoes}.
+ */
+@SpringBootTest
+@DirtiesContext
+@EnabledIfSystemProperty(named = "smartmed.benchmark", matches = "true")
+class ConsultaRepositoryBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(ConsultaRepositoryBenchmark.class);
+
+    private static final int TAMANHO_LOTE = 10_000;
+    private static final LocalDateTime INICIO_DADOS = LocalDate.of(2024, 1, 1).atTime(8, 0);
+    private static final int DIAS_DADOS = 730;
+
+    @Autowired
+    private ConsultaRepository consultaRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${smartmed.benchmark.consultas:1000000}")
+    private int quantidadeConsultas;
+
+    @Value("${smartmed.benchmark.iteracoes:50}")
+    private int iteracoes;
+
+    private final Random random = new Random(42);
+
+    @Test
+    void medirComESemIndices() {
+        popular();
+
+        Map<String, Resultado> comIndices = medir();
+        List<String> restricoes = removerIndices();
+        List<String> indicesRestantes = jdbcTemplate.queryForList(
+                "SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME = 'CONSULTA'", String.class);
+        Map<String, Resultado> semIndices = medir();
+        recriarIndices(restricoes);
+
+        StringBuilder relatorio = new StringBuilder(String.format("%nBenchmark ConsultaRepository (%d consultas, %d iterações)%n",
+                quantidadeConsultas, iteracoes));
+        relatorio.append(String.format("Índices restantes na medição sem índices: %s%n", indicesRestantes));
+        relatorio.append(String.format("%-40s %14s %14s %14s %14s%n",
+                "Método", "média c/ idx", "p99 c/ idx", "média s/ idx", "p99 s/ idx"));
+        comIndices.forEach((metodo, com) -> {
+            Resultado sem = semIndices.get(metodo);
+            relatorio.append(String.format("%-40s %11.3f ms %11.3f ms %11.3f ms %11.3f ms%n",
+                    metodo, com.mediaMs(), com.p99Ms(), sem.mediaMs(), sem.p99Ms()));
+        });
+        log.info(relatorio.toString());
+    }
+
+    /**
+     * Insere as consultas sintéticas em lotes JDBC, distribuídas ao longo de dois anos entre os
+     * médicos, pacientes e recepcionistas já cadastrados.
+     */
+    private void popular() {
+        List<Integer> medicos = jdbcTemplate.queryForList("SELECT id FROM medico", Integer.class);
+        List<Integer> pacientes = jdbcTemplate.queryForList("SELECT id FROM paciente", Integer.class);
+        List<Integer> recepcionistas = jdbcTemplate.queryForList("SELECT id FROM recepcionista", Integer.class);
+        List<Integer> formasPagamento = jdbcTemplate.queryForList("SELECT id FROM formaPagamento", Integer.class);
+        ConsultaStatus[] status = ConsultaStatus.values();
+        // IDs explícitos: o data.sql insere consultas com IDs fixos que colidiriam com a identidade
+        int primeiroId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) + 1 FROM consulta", Integer.class);
+
+        String sql = "INSERT INTO consulta (id, dataHoraConsulta, dataHoraFim, status, valor, pacienteId, medicoId, " +
+                "formaPagamentoId, recepcionistaId) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        long inicio = System.nanoTime();
+        for (int inseridas = 0; inseridas < quantidadeConsultas; inseridas += TAMANHO_LOTE) {
+            int tamanho = Math.min(TAMANHO_LOTE, quantidadeConsultas - inseridas);
+            int idLote = primeiroId + inseridas;
+            jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    LocalDateTime dataHora = INICIO_DADOS
+                            .plusDays(random.nextInt(DIAS_DADOS))
+                            .plusMinutes(30L * random.nextInt(20));
+                    ps.setInt(1, idLote + i);
+                    ps.setTimestamp(2, Timestamp.valueOf(dataHora));
+                    ps.setTimestamp(3, Timestamp.valueOf(dataHora.plusMinutes(30)));
+                    ps.setString(4, status[random.nextInt(status.length)].name());
+                    ps.setBigDecimal(5, BigDecimal.valueOf(100 + random.nextInt(300)));
+                    ps.setInt(6, sortear(pacientes));
+                    ps.setInt(7, sortear(medicos));
+                    ps.setInt(8, sortear(formasPagamento));
+                    ps.setInt(9, sortear(recepcionistas));
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return tamanho;
+                }
+            });
+        }
+        log.info("{} consultas inseridas em {} ms", quantidadeConsultas, (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    /**
+     * Remove os índices declarados e as restrições de chave estrangeira e de unicidade da tabela de
+     * consultas, junto com os índices que o H2 mantém para elas.
+     *
+     * @return Os comandos que recriam as restrições removidas.
+     */
+    private List<String> removerIndices() {
+        List<String> restricoes = jdbcTemplate.queryForList("SCRIPT NODATA TABLE consulta", String.class).stream()
+                .filter(comando -> comando.contains("FOREIGN KEY") || comando.contains(" UNIQUE"))
+                .toList();
+        jdbcTemplate.queryForList("SELECT CONSTRAINT_NAME FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS " +
+                        "WHERE TABLE_NAME = 'CONSULTA' AND CONSTRAINT_TYPE IN ('FOREIGN KEY', 'UNIQUE')", String.class)
+                .forEach(nome -> jdbcTemplate.execute("ALTER TABLE consulta DROP CONSTRAINT \"" + nome + "\""));
+        for (Index index : ConsultaModel.class.getAnnotation(Table.class).indexes()) {
+            jdbcTemplate.execute("DROP INDEX IF EXISTS " + index.name());
+        }
+        return restricoes;
+    }
+
+    private void recriarIndices(List<String> restricoes) {
+        for (Index index : ConsultaModel.class.getAnnotation(Table.class).indexes()) {
+            jdbcTemplate.execute("CREATE INDEX " + index.name() + " ON consulta (" + index.columnList() + ")");
+        }
+        restricoes.forEach(jdbcTemplate::execute);
+    }
+
+    private Map<String, Resultado> medir() {
+        Map<String, Runnable> metodos = new LinkedHashMap<>();
+        metodos.put("existsByMedicoAndPeriod", () -> {
+            LocalDateTime dia = diaAleatorio();
+            consultaRepository.existsByMedicoAndPeriod(1, dia.minus(ConsultaModel.DURACAO_MAXIMA), dia,
+                    dia.plusMinutes(30), null);
+        });
+        metodos.put("existsByPacienteAndPeriod", () -> {
+            LocalDateTime dia = diaAleatorio();
+            consultaRepository.existsByPacienteAndPeriod(1, dia.minus(ConsultaModel.DURACAO_MAXIMA), dia,
+                    dia.plusMinutes(30), null);
+        });
+        metodos.put("findOcupacoesByMedico", () ->
+                consultaRepository.findOcupacoesByMedico(1, IndiceAgendaService.STATUS_OCUPAM_AGENDA));
+        metodos.put("findOcupacoesByMedicosAndPeriodo", () -> {
+            LocalDateTime dia = diaAleatorio().toLocalDate().atStartOfDay();
+            consultaRepository.findOcupacoesByMedicosAndPeriodo(List.of(1, 2), dia.minus(ConsultaModel.DURACAO_MAXIMA),
+                    dia, dia.plusDays(1), IndiceAgendaService.STATUS_OCUPAM_AGENDA);
+        });
+        metodos.put("findHistoricoConsultas", () -> {
+            LocalDateTime dia = diaAleatorio();
+            consultaRepository.findHistoricoConsultas(1, dia, dia.plusDays(7), null, null, null);
+        });
+        metodos.put("findConsultasRealizadasByPeriodo", () -> {
+            LocalDateTime dia = diaAleatorio().toLocalDate().atStartOfDay();
+            consultaRepository.findConsultasRealizadasByPeriodo(dia, dia.plusDays(1));
+        });
+        metodos.put("existsRealizadasByPeriodo", () -> {
+            LocalDateTime dia = diaAleatorio().toLocalDate().atStartOfDay();
+            consultaRepository.existsRealizadasByPeriodo(dia, dia.plusDays(1));
+        });
+        metodos.put("sumValorRealizadasByPeriodo", () -> {
+            LocalDateTime dia = diaAleatorio().toLocalDate().atStartOfDay();
+            consultaRepository.sumValorRealizadasByPeriodo(dia, dia.plusDays(1));
+        });
+        metodos.put("sumValorRealizadasByFormaPagamento", () -> {
+            LocalDateTime dia = diaAleatorio().toLocalDate().atStartOfDay();
+            consultaRepository.sumValorRealizadasByFormaPagamento(dia, dia.plusDays(1));
+        });
+        metodos.put("sumValorRealizadasByConvenio", () -> {
+            LocalDateTime dia = diaAleatorio().toLocalDate().atStartOfDay();
+            consultaRepository.sumValorRealizadasByConvenio(dia, dia.plusDays(1));
+        });
+        metodos.put("findRankingMedicos", () -> {
+            LocalDateTime mes = diaAleatorio().toLocalDate().withDayOfMonth(1).atStartOfDay();
+            consultaRepository.findRankingMedicos(mes, mes.plusMonths(1), ConsultaStatus.REALIZADA, PageRequest.of(0, 10));
+        });
+        metodos.put("findPrimeiraLacunaDisponivel", () -> {
+            LocalDateTime dia = diaAleatorio();
+            consultaRepository.findPrimeiraLacunaDisponivel(1, dia, dia.plusDays(7), 30, 30);
+        });
+
+        Map<String, Resultado> resultados = new LinkedHashMap<>();
+        metodos.forEach((nome, metodo) -> resultados.put(nome, cronometrar(metodo)));
+        return resultados;
+    }
+
+    private Resultado cronometrar(Runnable metodo) {
+        TransactionTemplate transacao = new TransactionTemplate(transactionManager);
+        for (int i = 0; i < iteracoes; i++) { // aquecimento
+            transacao.executeWithoutResult(status -> metodo.run());
+        }
+        long[] tempos = new long[iteracoes];
+        for (int i = 0; i < iteracoes; i++) {
+            long inicio = System.nanoTime();
+            transacao.executeWithoutResult(status -> metodo.run());
+            tempos[i] = System.nanoTime() - inicio;
+        }
+        Arrays.sort(tempos);
+        double media = Arrays.stream(tempos).average().orElse(0) / 1_000_000.0;
+        double p99 = tempos[Math.min(tempos.length - 1, (int) Math.ceil(tempos.length * 0.99) - 1)] / 1_000_000.0;
+        return new Resultado(media, p99);
+    }
+
+    private LocalDateTime diaAleatorio() {
+        return INICIO_DADOS.plusDays(random.nextInt(DIAS_DADOS)).plusMinutes(30L * random.nextInt(20));
+    }
+
+    private int sortear(List<Integer> ids) {
+        return ids.get(random.nextInt(ids.size()));
+    }
+
+    private record Resultado(double mediaMs, double p99Ms) {
+    }
+}
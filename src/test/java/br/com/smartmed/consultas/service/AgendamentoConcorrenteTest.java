@@ -0,0 +1,155 @@
+package br.com.smartmed.consultas.service;
+
+import br.com.smartmed.consultas.exception.BusinessRuleException;
+import br.com.smartmed.consultas.rest.dto.CadastrarConsultaRequestDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Cadastros concorrentes em horários sobrepostos de um mesmo médico, com inícios diferentes (que a
+ * restrição única do banco não distingue) e com a agenda indexada sendo descartada o tempo todo, de
+ * modo que as reservas em memória não bastam para separá-los; e de um mesmo paciente com médicos
+ * diferentes, que nenhuma reserva de agenda de médico separa.
+ */
+@SpringBootTest
+class AgendamentoConcorrenteTest {
+
+    private static final Integer MEDICO_ID = 2;
+    private static final int CADASTROS = 8;
+
+    @Autowired
+    private ConsultaService consultaService;
+    @Autowired
+    private IndiceAgendaService indiceAgendaService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void cadastrosSobrepostosConcorrentesNuncaGravamDuasConsultasNoMesmoHorario() throws Exception {
+        List<Integer> pacientes = jdbcTemplate.queryForList(
+                "SELECT id FROM paciente WHERE ativo ORDER BY id LIMIT " + CADASTROS, Integer.class);
+        assertThat(pacientes).hasSize(CADASTROS);
+
+        for (int dia = 0; dia < 3; dia++) {
+            LocalDateTime inicioDia = LocalDateTime.of(2031, 5, 5 + dia, 10, 0);
+            CountDownLatch largada = new CountDownLatch(1);
+            AtomicBoolean encerrado = new AtomicBoolean();
+            ExecutorService executor = Executors.newFixedThreadPool(CADASTROS + 1);
+            try {
+                executor.submit(() -> {
+                    while (!encerrado.get()) {
+                        indiceAgendaService.invalidar(MEDICO_ID);
+                        Thread.yield();
+                    }
+                });
+                List<CompletableFuture<Void>> cadastros = new ArrayList<>();
+                for (int i = 0; i < CADASTROS; i++) {
+                    CadastrarConsultaRequestDTO request = new CadastrarConsultaRequestDTO();
+                    request.setDataHora(inicioDia.plusMinutes(10L * i));
+                    request.setDuracaoMinutos(30);
+                    request.setMedicoId(MEDICO_ID);
+                    request.setPacienteId(pacientes.get(i));
+                    request.setRecepcionistaId(1);
+                    request.setFormaPagamentoId(1);
+                    cadastros.add(CompletableFuture.runAsync(() -> {
+                        aguardar(largada);
+                        try {
+                            consultaService.cadastrarConsulta(request);
+                        } catch (BusinessRuleException e) {
+                            // Horário já ocupado: rejeição esperada
+                        }
+                    }, executor));
+                }
+                largada.countDown();
+                CompletableFuture.allOf(cadastros.toArray(CompletableFuture[]::new)).join();
+            } finally {
+                encerrado.set(true);
+                executor.shutdown();
+            }
+
+            List<Map<String, Object>> gravadas = jdbcTemplate.queryForList("SELECT dataHoraConsulta, dataHoraFim "
+                            + "FROM consulta WHERE medicoId = ? AND status = 'AGENDADA' "
+                            + "AND dataHoraConsulta >= ? AND dataHoraConsulta < ? ORDER BY dataHoraConsulta",
+                    MEDICO_ID, inicioDia, inicioDia.plusDays(1).toLocalDate().atStartOfDay());
+            assertThat(gravadas).isNotEmpty();
+            for (int i = 1; i < gravadas.size(); i++) {
+                LocalDateTime fimAnterior = ((Timestamp) gravadas.get(i - 1).get("DATAHORAFIM")).toLocalDateTime();
+                LocalDateTime inicio = ((Timestamp) gravadas.get(i).get("DATAHORACONSULTA")).toLocalDateTime();
+                assertThat(inicio).isAfterOrEqualTo(fimAnterior);
+            }
+        }
+    }
+
+    @Test
+    void cadastrosConcorrentesDoMesmoPacienteComMedicosDiferentesNuncaSeSobrepoem() throws Exception {
+        List<Integer> medicos = jdbcTemplate.queryForList(
+                "SELECT id FROM medico WHERE ativo ORDER BY id", Integer.class);
+        assertThat(medicos).hasSizeGreaterThan(1);
+        Integer pacienteId = jdbcTemplate.queryForObject(
+                "SELECT MAX(id) FROM paciente WHERE ativo", Integer.class);
+
+        for (int dia = 0; dia < 3; dia++) {
+            LocalDateTime inicioDia = LocalDateTime.of(2031, 5, 12 + dia, 10, 0);
+            CountDownLatch largada = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(medicos.size());
+            try {
+                List<CompletableFuture<Void>> cadastros = new ArrayList<>();
+                for (int i = 0; i < medicos.size(); i++) {
+                    CadastrarConsultaRequestDTO request = new CadastrarConsultaRequestDTO();
+                    request.setDataHora(inicioDia.plusMinutes(10L * i));
+                    request.setDuracaoMinutos(30);
+                    request.setMedicoId(medicos.get(i));
+                    request.setPacienteId(pacienteId);
+                    request.setRecepcionistaId(1);
+                    request.setFormaPagamentoId(1);
+                    cadastros.add(CompletableFuture.runAsync(() -> {
+                        aguardar(largada);
+                        try {
+                            consultaService.cadastrarConsulta(request);
+                        } catch (BusinessRuleException e) {
+                            // Paciente já tem consulta no horário: rejeição esperada
+                        }
+                    }, executor));
+                }
+                largada.countDown();
+                CompletableFuture.allOf(cadastros.toArray(CompletableFuture[]::new)).join();
+            } finally {
+                executor.shutdown();
+            }
+
+            List<Map<String, Object>> gravadas = jdbcTemplate.queryForList("SELECT dataHoraConsulta, dataHoraFim "
+                            + "FROM consulta WHERE pacienteId = ? AND status = 'AGENDADA' "
+                            + "AND dataHoraConsulta >= ? AND dataHoraConsulta < ? ORDER BY dataHoraConsulta",
+                    pacienteId, inicioDia, inicioDia.plusDays(1).toLocalDate().atStartOfDay());
+            assertThat(gravadas).isNotEmpty();
+            for (int i = 1; i < gravadas.size(); i++) {
+                LocalDateTime fimAnterior = ((Timestamp) gravadas.get(i - 1).get("DATAHORAFIM")).toLocalDateTime();
+                LocalDateTime inicio = ((Timestamp) gravadas.get(i).get("DATAHORACONSULTA")).toLocalDateTime();
+                assertThat(inicio).isAfterOrEqualTo(fimAnterior);
+            }
+        }
+    }
+
+    private static void aguardar(CountDownLatch largada) {
+        try {
+            largada.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package br.com.smartmed.consultas.service;
+
+import br.com.smartmed.consultas.repository.ConsultaRepository;
+import br.com.smartmed.consultas.rest.dto.AgendamentoAutomaticoRequestDTO;
+import br.com.smartmed.consultas.rest.dto.BloqueioAgendaDTO;
+import br.com.smartmed.consultas.rest.dto.ExpedienteMedicoDTO;
+import br.com.smartmed.consultas.rest.dto.ExpedienteSemanalDTO;
+import br.com.smartmed.consultas.rest.dto.HorarioSugeridoDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A busca de lacunas em SQL ({@link ConsultaRepository#findPrimeiraLacunaDisponivel}) encontra o
+ * mesmo primeiro horário que a busca em memória, a partir de vários instantes de uma agenda com
+ * intervalo de almoço, um dia bloqueado, consultas que começam antes da abertura do turno e lacunas
+ * fora da grade. O médico e a especialidade são criados pelo teste, para que nenhum outro médico
+ * concorra pelos horários.
+ */
+@SpringBootTest
+class BuscaLacunaSqlTest {
+
+    private static final int MEDICO_ID = 900;
+    private static final int ESPECIALIDADE_ID = 900;
+    private static final int DURACAO = 30;
+    private static final LocalDate SEGUNDA = LocalDate.of(2032, 3, 1);
+
+    @Autowired
+    private ConsultaService consultaService;
+    @Autowired
+    private ConsultaRepository consultaRepository;
+    @Autowired
+    private ExpedienteService expedienteService;
+    @Autowired
+    private CalendarioAgendaService calendarioAgendaService;
+    @Autowired
+    private IndiceAgendaService indiceAgendaService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void buscaSqlEncontraOMesmoHorarioQueABuscaEmMemoria() {
+        jdbcTemplate.update("INSERT INTO especialidade (id, nome, descricao) VALUES (?, 'Lacunas', 'Teste da busca de lacunas')",
+                ESPECIALIDADE_ID);
+        jdbcTemplate.update("INSERT INTO medico (id, nome, crm, telefone, email, valorConsultaReferencia, ativo, "
+                        + "especialidadeId, duracaoPadraoConsulta, horaInicioExpediente, horaFimExpediente) "
+                        + "VALUES (?, 'Dr. Lacuna', '900900SP', '11900009000', 'lacuna@teste.com', 200.00, TRUE, ?, ?, "
+                        + "'08:00:00', '18:00:00')",
+                MEDICO_ID, ESPECIALIDADE_ID, DURACAO);
+
+        // De segunda a sexta, das 8h às 17h com almoço das 12h às 13h; a terça está bloqueada
+        expedienteService.salvar(MEDICO_ID, new ExpedienteSemanalDTO(MEDICO_ID,
+                EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.FRIDAY).stream()
+                        .map(dia -> new ExpedienteMedicoDTO(dia, LocalTime.of(8, 0), LocalTime.of(17, 0),
+                                LocalTime.of(12, 0), LocalTime.of(13, 0)))
+                        .toList()));
+        calendarioAgendaService.salvar(new BloqueioAgendaDTO(null, SEGUNDA.plusDays(1), SEGUNDA.plusDays(1),
+                "Congresso", MEDICO_ID));
+
+        // Consultas que começam antes da abertura do turno e deixam lacunas fora da grade de 30 minutos
+        agendar(SEGUNDA.atTime(7, 40), SEGUNDA.atTime(8, 20));
+        agendar(SEGUNDA.atTime(8, 30), SEGUNDA.atTime(9, 10));
+        agendar(SEGUNDA.atTime(9, 40), SEGUNDA.atTime(12, 0));
+        agendar(SEGUNDA.atTime(13, 0), SEGUNDA.atTime(16, 0));
+        agendar(SEGUNDA.plusDays(2).atTime(7, 50), SEGUNDA.plusDays(2).atTime(8, 45));
+        indiceAgendaService.invalidar(MEDICO_ID);
+
+        List<LocalDateTime> inicios = List.of(
+                SEGUNDA.atTime(7, 0), SEGUNDA.atTime(8, 5), SEGUNDA.atTime(9, 15), SEGUNDA.atTime(11, 45),
+                SEGUNDA.atTime(12, 30), SEGUNDA.atTime(16, 10), SEGUNDA.atTime(16, 40),
+                SEGUNDA.plusDays(1).atTime(10, 0), SEGUNDA.plusDays(2).atTime(6, 0),
+                SEGUNDA.plusDays(4).atTime(16, 50), SEGUNDA.plusDays(5).atTime(10, 0));
+        for (LocalDateTime inicio : inicios) {
+            assertThat(buscaSql(inicio)).as("a partir de %s", inicio).isEqualTo(buscaEmMemoria(inicio));
+        }
+
+        assertThat(buscaSql(SEGUNDA.atTime(7, 0))).contains(SEGUNDA.atTime(16, 0));
+        assertThat(buscaSql(SEGUNDA.atTime(16, 10))).contains(SEGUNDA.atTime(16, 30));
+        assertThat(buscaSql(SEGUNDA.atTime(16, 40))).contains(SEGUNDA.plusDays(2).atTime(9, 0));
+        assertThat(buscaSql(SEGUNDA.plusDays(4).atTime(16, 50))).contains(SEGUNDA.plusDays(7).atTime(8, 0));
+    }
+
+    private void agendar(LocalDateTime inicio, LocalDateTime fim) {
+        jdbcTemplate.update("INSERT INTO consulta (dataHoraConsulta, dataHoraFim, horarioReservado, status, valor, "
+                        + "pacienteId, medicoId, formaPagamentoId, recepcionistaId) VALUES (?, ?, ?, 'AGENDADA', 200, 1, ?, 1, 1)",
+                inicio, fim, inicio, MEDICO_ID);
+    }
+
+    private Optional<LocalDateTime> buscaSql(LocalDateTime inicio) {
+        return consultaRepository.findPrimeiraLacunaDisponivel(MEDICO_ID, inicio, inicio.plusMonths(3), DURACAO, DURACAO);
+    }
+
+    private Optional<LocalDateTime> buscaEmMemoria(LocalDateTime inicio) {
+        AgendamentoAutomaticoRequestDTO request = new AgendamentoAutomaticoRequestDTO();
+        request.setPacienteId(2);
+        request.setEspecialidadeId(ESPECIALIDADE_ID);
+        request.setDataHoraInicial(inicio);
+        request.setFormaPagamentoId(1);
+        request.setRecepcionistaId(1);
+        request.setQuantidadeSugestoes(1);
+        return consultaService.sugerirHorarios(request).stream().findFirst().map(HorarioSugeridoDTO::getDataHora);
+    }
+}
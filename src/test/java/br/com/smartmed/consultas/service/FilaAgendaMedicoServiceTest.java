@@ -0,0 +1,145 @@
+package br.com.smartmed.consultas.service;
+
+import br.com.smartmed.consultas.exception.BusinessRuleException;
+import br.com.smartmed.consultas.exception.ObjectNotFoundException;
+import br.com.smartmed.consultas.repository.ConsultaRepository;
+import br.com.smartmed.consultas.rest.dto.CadastrarConsultaRequestDTO;
+import br.com.smartmed.consultas.rest.dto.CadastrarConsultaResponseDTO;
+import br.com.smartmed.consultas.rest.dto.CancelamentoConsultaDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Ordem de execução, propagação de falhas e limite da fila de comandos por médico, com o
+ * {@link ConsultaService} simulado.
+ */
+class FilaAgendaMedicoServiceTest {
+
+    private static final int CAPACIDADE = 5;
+
+    private final ConsultaService consultaService = mock(ConsultaService.class);
+    private final ConsultaRepository consultaRepository = mock(ConsultaRepository.class);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final FilaAgendaMedicoService fila = new FilaAgendaMedicoService();
+
+    @BeforeEach
+    void configurar() {
+        ReflectionTestUtils.setField(fila, "consultaService", consultaService);
+        ReflectionTestUtils.setField(fila, "consultaRepository", consultaRepository);
+        ReflectionTestUtils.setField(fila, "virtualThreadExecutor", executor);
+        ReflectionTestUtils.setField(fila, "habilitada", true);
+        ReflectionTestUtils.setField(fila, "capacidade", CAPACIDADE);
+    }
+
+    @AfterEach
+    void encerrar() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void comandosDoMesmoMedicoRodamUmDeCadaVezNaOrdemDeChegada() {
+        List<Integer> executados = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger simultaneos = new AtomicInteger();
+        AtomicInteger maximoSimultaneos = new AtomicInteger();
+        when(consultaService.cadastrarConsulta(any())).thenAnswer(invocacao -> {
+            maximoSimultaneos.accumulateAndGet(simultaneos.incrementAndGet(), Math::max);
+            executados.add(invocacao.<CadastrarConsultaRequestDTO>getArgument(0).getPacienteId());
+            Thread.sleep(2);
+            simultaneos.decrementAndGet();
+            return new CadastrarConsultaResponseDTO();
+        });
+
+        List<CompletableFuture<CadastrarConsultaResponseDTO>> resultados = new ArrayList<>();
+        for (int i = 0; i < CAPACIDADE; i++) {
+            resultados.add(fila.cadastrarConsulta(cadastro(1, i)));
+        }
+        CompletableFuture.allOf(resultados.toArray(CompletableFuture[]::new)).join();
+
+        assertThat(executados).containsExactly(0, 1, 2, 3, 4);
+        assertThat(maximoSimultaneos.get()).isEqualTo(1);
+    }
+
+    @Test
+    void falhaDeUmComandoChegaAoChamadorSemTravarAFila() {
+        when(consultaService.cadastrarConsulta(any())).thenAnswer(invocacao -> {
+            switch (invocacao.<CadastrarConsultaRequestDTO>getArgument(0).getPacienteId()) {
+                case 0 -> throw new BusinessRuleException("Horário ocupado.");
+                case 1 -> throw new StackOverflowError();
+                default -> {
+                    return new CadastrarConsultaResponseDTO();
+                }
+            }
+        });
+
+        CompletableFuture<CadastrarConsultaResponseDTO> regraDeNegocio = fila.cadastrarConsulta(cadastro(1, 0));
+        CompletableFuture<CadastrarConsultaResponseDTO> erro = fila.cadastrarConsulta(cadastro(1, 1));
+        CompletableFuture<CadastrarConsultaResponseDTO> seguinte = fila.cadastrarConsulta(cadastro(1, 2));
+
+        assertThatThrownBy(regraDeNegocio::join).hasCauseInstanceOf(BusinessRuleException.class);
+        assertThatThrownBy(erro::join).hasCauseInstanceOf(StackOverflowError.class);
+        assertThat(seguinte.orTimeout(5, TimeUnit.SECONDS).join()).isNotNull();
+    }
+
+    @Test
+    void filaCheiaRecusaNovosComandosDoMedico() throws InterruptedException {
+        CountDownLatch liberar = new CountDownLatch(1);
+        CountDownLatch primeiroEmExecucao = new CountDownLatch(1);
+        when(consultaService.cadastrarConsulta(any())).thenAnswer(invocacao -> {
+            primeiroEmExecucao.countDown();
+            liberar.await();
+            return new CadastrarConsultaResponseDTO();
+        });
+
+        List<CompletableFuture<CadastrarConsultaResponseDTO>> aceitos = new ArrayList<>();
+        aceitos.add(fila.cadastrarConsulta(cadastro(1, 0)));
+        primeiroEmExecucao.await();
+        for (int i = 1; i <= CAPACIDADE; i++) {
+            aceitos.add(fila.cadastrarConsulta(cadastro(1, i)));
+        }
+        CompletableFuture<CadastrarConsultaResponseDTO> recusado = fila.cadastrarConsulta(cadastro(1, 99));
+        CompletableFuture<CadastrarConsultaResponseDTO> outroMedico = fila.cadastrarConsulta(cadastro(2, 0));
+
+        assertThatThrownBy(recusado::join).hasCauseInstanceOf(BusinessRuleException.class);
+        liberar.countDown();
+        CompletableFuture.allOf(aceitos.toArray(CompletableFuture[]::new)).orTimeout(5, TimeUnit.SECONDS).join();
+        assertThat(outroMedico.orTimeout(5, TimeUnit.SECONDS).join()).isNotNull();
+    }
+
+    @Test
+    void consultaInexistenteFalhaSemEntrarNaFila() {
+        when(consultaRepository.findMedicoIdById(42)).thenReturn(Optional.empty());
+        CancelamentoConsultaDTO cancelamento = new CancelamentoConsultaDTO();
+        cancelamento.setConsultaId(42);
+
+        assertThatThrownBy(() -> fila.cancelarConsulta(cancelamento).join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(ObjectNotFoundException.class);
+    }
+
+    private static CadastrarConsultaRequestDTO cadastro(Integer medicoId, Integer pacienteId) {
+        CadastrarConsultaRequestDTO request = new CadastrarConsultaRequestDTO();
+        request.setMedicoId(medicoId);
+        request.setPacienteId(pacienteId);
+        return request;
+    }
+}
@@ -0,0 +1,151 @@
+package br.com.smartmed.consultas.service;
+
+import br.com.smartmed.consultas.model.ConsultaModel;
+import br.com.smartmed.consultas.model.ConsultaStatus;
+import br.com.smartmed.consultas.repository.ConsultaRepository;
+import br.com.smartmed.consultas.repository.FormaPagamentoRepository;
+import br.com.smartmed.consultas.repository.MedicoRepository;
+import br.com.smartmed.consultas.repository.PacienteRepository;
+import br.com.smartmed.consultas.repository.RecepcionistaRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Reserva, rollback e invalidação do índice em memória das agendas. Cada teste usa um dia próprio
+ * do médico 1, bem no futuro, para não depender dos demais.
+ */
+@SpringBootTest
+class IndiceAgendaServiceTest {
+
+    private static final Integer MEDICO_ID = 1;
+
+    @Autowired
+    private IndiceAgendaService indiceAgendaService;
+    @Autowired
+    private ConsultaRepository consultaRepository;
+    @Autowired
+    private MedicoRepository medicoRepository;
+    @Autowired
+    private PacienteRepository pacienteRepository;
+    @Autowired
+    private RecepcionistaRepository recepcionistaRepository;
+    @Autowired
+    private FormaPagamentoRepository formaPagamentoRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void reservaSeguraOHorarioAteOFimDaTransacaoEEDescartadaNoRollback() {
+        LocalDateTime inicio = LocalDateTime.of(2031, 3, 3, 10, 0);
+        LocalDateTime fim = inicio.plusMinutes(30);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            assertThat(indiceAgendaService.reservar(MEDICO_ID, inicio, fim, null)).isTrue();
+            // Outra transação, em outra thread, encontra o horário ocupado, inclusive em sobreposição parcial
+            assertThat(emOutraThread(() -> indiceAgendaService.reservar(MEDICO_ID, inicio.plusMinutes(15),
+                    fim.plusMinutes(15), null))).isFalse();
+            assertThat(emOutraThread(() -> indiceAgendaService.temConflito(MEDICO_ID, inicio, fim, null))).isTrue();
+            status.setRollbackOnly();
+        });
+
+        assertThat(indiceAgendaService.temConflito(MEDICO_ID, inicio, fim, null)).isFalse();
+        assertThat(indiceAgendaService.reservar(MEDICO_ID, inicio.plusMinutes(15), fim.plusMinutes(15), null)).isTrue();
+    }
+
+    @Test
+    void consultaRegistradaSoEntraNoIndiceAposOCommit() {
+        LocalDateTime inicio = LocalDateTime.of(2031, 3, 4, 10, 0);
+        LocalDateTime fim = inicio.plusMinutes(30);
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+
+        template.executeWithoutResult(status -> {
+            indiceAgendaService.registrar(consultaRepository.save(novaConsulta(inicio, fim)));
+            status.setRollbackOnly();
+        });
+        assertThat(indiceAgendaService.temConflito(MEDICO_ID, inicio, fim, null)).isFalse();
+
+        Integer consultaId = template.execute(status -> {
+            ConsultaModel consulta = consultaRepository.save(novaConsulta(inicio, fim));
+            indiceAgendaService.registrar(consulta);
+            return consulta.getId();
+        });
+        assertThat(indiceAgendaService.temConflito(MEDICO_ID, inicio, fim, null)).isTrue();
+        assertThat(indiceAgendaService.temConflito(MEDICO_ID, inicio, fim, consultaId)).isFalse();
+    }
+
+    @Test
+    void invalidarRecarregaAAgendaDoBanco() {
+        LocalDateTime inicio = LocalDateTime.of(2031, 3, 5, 10, 0);
+        LocalDateTime fim = inicio.plusMinutes(30);
+        assertThat(indiceAgendaService.temConflito(MEDICO_ID, inicio, fim, null)).isFalse();
+
+        // Gravação que não passa pelo índice, como a de outra instância da aplicação
+        jdbcTemplate.update("INSERT INTO consulta (dataHoraConsulta, dataHoraFim, horarioReservado, status, valor, "
+                        + "pacienteId, medicoId, formaPagamentoId, recepcionistaId) VALUES (?, ?, ?, 'AGENDADA', 300, 1, ?, 1, 1)",
+                inicio, fim, inicio, MEDICO_ID);
+        assertThat(indiceAgendaService.temConflito(MEDICO_ID, inicio, fim, null)).isFalse();
+
+        // Invalidada dentro de uma transação desfeita, a agenda é mantida
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            indiceAgendaService.invalidar(MEDICO_ID);
+            status.setRollbackOnly();
+        });
+        assertThat(indiceAgendaService.temConflito(MEDICO_ID, inicio, fim, null)).isFalse();
+
+        indiceAgendaService.invalidar(MEDICO_ID);
+        assertThat(indiceAgendaService.temConflito(MEDICO_ID, inicio, fim, null)).isTrue();
+    }
+
+    @Test
+    void agendaCarregadaDentroDeUmaTransacaoSoEnxergaOQueFoiConfirmado() {
+        LocalDateTime inicio = LocalDateTime.of(2031, 3, 6, 10, 0);
+        LocalDateTime fim = inicio.plusMinutes(30);
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        Integer consultaId = template.execute(status -> {
+            ConsultaModel consulta = consultaRepository.save(novaConsulta(inicio, fim));
+            indiceAgendaService.registrar(consulta);
+            return consulta.getId();
+        });
+
+        // Cancelada e gravada na transação, que então carrega a agenda do zero e é desfeita
+        indiceAgendaService.invalidar(MEDICO_ID);
+        template.executeWithoutResult(status -> {
+            ConsultaModel consulta = consultaRepository.findById(consultaId).orElseThrow();
+            consulta.setStatus(ConsultaStatus.CANCELADA);
+            indiceAgendaService.registrar(consultaRepository.saveAndFlush(consulta));
+            assertThat(indiceAgendaService.temConflito(MEDICO_ID, inicio, fim, null)).isFalse();
+            status.setRollbackOnly();
+        });
+
+        // A consulta continua agendada no banco e, portanto, no índice
+        assertThat(indiceAgendaService.temConflito(MEDICO_ID, inicio, fim, null)).isTrue();
+    }
+
+    private ConsultaModel novaConsulta(LocalDateTime inicio, LocalDateTime fim) {
+        ConsultaModel consulta = new ConsultaModel();
+        consulta.setDataHoraConsulta(inicio);
+        consulta.setDataHoraFim(fim);
+        consulta.setStatus(ConsultaStatus.AGENDADA);
+        consulta.setMedico(medicoRepository.findById(MEDICO_ID).orElseThrow());
+        consulta.setPaciente(pacienteRepository.findById(1).orElseThrow());
+        consulta.setRecepcionista(recepcionistaRepository.findById(1).orElseThrow());
+        consulta.setFormaPagamento(formaPagamentoRepository.findById(1).orElseThrow());
+        return consulta;
+    }
+
+    private static <T> T emOutraThread(Supplier<T> acao) {
+        return CompletableFuture.supplyAsync(acao).join();
+    }
+}
@@ -0,0 +1,77 @@
+package br.com.smartmed.consultas.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Expiração das pré-reservas pela roda de temporização, inclusive prazos que dão mais de uma volta
+ * completa na roda.
+ */
+class RodaExpiracaoTest {
+
+    private static final int BALDES = 512;
+
+    @Test
+    void cadaPreReservaExpiraExatamenteNoSeuTique() {
+        PreReservaService.RodaExpiracao roda = new PreReservaService.RodaExpiracao();
+        long[] prazos = {1, 7, BALDES - 1, BALDES, BALDES + 1, 2L * BALDES, 1100, 3L * BALDES + 5};
+        Map<PreReservaService.PreReserva, Long> prazoPorPreReserva = new HashMap<>();
+        for (long prazo : prazos) {
+            PreReservaService.PreReserva preReserva = preReserva("prazo-" + prazo);
+            prazoPorPreReserva.put(preReserva, prazo);
+            roda.agendar(preReserva, prazo);
+        }
+
+        Map<PreReservaService.PreReserva, Long> expiradas = avancar(roda, 3L * BALDES + 5);
+
+        assertThat(expiradas).isEqualTo(prazoPorPreReserva);
+    }
+
+    @Test
+    void prazoAgendadoNoMeioDaVoltaTambemEsperaTodasAsVoltas() {
+        PreReservaService.RodaExpiracao roda = new PreReservaService.RodaExpiracao();
+        avancar(roda, 300);
+        PreReservaService.PreReserva longa = preReserva("longa");
+        PreReservaService.PreReserva curta = preReserva("curta");
+        roda.agendar(longa, 1100);
+        roda.agendar(curta, 1100 % BALDES);
+
+        Map<PreReservaService.PreReserva, Long> expiradas = avancar(roda, 1100);
+
+        assertThat(expiradas).containsEntry(curta, (long) (1100 % BALDES)).containsEntry(longa, 1100L).hasSize(2);
+    }
+
+    @Test
+    void prazoNuloOuNegativoExpiraNoProximoTique() {
+        PreReservaService.RodaExpiracao roda = new PreReservaService.RodaExpiracao();
+        PreReservaService.PreReserva preReserva = preReserva("imediata");
+        roda.agendar(preReserva, 0);
+
+        assertThat(roda.avancar()).containsExactly(preReserva);
+    }
+
+    /**
+     * Avança a roda tique a tique, anotando em que tique (contado a partir da chamada) cada
+     * pré-reserva expirou.
+     */
+    private static Map<PreReservaService.PreReserva, Long> avancar(PreReservaService.RodaExpiracao roda, long tiques) {
+        Map<PreReservaService.PreReserva, Long> expiradas = new HashMap<>();
+        for (long tique = 1; tique <= tiques; tique++) {
+            for (PreReservaService.PreReserva preReserva : roda.avancar()) {
+                assertThat(expiradas.put(preReserva, tique)).isNull();
+            }
+        }
+        return expiradas;
+    }
+
+    private static PreReservaService.PreReserva preReserva(String id) {
+        LocalDateTime inicio = LocalDateTime.of(2031, 1, 6, 10, 0);
+        return new PreReservaService.PreReserva(id, 1,
+                new IndiceAgendaService.Ocupacao(-1, inicio, inicio.plusMinutes(30)), inicio);
+    }
+}